@@ -0,0 +1,181 @@
+package com.example.gestdemo.bench;
+
+import java.util.Random;
+
+import com.example.gestdemo.FastAngle;
+
+/**
+ * Accuracy and speed of the angle math of the detectors.
+ *
+ * The rotation delta was the difference of two atan2 angles, which jumps by
+ * 360 degrees whenever the finger vector crosses the negative x axis; it is
+ * now one atan2 of the cross and dot product (see
+ * MultiPointerGestureDetector). The shove angle check can use
+ * {@link FastAngle#atan2} instead of Math.atan2.
+ *
+ * Reports the worst-case error of both against Math.atan2 on every finger
+ * vector of a pixel grid and on random rotations, how many shove
+ * classifications change, and ns/call of every kernel.
+ */
+public class AngleBenchmark {
+
+	/** Finger vectors up to this many pixels in x and y. */
+	private static final int GRID = 1024;
+	private static final int ROTATIONS = 2000000;
+	private static final int TIMED_CALLS = 1 << 22;
+	private static final int ROUNDS = 5;
+
+	static volatile double sBlackhole;
+
+	public static void main(String[] args) {
+		atan2Accuracy();
+		rotationAccuracy();
+		speed();
+	}
+
+	/**
+	 * FastAngle.atan2 and the shove classification on every integer finger
+	 * vector of the grid.
+	 */
+	private static void atan2Accuracy() {
+		double worst = 0;
+		float worstX = 0, worstY = 0;
+		long mismatches = 0;
+		long vectors = 0;
+		for (int y = -GRID; y <= GRID; y++) {
+			for (int x = -GRID; x <= GRID; x++) {
+				final double exact = Math.atan2(y, x);
+				final double fast = FastAngle.atan2(y, x);
+				final double error = Math.abs(fast - exact);
+				if (error > worst) {
+					worst = error;
+					worstX = x;
+					worstY = y;
+				}
+				if (isShoveAngle(exact) != isShoveAngle(fast)) {
+					mismatches++;
+				}
+				vectors++;
+			}
+		}
+		System.out.println(String.format(
+				"atan2     %d vectors  worst error %.2e rad = %.5f deg at (%.0f, %.0f)  shove mismatches %d",
+				vectors, worst, Math.toDegrees(worst), worstX, worstY, mismatches));
+	}
+
+	/** The angle check of ShoveGestureDetector.isSloppyGesture. */
+	private static boolean isShoveAngle(double atan2) {
+		final double angle = Math.abs(atan2);
+		return (0.0f < angle && angle < 0.35f) || 2.79f < angle && angle < Math.PI;
+	}
+
+	/**
+	 * Both rotation deltas against the true rotation between two finger
+	 * vectors of random direction and length, rotated by up to 90 degrees
+	 * either way and scaled by up to 25 % per step.
+	 */
+	private static void rotationAccuracy() {
+		final Random random = new Random(14);
+		double worstDifference = 0;
+		double worstCrossDot = 0;
+		long jumps = 0;
+		for (int i = 0; i < ROTATIONS; i++) {
+			final double angle = (random.nextDouble() * 2 - 1) * Math.PI;
+			final double length = 20 + random.nextDouble() * 1500;
+			final double rotation = (random.nextDouble() * 2 - 1) * Math.PI / 2;
+			final double scale = 0.75 + random.nextDouble() * 0.5;
+			final float px = (float) (length * Math.cos(angle));
+			final float py = (float) (length * Math.sin(angle));
+			final float qx = (float) (length * scale * Math.cos(angle + rotation));
+			final float qy = (float) (length * scale * Math.sin(angle + rotation));
+
+			final double difference = differenceDelta(px, py, qx, qy);
+			final double crossDot = crossDotDelta(px, py, qx, qy);
+			final double error = Math.abs(difference - rotation);
+			if (error > Math.PI) {
+				jumps++;
+			} else {
+				worstDifference = Math.max(worstDifference, error);
+			}
+			worstCrossDot = Math.max(worstCrossDot, Math.abs(crossDot - rotation));
+		}
+		System.out.println(String.format(
+				"rotation  %d steps  two atan2: %d jumps of 360 deg (%.1f %%), otherwise worst %.2e deg"
+						+ "  cross/dot: worst %.2e deg",
+				ROTATIONS, jumps, 100.0 * jumps / ROTATIONS, Math.toDegrees(worstDifference),
+				Math.toDegrees(worstCrossDot)));
+	}
+
+	/** The former rotation delta, without the sign flip of the getter. */
+	private static double differenceDelta(float px, float py, float qx, float qy) {
+		return Math.atan2(qy, qx) - Math.atan2(py, px);
+	}
+
+	private static double crossDotDelta(float px, float py, float qx, float qy) {
+		final double cross = (double) px * qy - (double) py * qx;
+		final double dot = (double) px * qx + (double) py * qy;
+		return Math.atan2(cross, dot);
+	}
+
+	private static void speed() {
+		final Random random = new Random(41);
+		final float[] x = new float[TIMED_CALLS + 1];
+		final float[] y = new float[TIMED_CALLS + 1];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = (random.nextFloat() * 2 - 1) * GRID;
+			y[i] = (random.nextFloat() * 2 - 1) * GRID;
+		}
+		for (int r = 0; r < ROUNDS; r++) {
+			final boolean report = r == ROUNDS - 1;
+			long start = System.nanoTime();
+			double sum = 0;
+			for (int i = 0; i < TIMED_CALLS; i++) {
+				sum += Math.atan2(y[i], x[i]);
+			}
+			report(report, "Math.atan2", start, sum);
+
+			start = System.nanoTime();
+			sum = 0;
+			for (int i = 0; i < TIMED_CALLS; i++) {
+				sum += FastAngle.atan2(y[i], x[i]);
+			}
+			report(report, "FastAngle.atan2", start, sum);
+
+			start = System.nanoTime();
+			sum = 0;
+			for (int i = 0; i < TIMED_CALLS; i++) {
+				sum += differenceDelta(x[i], y[i], x[i + 1], y[i + 1]);
+			}
+			report(report, "delta two atan2", start, sum);
+
+			start = System.nanoTime();
+			sum = 0;
+			for (int i = 0; i < TIMED_CALLS; i++) {
+				sum += crossDotDelta(x[i], y[i], x[i + 1], y[i + 1]);
+			}
+			report(report, "delta cross/dot", start, sum);
+
+			start = System.nanoTime();
+			int count = 0;
+			for (int i = 0; i < TIMED_CALLS; i++) {
+				count += isShoveAngle(Math.atan2(y[i], x[i])) ? 1 : 0;
+			}
+			report(report, "shove check exact", start, count);
+
+			start = System.nanoTime();
+			count = 0;
+			for (int i = 0; i < TIMED_CALLS; i++) {
+				count += isShoveAngle(FastAngle.atan2(y[i], x[i])) ? 1 : 0;
+			}
+			report(report, "shove check fast", start, count);
+		}
+	}
+
+	private static void report(boolean report, String name, long start, double sum) {
+		final long elapsed = System.nanoTime() - start;
+		sBlackhole += sum;
+		if (report) {
+			System.out.println(String.format("%-24s %6.1f ns/call", name, (double) elapsed / TIMED_CALLS));
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.example.gestdemo.bench;
+
+import com.example.gestdemo.BaseGestureDetector;
+import com.example.gestdemo.GestureArbiter;
+import com.example.gestdemo.GestureEngine;
+import com.example.gestdemo.GestureGeometry;
+import com.example.gestdemo.GestureMetrics;
+import com.example.gestdemo.ShoveGestureDetector;
+import com.example.gestdemo.TouchSample;
+import com.example.gestdemo.TransformGestureDetector;
+
+/**
+ * Replays a {@link TouchWorkload} of pans, pinches, rotations and shoves
+ * through the engine of MainActivity, the transform and shove detectors,
+ * without and with the {@link GestureArbiter} rules of MainActivity.
+ *
+ * Reports ns/event, the share of events the shove detector skipped while
+ * dormant, the net alpha change shoves applied during rotation gestures
+ * and the net rotation the transform applied during shove gestures, both
+ * per gesture.
+ *
+ * Usage: ArbiterBenchmark [events]
+ */
+public class ArbiterBenchmark {
+
+	private static final int EVENTS = 2000000;
+	private static final int ROUNDS = 5;
+	private static final float ROTATION_COMMIT_DEGREES = 10f;
+	private static final float SHOVE_COMMIT_PIXELS = 60f;
+
+	public static void main(String[] args) {
+		final int events = args.length > 0 ? Integer.parseInt(args[0]) : EVENTS;
+		final TouchWorkload workload = new TouchWorkload(24);
+		workload.setKinds(TouchWorkload.PAN, TouchWorkload.PINCH, TouchWorkload.ROTATE, TouchWorkload.SHOVE);
+		final TouchSample[] stream = new TouchSample[events];
+		final int[] kinds = new int[events];
+		for (int i = 0; i < events; i++) {
+			stream[i] = new TouchSample();
+			workload.next(stream[i]);
+			kinds[i] = workload.getKind();
+		}
+		final long rotations = workload.getGestureCount(TouchWorkload.ROTATE);
+		final long shoves = workload.getGestureCount(TouchWorkload.SHOVE);
+		for (int r = 0; r < ROUNDS; r++) {
+			final boolean report = r == ROUNDS - 1;
+			run("all detectors", stream, kinds, false, rotations, shoves, report);
+			run("arbitrated", stream, kinds, true, rotations, shoves, report);
+		}
+	}
+
+	private static void run(String name, TouchSample[] stream, final int[] kinds, boolean arbitrate,
+			long rotations, long shoves, boolean report) {
+		// net alpha in the rotation and degrees in the shove under way, and the totals
+		final double[] applied = new double[4];
+		final int[] current = new int[1];
+		final TransformGestureDetector transform = new TransformGestureDetector(
+				new TransformGestureDetector.SimpleOnTransformGestureListener() {
+					@Override
+					public boolean onTransform(TransformGestureDetector detector) {
+						if (kinds[current[0]] == TouchWorkload.SHOVE) {
+							applied[1] += detector.getRotationDegreesDelta();
+						}
+						return true;
+					}
+				});
+		final ShoveGestureDetector shove = new ShoveGestureDetector(
+				new ShoveGestureDetector.SimpleOnShoveGestureListener() {
+					@Override
+					public boolean onShove(ShoveGestureDetector detector) {
+						if (kinds[current[0]] == TouchWorkload.ROTATE) {
+							applied[0] += detector.getShovePixelsDelta();
+						}
+						return true;
+					}
+				});
+		final GestureGeometry geometry = new GestureGeometry();
+		geometry.setScreen(1080, 1920, 24f);
+		transform.setHistoryMode(BaseGestureDetector.HISTORY_COALESCE);
+		shove.setHistoryMode(BaseGestureDetector.HISTORY_COALESCE);
+		shove.setGeometry(geometry);
+		shove.setFastAngle(true);
+
+		final GestureEngine engine = new GestureEngine();
+		engine.addDetector(transform);
+		engine.addDetector(shove);
+		if (arbitrate) {
+			final GestureArbiter arbiter = new GestureArbiter();
+			arbiter.setExclusive(transform, shove);
+			arbiter.setCommitThreshold(transform, ROTATION_COMMIT_DEGREES);
+			arbiter.setCommitThreshold(shove, SHOVE_COMMIT_PIXELS);
+			arbiter.setPriority(transform, 1);
+			engine.setArbiter(arbiter);
+		}
+
+		final long start = System.nanoTime();
+		for (int i = 0; i < stream.length; i++) {
+			current[0] = i;
+			if (stream[i].getActionMasked() == TouchSample.ACTION_DOWN) {
+				addGesture(applied);
+			}
+			engine.onTouchEvent(stream[i]);
+		}
+		final long nanos = System.nanoTime() - start;
+		addGesture(applied);
+		if (report) {
+			final GestureMetrics.Snapshot snapshot = shove.getMetrics().snapshot(new GestureMetrics.Snapshot());
+			System.out.println(String.format(
+					"%-14s %6.1f ns/event  shove dormant %4.1f %% of events"
+							+ "  alpha change in rotations %6.2f px  rotation in shoves %5.2f deg",
+					name, (double) nanos / stream.length,
+					100.0 * snapshot.getCount(GestureMetrics.DORMANT_SKIPS) / stream.length,
+					applied[2] / rotations, applied[3] / shoves));
+		}
+	}
+
+	private static void addGesture(double[] applied) {
+		applied[2] += Math.abs(applied[0]);
+		applied[3] += Math.abs(applied[1]);
+		applied[0] = 0;
+		applied[1] = 0;
+	}
+}
@@ -0,0 +1,176 @@
+package com.example.gestdemo.bench;
+
+import java.util.Random;
+
+import com.example.gestdemo.GestureBatcher;
+import com.example.gestdemo.GestureEngine;
+import com.example.gestdemo.ImageTransform;
+import com.example.gestdemo.Scene;
+import com.example.gestdemo.SceneItem;
+import com.example.gestdemo.ShoveGestureDetector;
+import com.example.gestdemo.TouchSample;
+import com.example.gestdemo.TransformGestureDetector;
+
+/**
+ * Compares a listener that moves a selection of GROUP scene items on every
+ * transform and shove callback with the same work done once per frame on
+ * the batches of a {@link GestureBatcher}, flushed every FRAME_EVENTS
+ * events (240 Hz touch at 60 Hz display).
+ *
+ * Reports ns/event for the detectors and the listener work together, the
+ * listener calls per 1000 events, and the largest difference between the
+ * item positions both ways end up at, relative to the positions: the
+ * scripted gestures spread the fingers, so the items fly far apart.
+ *
+ * Usage: BatchBenchmark [group-size]
+ */
+public class BatchBenchmark {
+
+	private static final int[] POINTER_COUNTS = { 2, 5 };
+	private static final int GESTURES = 100;
+	private static final int MOVES_PER_GESTURE = 240;
+	private static final int ROUNDS = 5;
+	private static final int FRAME_EVENTS = 4;
+	private static final int GROUP = 50;
+	private static final int SCENE_ITEMS = 2000;
+
+	public static void main(String[] args) {
+		final int group = args.length > 0 ? Integer.parseInt(args[0]) : GROUP;
+		for (int pointers : POINTER_COUNTS) {
+			final TouchSample[] stream = TouchStreams.gestures(pointers, GESTURES, MOVES_PER_GESTURE, 4);
+			for (int r = 0; r < ROUNDS; r++) {
+				final boolean report = r == ROUNDS - 1;
+				final Selection perEvent = new Selection(group);
+				final Selection batched = new Selection(group);
+				final long perEventNanos = perEvent(perEvent, stream);
+				final long batchedNanos = batched(batched, stream);
+				if (report) {
+					System.out.println(String.format(
+							"pointers=%d group=%d  per event %7.1f ns/event (%4.0f calls/1000 events)"
+									+ "  batched %7.1f ns/event (%4.0f calls/1000 events)  max difference %.2e",
+							pointers, group, (double) perEventNanos / stream.length,
+							1000.0 * perEvent.mCalls / stream.length, (double) batchedNanos / stream.length,
+							1000.0 * batched.mCalls / stream.length, perEvent.maxDifference(batched)));
+				}
+			}
+		}
+	}
+
+	/** The selected items of a scene, moved together. */
+	private static class Selection {
+		final Scene mScene = new Scene();
+		final SceneItem[] mItems;
+		int mCalls;
+
+		Selection(int group) {
+			final Random random = new Random(21);
+			mItems = new SceneItem[group];
+			for (int i = 0; i < SCENE_ITEMS; i++) {
+				final SceneItem item = new SceneItem(100f, 80f);
+				// the selection lies under the fingers, the rest around it
+				final float side = i < group ? 1000f : 5000f;
+				item.getTransform().setFocus(random.nextFloat() * side, random.nextFloat() * side);
+				mScene.addItem(item);
+				if (i < group) {
+					mItems[i] = item;
+				}
+			}
+		}
+
+		void transform(double a, double b, double tx, double ty, float degrees, float scale) {
+			mCalls++;
+			for (int i = 0; i < mItems.length; i++) {
+				final ImageTransform transform = mItems[i].getTransform();
+				final double x = transform.getFocusX();
+				final double y = transform.getFocusY();
+				transform.setFocus((float) (a * x - b * y + tx), (float) (b * x + a * y + ty));
+				transform.rotateBy(degrees);
+				transform.scaleBy(scale);
+				mScene.update(mItems[i]);
+			}
+		}
+
+		void shove(float pixels) {
+			mCalls++;
+			for (int i = 0; i < mItems.length; i++) {
+				mItems[i].getTransform().addAlpha(pixels);
+			}
+		}
+
+		float maxDifference(Selection other) {
+			float max = 0f;
+			for (int i = 0; i < mItems.length; i++) {
+				final ImageTransform a = mItems[i].getTransform();
+				final ImageTransform b = other.mItems[i].getTransform();
+				max = Math.max(max, relative(a.getFocusX(), b.getFocusX()));
+				max = Math.max(max, relative(a.getFocusY(), b.getFocusY()));
+			}
+			return max;
+		}
+
+		private static float relative(float a, float b) {
+			return Math.abs(a - b) / Math.max(1f, Math.max(Math.abs(a), Math.abs(b)));
+		}
+	}
+
+	private static long perEvent(final Selection selection, TouchSample[] stream) {
+		final GestureEngine engine = new GestureEngine();
+		final TransformGestureDetector transform = new TransformGestureDetector(
+				new TransformGestureDetector.SimpleOnTransformGestureListener() {
+					@Override
+					public boolean onTransform(TransformGestureDetector detector) {
+						add(detector);
+						return true;
+					}
+
+					@Override
+					public void onTransformEnd(TransformGestureDetector detector) {
+						add(detector);
+					}
+
+					private void add(TransformGestureDetector detector) {
+						selection.transform(detector.getDeltaA(), detector.getDeltaB(), detector.getDeltaTx(),
+								detector.getDeltaTy(), detector.getRotationDegreesDelta(), detector.getScaleFactor());
+					}
+				});
+		final ShoveGestureDetector shove = new ShoveGestureDetector(
+				new ShoveGestureDetector.SimpleOnShoveGestureListener() {
+					@Override
+					public boolean onShove(ShoveGestureDetector detector) {
+						selection.shove(detector.getShovePixelsDelta());
+						return true;
+					}
+				});
+		engine.addDetector(transform);
+		engine.addDetector(shove);
+		final long start = System.nanoTime();
+		for (int i = 0; i < stream.length; i++) {
+			engine.onTouchEvent(stream[i]);
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long batched(final Selection selection, TouchSample[] stream) {
+		final GestureBatcher batcher = new GestureBatcher(new GestureBatcher.OnGestureBatchListener() {
+			public void onGestureBatch(GestureBatcher.Batch batch) {
+				selection.transform(batch.getMapA(), batch.getMapB(), batch.getMapTx(), batch.getMapTy(),
+						batch.getRotationDegrees(), batch.getScaleFactor());
+				if (batch.getShovePixels() != 0f) {
+					selection.shove(batch.getShovePixels());
+				}
+			}
+		});
+		final GestureEngine engine = new GestureEngine();
+		engine.addDetector(new TransformGestureDetector(batcher.getTransformListener()));
+		engine.addDetector(new ShoveGestureDetector(batcher.getShoveListener()));
+		final long start = System.nanoTime();
+		for (int i = 0; i < stream.length; i++) {
+			engine.onTouchEvent(stream[i]);
+			if (i % FRAME_EVENTS == FRAME_EVENTS - 1) {
+				batcher.flush();
+			}
+		}
+		batcher.flush();
+		return System.nanoTime() - start;
+	}
+}
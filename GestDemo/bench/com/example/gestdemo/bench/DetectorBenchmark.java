@@ -0,0 +1,269 @@
+package com.example.gestdemo.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.gestdemo.GestureEngine;
+import com.example.gestdemo.MoveGestureDetector;
+import com.example.gestdemo.RotateGestureDetector;
+import com.example.gestdemo.ShoveGestureDetector;
+import com.example.gestdemo.TouchFilter;
+import com.example.gestdemo.TouchSample;
+import com.example.gestdemo.TransformGestureDetector;
+
+/**
+ * Replays touch streams through the detectors on a plain JVM and reports
+ * ns/event, throughput and allocated bytes/event for every detector on its
+ * own, chained one after the other, and through the {@link GestureEngine}
+ * with the detectors MainActivity.onTouch uses, without and with its
+ * {@link TouchFilter}.
+ *
+ * Detectors must not allocate once warmed up: a case that allocates in the
+ * measured rounds is reported and the benchmark exits with 1. The check is
+ * skipped on JVMs that cannot count allocated bytes.
+ *
+ * Usage: DetectorBenchmark [case-name-filter] [recorded.trace ...]
+ *
+ * Recorded traces are replayed after the synthetic streams and reported
+ * with pointers=0.
+ */
+public class DetectorBenchmark {
+
+	/** One way of feeding a stream to detectors. */
+	public interface Pipeline {
+		void onTouchEvent(TouchSample sample);
+	}
+
+	private static final int[] POINTER_COUNTS = { 1, 2, 5 };
+	private static final int WARMUP_ROUNDS = 10;
+	private static final int MEASURED_ROUNDS = 10;
+	private static final int GESTURES = 200;
+	private static final int MOVES_PER_GESTURE = 240;
+
+	/** Sink for listener results, keeps the JIT from dropping the work. */
+	static volatile float sBlackhole;
+
+	private final List<String> mNames = new ArrayList<String>();
+	private final List<Pipeline> mPipelines = new ArrayList<Pipeline>();
+
+	public void addCase(String name, Pipeline pipeline) {
+		mNames.add(name);
+		mPipelines.add(pipeline);
+	}
+
+	/**
+	 * Replay the stream through every case whose name contains the filter.
+	 *
+	 * @return true if no case allocated after warm-up
+	 */
+	public boolean run(String filter, int pointers, TouchSample[] stream) {
+		boolean allocationFree = true;
+		for (int c = 0; c < mPipelines.size(); c++) {
+			String name = mNames.get(c);
+			if (filter != null && name.indexOf(filter) < 0) {
+				continue;
+			}
+			Pipeline pipeline = mPipelines.get(c);
+			for (int r = 0; r < WARMUP_ROUNDS; r++) {
+				replay(pipeline, stream);
+			}
+			long startBytes = allocatedBytes();
+			long start = System.nanoTime();
+			for (int r = 0; r < MEASURED_ROUNDS; r++) {
+				replay(pipeline, stream);
+			}
+			long elapsed = System.nanoTime() - start;
+			long bytes = allocatedBytes() - startBytes - allocationOverhead();
+
+			long events = (long) stream.length * MEASURED_ROUNDS;
+			System.out.println(String.format("%-24s pointers=%d %8.1f ns/event %10.0f events/s %8.2f B/event",
+					name, pointers, (double) elapsed / events, events * 1e9 / elapsed,
+					bytes < 0 ? Double.NaN : (double) bytes / events));
+			if (startBytes >= 0 && bytes > 0) {
+				System.out.println("  " + name + " allocated " + bytes + " bytes after warm-up");
+				allocationFree = false;
+			}
+		}
+		return allocationFree;
+	}
+
+	private static void replay(Pipeline pipeline, TouchSample[] stream) {
+		for (int i = 0; i < stream.length; i++) {
+			pipeline.onTouchEvent(stream[i]);
+		}
+	}
+
+	/**
+	 * Bytes allocated by the current thread so far, or -1 if the JVM cannot
+	 * tell.
+	 */
+	static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * Bytes that reading {@link #allocatedBytes()} itself allocates, the
+	 * least seen over a few reads.
+	 */
+	static long allocationOverhead() {
+		long overhead = Long.MAX_VALUE;
+		for (int i = 0; i < 10; i++) {
+			final long start = allocatedBytes();
+			overhead = Math.min(overhead, allocatedBytes() - start);
+		}
+		return Math.max(0, overhead);
+	}
+
+	static RotateGestureDetector newRotateDetector() {
+		return new RotateGestureDetector(new RotateGestureDetector.SimpleOnRotateGestureListener() {
+			@Override
+			public boolean onRotate(RotateGestureDetector detector) {
+				sBlackhole += detector.getRotationDegreesDelta();
+				return true;
+			}
+		});
+	}
+
+	static MoveGestureDetector newMoveDetector() {
+		return new MoveGestureDetector(new MoveGestureDetector.SimpleOnMoveGestureListener() {
+			@Override
+			public boolean onMove(MoveGestureDetector detector) {
+				sBlackhole += detector.getFocusDeltaX() + detector.getFocusDeltaY();
+				return true;
+			}
+		});
+	}
+
+	static ShoveGestureDetector newShoveDetector() {
+		return new ShoveGestureDetector(new ShoveGestureDetector.SimpleOnShoveGestureListener() {
+			@Override
+			public boolean onShove(ShoveGestureDetector detector) {
+				sBlackhole += detector.getShovePixelsDelta();
+				return true;
+			}
+		});
+	}
+
+	static TransformGestureDetector newTransformDetector() {
+		return new TransformGestureDetector(new TransformGestureDetector.SimpleOnTransformGestureListener() {
+			@Override
+			public boolean onTransform(TransformGestureDetector detector) {
+				sBlackhole += detector.mapX(0f, 0f) + detector.getRotationDegreesDelta()
+						+ detector.getScaleFactor();
+				return true;
+			}
+		});
+	}
+
+	public static DetectorBenchmark withDefaultCases() {
+		DetectorBenchmark benchmark = new DetectorBenchmark();
+
+		final RotateGestureDetector rotate = newRotateDetector();
+		benchmark.addCase("rotate", new Pipeline() {
+			public void onTouchEvent(TouchSample sample) {
+				rotate.onTouchEvent(sample);
+			}
+		});
+
+		final MoveGestureDetector move = newMoveDetector();
+		benchmark.addCase("move", new Pipeline() {
+			public void onTouchEvent(TouchSample sample) {
+				move.onTouchEvent(sample);
+			}
+		});
+
+		final MoveGestureDetector velocityMove = new MoveGestureDetector(
+				new MoveGestureDetector.SimpleOnMoveGestureListener() {
+					@Override
+					public boolean onMove(MoveGestureDetector detector) {
+						// worst case, a fit on every event
+						sBlackhole += detector.getVelocityX() + detector.getVelocityY();
+						return true;
+					}
+				});
+		velocityMove.setHistoryMode(MoveGestureDetector.HISTORY_COALESCE);
+		benchmark.addCase("move-velocity", new Pipeline() {
+			public void onTouchEvent(TouchSample sample) {
+				velocityMove.onTouchEvent(sample);
+			}
+		});
+
+		final ShoveGestureDetector shove = newShoveDetector();
+		benchmark.addCase("shove", new Pipeline() {
+			public void onTouchEvent(TouchSample sample) {
+				shove.onTouchEvent(sample);
+			}
+		});
+
+		final TransformGestureDetector transform = newTransformDetector();
+		benchmark.addCase("transform", new Pipeline() {
+			public void onTouchEvent(TouchSample sample) {
+				transform.onTouchEvent(sample);
+			}
+		});
+
+		final RotateGestureDetector chainRotate = newRotateDetector();
+		final MoveGestureDetector chainMove = newMoveDetector();
+		final ShoveGestureDetector chainShove = newShoveDetector();
+		benchmark.addCase("chain", new Pipeline() {
+			public void onTouchEvent(TouchSample sample) {
+				chainRotate.onTouchEvent(sample);
+				chainMove.onTouchEvent(sample);
+				chainShove.onTouchEvent(sample);
+			}
+		});
+
+		final GestureEngine engine = new GestureEngine();
+		engine.addDetector(newTransformDetector());
+		engine.addDetector(newShoveDetector());
+		benchmark.addCase("engine", new Pipeline() {
+			public void onTouchEvent(TouchSample sample) {
+				engine.onTouchEvent(sample);
+			}
+		});
+
+		final GestureEngine filteredEngine = new GestureEngine();
+		filteredEngine.setTouchFilter(new TouchFilter());
+		filteredEngine.addDetector(newTransformDetector());
+		filteredEngine.addDetector(newShoveDetector());
+		benchmark.addCase("engine-filtered", new Pipeline() {
+			public void onTouchEvent(TouchSample sample) {
+				filteredEngine.onTouchEvent(sample);
+			}
+		});
+		return benchmark;
+	}
+
+	public static void main(String[] args) throws IOException {
+		String filter = null;
+		List<File> traces = new ArrayList<File>();
+		for (String arg : args) {
+			if (arg.endsWith(".trace")) {
+				traces.add(new File(arg));
+			} else {
+				filter = arg;
+			}
+		}
+		DetectorBenchmark benchmark = withDefaultCases();
+		boolean allocationFree = true;
+		for (int pointers : POINTER_COUNTS) {
+			TouchSample[] stream = TouchStreams.gestures(pointers, GESTURES, MOVES_PER_GESTURE, 4);
+			allocationFree &= benchmark.run(filter, pointers, stream);
+		}
+		for (File trace : traces) {
+			System.out.println(trace + ":");
+			allocationFree &= benchmark.run(filter, 0, TouchStreams.fromTrace(trace));
+		}
+		if (!allocationFree) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,332 @@
+package com.example.gestdemo.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import com.example.gestdemo.BaseGestureDetector;
+import com.example.gestdemo.MoveGestureDetector;
+import com.example.gestdemo.TouchFilter;
+import com.example.gestdemo.TouchSample;
+
+/**
+ * Measures the {@link TouchFilter} on a one-finger trace with a known true
+ * path: every gesture rests, drifts slowly and then swipes fast, sampled
+ * at 120 Hz with up to NOISE px of jitter on every position.
+ *
+ * Reports per filter setting:
+ * - jitter: RMS distance from the true path while resting
+ * - drift: RMS distance from the true path while drifting slowly
+ * - lag: mean distance behind the true path during the swipes, in ms at
+ *   the swipe speed
+ * - cost: ns per filtered event
+ *
+ * Then the moves a MoveGestureDetector reports with the old pressure
+ * threshold and without, on traces whose pressure is constant, zero,
+ * noisy, or halves with every sample at the end of every gesture.
+ *
+ * Recorded traces passed as arguments have no true path; for them the
+ * RMS of the second difference of the first pointer (roughness) is
+ * reported raw and filtered, and the mean distance of the filtered first
+ * pointer from the raw one.
+ *
+ * The benchmark exits with 1 if the default filter leaves more than
+ * MAX_JITTER px of jitter or MAX_DRIFT px of drift error, or lags more than
+ * MAX_LAG ms in the swipes; if the detector without threshold drops moves
+ * on any pressure trace; or if filtering a recorded trace leaves it
+ * rougher than MAX_ROUGHNESS px and than it was, or moves the pointer more
+ * than MAX_TRACE_OFFSET px from the raw one on average.
+ *
+ * Usage: FilterBenchmark [recorded.trace ...]
+ */
+public class FilterBenchmark {
+
+	private static final int GESTURES = 200;
+	private static final long INTERVAL = 8;
+	private static final int REST_SAMPLES = 60;
+	private static final int DRIFT_SAMPLES = 60;
+	private static final float DRIFT_SPEED = 30f;
+	private static final int SWIPE_SAMPLES = 40;
+	private static final float SWIPE_SPEED = 1500f;
+	private static final float NOISE = 1.5f;
+	private static final int ROUNDS = 5;
+
+	/** Bounds for the default filter, see the class comment. */
+	private static final double MAX_JITTER = 0.7;
+	private static final double MAX_DRIFT = 1.0;
+	private static final double MAX_LAG = 3.0;
+	/** Bounds for recorded traces, see the class comment. */
+	private static final double MAX_ROUGHNESS = 0.5;
+	private static final double MAX_TRACE_OFFSET = 3.0;
+
+	private static final int REST = 0;
+	private static final int DRIFT = 1;
+	private static final int SWIPE = 2;
+
+	public static void main(String[] args) throws IOException {
+		final Trace trace = new Trace();
+		final float[][] settings = {
+			{ TouchFilter.DEFAULT_MIN_CUTOFF, TouchFilter.DEFAULT_BETA },
+			{ TouchFilter.DEFAULT_MIN_CUTOFF, 0f },
+			{ TouchFilter.DEFAULT_MIN_CUTOFF, 0.02f },
+			{ 5f, TouchFilter.DEFAULT_BETA },
+		};
+		boolean passed = true;
+		report("raw", trace, null);
+		for (int i = 0; i < settings.length; i++) {
+			final float[] setting = settings[i];
+			final TouchFilter filter = new TouchFilter();
+			filter.setParameters(setting[0], setting[1], TouchFilter.DEFAULT_SPEED_CUTOFF);
+			final double[] result = report(String.format("cutoff %.1f Hz beta %.3f", setting[0], setting[1]),
+					trace, filter);
+			if (i == 0) {
+				passed &= check("jitter", result[REST], MAX_JITTER, "px");
+				passed &= check("drift", result[DRIFT], MAX_DRIFT, "px");
+				passed &= check("lag", result[SWIPE], MAX_LAG, "ms");
+			}
+		}
+
+		System.out.println();
+		final int moves = pressure("constant", trace.withPressure(0));
+		passed &= pressure("zero", trace.withPressure(1)) == moves;
+		passed &= pressure("noisy", trace.withPressure(2)) == moves;
+		passed &= pressure("lift", trace.withPressure(3)) == moves;
+
+		for (String path : args) {
+			final TouchSample[] stream = TouchStreams.fromTrace(new File(path));
+			final double raw = roughness(stream, null);
+			final double filtered = roughness(stream, new TouchFilter());
+			final double offset = offset(stream, new TouchFilter());
+			System.out.println(String.format("%s  roughness raw %.3f px  filtered %.3f px  offset %.3f px", path,
+					raw, filtered, offset));
+			if (filtered > Math.max(raw, MAX_ROUGHNESS)) {
+				System.out.println("  filtering did not smooth " + path);
+				passed = false;
+			}
+			passed &= check("offset", offset, MAX_TRACE_OFFSET, "px");
+		}
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	private static boolean check(String name, double value, double max, String unit) {
+		if (value <= max) {
+			return true;
+		}
+		System.out.println(String.format("  default filter %s %.2f %s above %.2f %s", name, value, unit, max, unit));
+		return false;
+	}
+
+	/** The synthetic trace with its true positions and phases. */
+	private static class Trace {
+		final TouchSample[] mStream;
+		final float[] mTrueX;
+		final float[] mTrueY;
+		final int[] mPhase;
+
+		Trace() {
+			final int perGesture = REST_SAMPLES + DRIFT_SAMPLES + SWIPE_SAMPLES;
+			final int n = GESTURES * perGesture;
+			mStream = new TouchSample[n];
+			mTrueX = new float[n];
+			mTrueY = new float[n];
+			mPhase = new int[n];
+			final Random random = new Random(22);
+			long time = 0;
+			int i = 0;
+			for (int g = 0; g < GESTURES; g++) {
+				float x = 200f + random.nextFloat() * 600f;
+				float y = 300f + random.nextFloat() * 1200f;
+				final double angle = random.nextDouble() * 2 * Math.PI;
+				final float dirX = (float) Math.cos(angle);
+				final float dirY = (float) Math.sin(angle);
+				for (int s = 0; s < perGesture; s++) {
+					final int phase = s < REST_SAMPLES ? REST : s < REST_SAMPLES + DRIFT_SAMPLES ? DRIFT : SWIPE;
+					if (phase != REST) {
+						final float speed = phase == DRIFT ? DRIFT_SPEED : SWIPE_SPEED;
+						x += dirX * speed * INTERVAL / 1000f;
+						y += dirY * speed * INTERVAL / 1000f;
+					}
+					final int action = s == 0 ? TouchSample.ACTION_DOWN
+							: s == perGesture - 1 ? TouchSample.ACTION_UP : TouchSample.ACTION_MOVE;
+					final TouchSample sample = new TouchSample();
+					sample.setAction(action, 0, time, 1);
+					sample.setPointer(0, 0, x + (random.nextFloat() * 2 - 1) * NOISE,
+							y + (random.nextFloat() * 2 - 1) * NOISE, 0.8f);
+					mStream[i] = sample;
+					mTrueX[i] = x;
+					mTrueY[i] = y;
+					mPhase[i] = phase;
+					time += INTERVAL;
+					i++;
+				}
+				time += 500;
+			}
+		}
+
+		/**
+		 * A copy with pressure 0.8 (mode 0), 0 (mode 1), random between 0.2
+		 * and 1 (mode 2), or halving with each of the last five samples of
+		 * every gesture (mode 3).
+		 */
+		TouchSample[] withPressure(int mode) {
+			final TouchSample[] copy = new TouchSample[mStream.length];
+			final int perGesture = REST_SAMPLES + DRIFT_SAMPLES + SWIPE_SAMPLES;
+			final Random random = new Random(mode);
+			for (int i = 0; i < copy.length; i++) {
+				final TouchSample sample = new TouchSample();
+				sample.set(mStream[i]);
+				final int left = perGesture - 1 - i % perGesture;
+				final float pressure;
+				if (mode == 0) {
+					pressure = 0.8f;
+				} else if (mode == 1) {
+					pressure = 0f;
+				} else if (mode == 2) {
+					pressure = 0.2f + random.nextFloat() * 0.8f;
+				} else {
+					pressure = left < 5 ? 0.8f / (1 << (5 - left)) : 0.8f;
+				}
+				sample.setPointer(0, 0, sample.getX(0), sample.getY(0), pressure);
+				copy[i] = sample;
+			}
+			return copy;
+		}
+	}
+
+	/**
+	 * @return jitter and drift in px and lag in ms, indexed by REST, DRIFT
+	 *         and SWIPE
+	 */
+	private static double[] report(String name, Trace trace, TouchFilter filter) {
+		final TouchSample[] stream = trace.mStream;
+		final TouchSample out = new TouchSample();
+		double jitter = 0;
+		int jitterCount = 0;
+		double drift = 0;
+		int driftCount = 0;
+		double lag = 0;
+		int lagCount = 0;
+		long nanos = 0;
+		for (int r = 0; r < ROUNDS; r++) {
+			final boolean report = r == ROUNDS - 1;
+			final long start = System.nanoTime();
+			for (int i = 0; i < stream.length; i++) {
+				if (filter != null) {
+					filter.filter(stream[i], out);
+				} else {
+					out.set(stream[i]);
+				}
+				if (!report) {
+					continue;
+				}
+				final double dx = out.getX(0) - trace.mTrueX[i];
+				final double dy = out.getY(0) - trace.mTrueY[i];
+				if (trace.mPhase[i] == SWIPE) {
+					lag += Math.sqrt(dx * dx + dy * dy);
+					lagCount++;
+				} else if (trace.mPhase[i] == DRIFT) {
+					drift += dx * dx + dy * dy;
+					driftCount++;
+				} else {
+					jitter += dx * dx + dy * dy;
+					jitterCount++;
+				}
+			}
+			nanos = System.nanoTime() - start;
+		}
+		final double[] result = new double[3];
+		result[REST] = Math.sqrt(jitter / jitterCount);
+		result[DRIFT] = Math.sqrt(drift / driftCount);
+		result[SWIPE] = 1000.0 * lag / lagCount / SWIPE_SPEED;
+		System.out.println(String.format("%-28s jitter %5.2f px  drift %5.2f px  lag %5.2f ms  cost %5.1f ns/event",
+				name, result[REST], result[DRIFT], result[SWIPE], (double) nanos / stream.length));
+		return result;
+	}
+
+	/**
+	 * @return the moves reported without threshold
+	 */
+	private static int pressure(String name, TouchSample[] stream) {
+		final int moves = moves(stream, 0f);
+		System.out.println(String.format("pressure %-9s moves reported  threshold %.2f: %6d  no threshold: %6d",
+				name, BaseGestureDetector.PRESSURE_THRESHOLD,
+				moves(stream, BaseGestureDetector.PRESSURE_THRESHOLD), moves));
+		return moves;
+	}
+
+	private static int moves(TouchSample[] stream, float threshold) {
+		final int[] moves = new int[1];
+		final MoveGestureDetector detector = new MoveGestureDetector(
+				new MoveGestureDetector.SimpleOnMoveGestureListener() {
+					@Override
+					public boolean onMove(MoveGestureDetector detector) {
+						moves[0]++;
+						return true;
+					}
+				});
+		detector.setPressureThreshold(threshold);
+		for (int i = 0; i < stream.length; i++) {
+			detector.onTouchEvent(stream[i]);
+		}
+		return moves[0];
+	}
+
+	/**
+	 * Mean distance of the filtered first pointer from the raw one over the
+	 * moves.
+	 */
+	private static double offset(TouchSample[] stream, TouchFilter filter) {
+		final TouchSample out = new TouchSample();
+		double sum = 0;
+		int count = 0;
+		for (int i = 0; i < stream.length; i++) {
+			filter.filter(stream[i], out);
+			if (out.getActionMasked() != TouchSample.ACTION_MOVE) {
+				continue;
+			}
+			final double dx = out.getX(0) - stream[i].getX(0);
+			final double dy = out.getY(0) - stream[i].getY(0);
+			sum += Math.sqrt(dx * dx + dy * dy);
+			count++;
+		}
+		return count > 0 ? sum / count : 0;
+	}
+
+	private static double roughness(TouchSample[] stream, TouchFilter filter) {
+		final TouchSample out = new TouchSample();
+		double sum = 0;
+		int count = 0;
+		int run = 0;
+		float x0 = 0f;
+		float y0 = 0f;
+		float x1 = 0f;
+		float y1 = 0f;
+		for (int i = 0; i < stream.length; i++) {
+			if (filter != null) {
+				filter.filter(stream[i], out);
+			} else {
+				out.set(stream[i]);
+			}
+			if (out.getActionMasked() != TouchSample.ACTION_MOVE) {
+				run = 0;
+				continue;
+			}
+			final float x = out.getX(0);
+			final float y = out.getY(0);
+			if (run >= 2) {
+				final double ddx = x - 2 * x1 + x0;
+				final double ddy = y - 2 * y1 + y0;
+				sum += ddx * ddx + ddy * ddy;
+				count++;
+			}
+			x0 = x1;
+			y0 = y1;
+			x1 = x;
+			y1 = y;
+			run++;
+		}
+		return count > 0 ? Math.sqrt(sum / count) : 0;
+	}
+}
@@ -0,0 +1,59 @@
+package com.example.gestdemo.bench;
+
+import com.example.gestdemo.ImageTransform;
+import com.example.gestdemo.InertiaAnimator;
+
+/**
+ * Measures the cost of one physics step of the {@link InertiaAnimator} with
+ * all channels flung, half of them out of bounds so the springs run too,
+ * and checks that stepping does not allocate.
+ */
+public class InertiaBenchmark {
+
+	private static final int FLINGS = 20000;
+	/** 60 Hz frames. */
+	private static final long FRAME_NANOS = 16666667;
+
+	public static void main(String[] args) {
+		ImageTransform transform = new ImageTransform();
+		InertiaAnimator animator = new InertiaAnimator(transform);
+		animator.setTranslationBounds(0, 0, 1080, 1920);
+		animator.setScaleBounds(0.2f, 4f);
+
+		// first half is warm-up
+		run(transform, animator, FLINGS);
+		long startSteps = animator.getStepCount();
+		long startBytes = DetectorBenchmark.allocatedBytes();
+		long start = System.nanoTime();
+		int frames = run(transform, animator, FLINGS);
+		long elapsed = System.nanoTime() - start;
+		long bytes = DetectorBenchmark.allocatedBytes() - startBytes;
+		long steps = animator.getStepCount() - startSteps;
+
+		System.out.println(String.format(
+				"%d flings %d frames %d steps %6.1f ns/step %6.1f ns/frame %.2f B/frame, %.1f frames/fling",
+				FLINGS, frames, steps, (double) elapsed / steps, (double) elapsed / frames,
+				bytes < 0 ? Double.NaN : (double) bytes / frames, (double) frames / FLINGS));
+	}
+
+	private static int run(ImageTransform transform, InertiaAnimator animator, int flings) {
+		int frames = 0;
+		long time = 0;
+		for (int f = 0; f < flings; f++) {
+			boolean outside = (f & 1) != 0;
+			transform.setFocus(outside ? -200 : 540, outside ? 2100 : 960);
+			transform.setScale(outside ? 6f : 1f);
+			transform.setAlpha(128);
+			animator.flingTranslation(2000, -1500, time);
+			animator.flingRotation(360, time);
+			animator.flingScale(outside ? 1f : -1f, time);
+			animator.flingAlpha(300, time);
+			do {
+				time += FRAME_NANOS;
+				frames++;
+				transform.onApplied();
+			} while (animator.step(time));
+		}
+		return frames;
+	}
+}
@@ -0,0 +1,221 @@
+package com.example.gestdemo.bench;
+
+import java.util.Arrays;
+
+import com.example.gestdemo.GestureEngine;
+import com.example.gestdemo.GesturePipeline;
+import com.example.gestdemo.ImageTransform;
+import com.example.gestdemo.InertiaAnimator;
+import com.example.gestdemo.ShoveGestureDetector;
+import com.example.gestdemo.TouchSample;
+import com.example.gestdemo.TransformGestureDetector;
+import com.example.gestdemo.TransformUpdate;
+
+/**
+ * Compares recognizing on the UI thread with the {@link GesturePipeline}.
+ * The main thread plays the UI thread: it feeds the streams and applies the
+ * collected {@link TransformUpdate} once per frame, every FRAME_EVENTS
+ * events, as MainActivity does.
+ *
+ * Reports per stream:
+ * - inline: UI thread ns/event with the detectors in onTouch
+ * - pipeline flood: UI thread ns/event when enqueueing as fast as possible,
+ *   the worker's throughput, and the moves dropped when the ring is full
+ * - pipeline paced: one event every PACE_NANOS, latency from enqueue until
+ *   the worker handled the event
+ *
+ * Every run checks that the worker saw the events in order.
+ *
+ * Usage: PipelineBenchmark [ring-capacity]
+ */
+public class PipelineBenchmark {
+
+	private static final int[] POINTER_COUNTS = { 1, 2, 5 };
+	private static final int GESTURES = 100;
+	private static final int MOVES_PER_GESTURE = 240;
+	private static final int ROUNDS = 5;
+	/** Events between two applied frames, 240 Hz touch at 60 Hz display. */
+	private static final int FRAME_EVENTS = 4;
+	private static final long PACE_NANOS = 20000;
+
+	/** The detectors of MainActivity, collecting into one update. */
+	private static class Recognizer implements GesturePipeline.EventHandler {
+		final TransformUpdate mUpdate = new TransformUpdate();
+		final GestureEngine mEngine = new GestureEngine();
+		/** Time each event was handled, by position in the stream, or null. */
+		long[] mHandledTimes;
+		int mHandled;
+		long mLastEventTime = -1;
+		boolean mOutOfOrder;
+
+		Recognizer() {
+			final TransformUpdate update = mUpdate;
+			TransformGestureDetector transform = new TransformGestureDetector(
+					new TransformGestureDetector.SimpleOnTransformGestureListener() {
+						@Override
+						public boolean onTransform(TransformGestureDetector detector) {
+							update.addTransform(detector.getDeltaA(), detector.getDeltaB(),
+									detector.getDeltaTx(), detector.getDeltaTy(),
+									detector.getRotationDegreesDelta(), detector.getScaleFactor());
+							return true;
+						}
+
+						@Override
+						public void onTransformEnd(TransformGestureDetector detector) {
+							update.flingTranslation(detector.getVelocityX(), detector.getVelocityY());
+						}
+					});
+			ShoveGestureDetector shove = new ShoveGestureDetector(
+					new ShoveGestureDetector.SimpleOnShoveGestureListener() {
+						@Override
+						public boolean onShove(ShoveGestureDetector detector) {
+							update.addAlpha(detector.getShovePixelsDelta());
+							return true;
+						}
+					});
+			transform.setHistoryMode(TransformGestureDetector.HISTORY_COALESCE);
+			shove.setHistoryMode(ShoveGestureDetector.HISTORY_COALESCE);
+			mEngine.addDetector(transform);
+			mEngine.addDetector(shove);
+		}
+
+		void reset(long[] handledTimes) {
+			mHandledTimes = handledTimes;
+			mHandled = 0;
+			mLastEventTime = -1;
+		}
+
+		public void onTouchEvent(TouchSample sample) {
+			if (sample.getEventTime() <= mLastEventTime) {
+				mOutOfOrder = true;
+			}
+			mLastEventTime = sample.getEventTime();
+			mEngine.onTouchEvent(sample);
+			if (mHandledTimes != null) {
+				mHandledTimes[mHandled] = System.nanoTime();
+			}
+			mHandled++;
+		}
+
+		public void onQueueDrained() {
+		}
+	}
+
+	/** The UI side: the transform the updates are applied to. */
+	private static final ImageTransform sTransform = new ImageTransform();
+	private static final InertiaAnimator sInertia = new InertiaAnimator(sTransform);
+	private static final TransformUpdate sApplied = new TransformUpdate();
+
+	public static void main(String[] args) {
+		final int capacity = args.length > 0 ? Integer.parseInt(args[0]) : GesturePipeline.DEFAULT_CAPACITY;
+		// with one CPU the worker only runs when the UI thread waits
+		System.out.println("cpus=" + Runtime.getRuntime().availableProcessors() + " capacity=" + capacity);
+		for (int pointers : POINTER_COUNTS) {
+			final TouchSample[] stream = TouchStreams.gestures(pointers, GESTURES, MOVES_PER_GESTURE, 4);
+			for (int r = 0; r < ROUNDS; r++) {
+				final boolean report = r == ROUNDS - 1;
+				inline(pointers, stream, report);
+				flood(pointers, stream, capacity, report);
+				paced(pointers, stream, capacity, report);
+			}
+		}
+	}
+
+	private static void applyFrame(TransformUpdate update) {
+		update.moveTo(sApplied);
+		sApplied.applyTo(sTransform, sInertia, 0);
+		sTransform.onApplied();
+	}
+
+	private static void inline(int pointers, TouchSample[] stream, boolean report) {
+		final Recognizer recognizer = new Recognizer();
+		recognizer.reset(null);
+		final long start = System.nanoTime();
+		for (int i = 0; i < stream.length; i++) {
+			recognizer.onTouchEvent(stream[i]);
+			if (i % FRAME_EVENTS == FRAME_EVENTS - 1) {
+				applyFrame(recognizer.mUpdate);
+			}
+		}
+		final long elapsed = System.nanoTime() - start;
+		if (report) {
+			System.out.println(String.format("%-16s pointers=%d ui %7.1f ns/event%s", "inline", pointers,
+					(double) elapsed / stream.length, recognizer.mOutOfOrder ? "  OUT OF ORDER" : ""));
+		}
+	}
+
+	private static void flood(int pointers, TouchSample[] stream, int capacity, boolean report) {
+		final Recognizer recognizer = new Recognizer();
+		recognizer.reset(null);
+		final GesturePipeline pipeline = new GesturePipeline(capacity, recognizer);
+		pipeline.start();
+		final long start = System.nanoTime();
+		for (int i = 0; i < stream.length; i++) {
+			pipeline.enqueue(stream[i]);
+			if (i % FRAME_EVENTS == FRAME_EVENTS - 1) {
+				applyFrame(recognizer.mUpdate);
+			}
+		}
+		final long enqueued = System.nanoTime() - start;
+		pipeline.stop();
+		final long drained = System.nanoTime() - start;
+		applyFrame(recognizer.mUpdate);
+		final long lost = stream.length - recognizer.mHandled - pipeline.getDroppedCount();
+		if (report) {
+			System.out.println(String.format(
+					"%-16s pointers=%d ui %7.1f ns/event  worker %7.1f ns/event  dropped %d moves (%.1f %%)"
+							+ "  stalls %d%s",
+					"pipeline flood", pointers, (double) enqueued / stream.length,
+					(double) drained / recognizer.mHandled, pipeline.getDroppedCount(),
+					100.0 * pipeline.getDroppedCount() / stream.length, pipeline.getStallCount(),
+					recognizer.mOutOfOrder || lost != 0 ? "  OUT OF ORDER OR LOST" : ""));
+		}
+	}
+
+	private static void paced(int pointers, TouchSample[] stream, int capacity, boolean report) {
+		final Recognizer recognizer = new Recognizer();
+		final long[] enqueueTimes = new long[stream.length];
+		final long[] handledTimes = new long[stream.length];
+		recognizer.reset(handledTimes);
+		final GesturePipeline pipeline = new GesturePipeline(capacity, recognizer);
+		pipeline.start();
+		long busy = 0;
+		long next = System.nanoTime();
+		for (int i = 0; i < stream.length; i++) {
+			long now;
+			while ((now = System.nanoTime()) < next) {
+				// wait for the next event like a touch screen would, leaving
+				// the CPU to the worker if there is only one
+				Thread.yield();
+			}
+			enqueueTimes[i] = now;
+			pipeline.enqueue(stream[i]);
+			if (i % FRAME_EVENTS == FRAME_EVENTS - 1) {
+				applyFrame(recognizer.mUpdate);
+			}
+			busy += System.nanoTime() - now;
+			next = now + PACE_NANOS;
+		}
+		pipeline.stop();
+		applyFrame(recognizer.mUpdate);
+
+		final int handled = recognizer.mHandled;
+		if (pipeline.getDroppedCount() == 0 && handled == stream.length) {
+			final long[] latencies = new long[handled];
+			for (int i = 0; i < handled; i++) {
+				latencies[i] = handledTimes[i] - enqueueTimes[i];
+			}
+			Arrays.sort(latencies);
+			if (report) {
+				System.out.println(String.format(
+						"%-16s pointers=%d ui %7.1f ns/event  latency p50 %.1f us p99 %.1f us max %.1f us%s",
+						"pipeline paced", pointers, (double) busy / stream.length,
+						latencies[handled / 2] / 1e3, latencies[(int) (handled * 0.99)] / 1e3,
+						latencies[handled - 1] / 1e3, recognizer.mOutOfOrder ? "  OUT OF ORDER" : ""));
+			}
+		} else if (report) {
+			System.out.println(String.format("%-16s pointers=%d dropped %d moves, no latency",
+					"pipeline paced", pointers, pipeline.getDroppedCount()));
+		}
+	}
+}
@@ -0,0 +1,255 @@
+package com.example.gestdemo.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.example.gestdemo.BaseGestureDetector;
+import com.example.gestdemo.GestureFrame;
+import com.example.gestdemo.MoveGestureDetector;
+import com.example.gestdemo.RotateGestureDetector;
+import com.example.gestdemo.TouchPredictor;
+import com.example.gestdemo.TouchSample;
+
+/**
+ * Measures how much the {@link TouchPredictor} reduces the lag of the moved
+ * and rotated image. After every move event the position the listener
+ * shows is compared with where the pointers actually are one horizon
+ * later, when the frame is displayed. Without prediction the error is the
+ * movement during the horizon; the remaining lag is the horizon scaled by
+ * the error with prediction over the error without.
+ *
+ * Usage: PredictionBenchmark [horizon-ms] [recorded.trace ...]
+ *
+ * Move is measured on 1-pointer streams, rotate on 2-pointer streams, both
+ * clean and with 1 px of jitter. Recorded traces are measured with both.
+ *
+ * The mean error with prediction must stay below a share of the error
+ * without: MAX_CLEAN_ERROR_RATIO on clean streams, MAX_JITTER_ERROR_RATIO
+ * with jitter, and below the error without prediction on recorded traces.
+ * Otherwise the benchmark exits with 1.
+ */
+public class PredictionBenchmark {
+
+	private static final long DEFAULT_HORIZON = 24;
+	private static final double MAX_CLEAN_ERROR_RATIO = 0.2;
+	private static final double MAX_JITTER_ERROR_RATIO = 0.6;
+
+	/** Features of every sample of a stream, and where each gesture starts. */
+	private static final class Track {
+		final long[] time;
+		final float[] x;
+		final float[] y;
+		final int[] segment;
+
+		Track(TouchSample[] stream, boolean rotation) {
+			final int n = stream.length;
+			time = new long[n];
+			x = new float[n];
+			y = new float[n];
+			segment = new int[n];
+			GestureFrame frame = new GestureFrame();
+			int seg = 0;
+			double angle = 0;
+			double rotationDegrees = 0;
+			for (int i = 0; i < n; i++) {
+				frame.setSample(stream[i]);
+				time[i] = frame.getEventTime();
+				boolean start = frame.getActionMasked() != TouchSample.ACTION_MOVE;
+				if (start) {
+					seg++;
+				}
+				segment[i] = seg;
+				if (rotation) {
+					if (frame.getPointerCount() < 2) {
+						continue;
+					}
+					double a = frame.getPairAngle();
+					if (start) {
+						rotationDegrees = 0;
+					} else {
+						double step = angle - a;
+						if (step > Math.PI) {
+							step -= 2 * Math.PI;
+						} else if (step < -Math.PI) {
+							step += 2 * Math.PI;
+						}
+						rotationDegrees += Math.toDegrees(step);
+					}
+					angle = a;
+					x[i] = (float) rotationDegrees;
+				} else {
+					x[i] = frame.getFocusX();
+					y[i] = frame.getFocusY();
+				}
+			}
+		}
+
+		/**
+		 * Index of the first sample at or after the given time in the same
+		 * gesture as sample i, or -1 if the gesture ends before.
+		 */
+		int findAt(int i, long t) {
+			for (int j = i + 1; j < time.length && segment[j] == segment[i]; j++) {
+				if (time[j] >= t) {
+					return j;
+				}
+			}
+			return -1;
+		}
+
+		float valueAt(float[] v, int j, long t) {
+			long t0 = time[j - 1];
+			if (time[j] == t0) {
+				return v[j];
+			}
+			float f = (float) (t - t0) / (time[j] - t0);
+			return v[j - 1] + (v[j] - v[j - 1]) * f;
+		}
+	}
+
+	/** What the listener shows, built from the deltas it was given. */
+	private static final class Display {
+		float x;
+		float y;
+		boolean moved;
+	}
+
+	private static final class Result {
+		double sumError;
+		double[] errors;
+		int count;
+		long fallbacks;
+		long predictions;
+
+		double mean() {
+			return count == 0 ? Double.NaN : sumError / count;
+		}
+
+		double p95() {
+			if (count == 0) {
+				return Double.NaN;
+			}
+			double[] sorted = Arrays.copyOf(errors, count);
+			Arrays.sort(sorted);
+			return sorted[(int) (count * 0.95)];
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		long horizon = DEFAULT_HORIZON;
+		TouchSample[][] traces = new TouchSample[args.length][];
+		String[] traceNames = new String[args.length];
+		int traceCount = 0;
+		for (String arg : args) {
+			if (arg.endsWith(".trace")) {
+				traceNames[traceCount] = arg;
+				traces[traceCount++] = TouchStreams.fromTrace(new File(arg));
+			} else {
+				horizon = Long.parseLong(arg);
+			}
+		}
+
+		TouchSample[] one = TouchStreams.gestures(1, 50, 240, 8);
+		TouchSample[] two = TouchStreams.gestures(2, 50, 240, 8);
+		boolean passed = true;
+		passed &= report("move  clean", one, false, horizon, MAX_CLEAN_ERROR_RATIO);
+		passed &= report("move  jitter", TouchStreams.noisy(one, 1f, 1), false, horizon, MAX_JITTER_ERROR_RATIO);
+		passed &= report("rotate clean", two, true, horizon, MAX_CLEAN_ERROR_RATIO);
+		passed &= report("rotate jitter", TouchStreams.noisy(two, 1f, 1), true, horizon, MAX_JITTER_ERROR_RATIO);
+		for (int t = 0; t < traceCount; t++) {
+			passed &= report("move  " + traceNames[t], traces[t], false, horizon, 1);
+			passed &= report("rotate " + traceNames[t], traces[t], true, horizon, 1);
+		}
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @param maxRatio largest allowed mean error with prediction over the
+	 *            mean error without
+	 * @return true if the prediction stayed within maxRatio
+	 */
+	private static boolean report(String name, TouchSample[] stream, boolean rotation, long horizon,
+			double maxRatio) {
+		Track track = new Track(stream, rotation);
+		Result none = measure(stream, track, rotation, null, horizon);
+		TouchPredictor predictor = new TouchPredictor();
+		predictor.setHorizon(horizon);
+		Result predicted = measure(stream, track, rotation, predictor, horizon);
+		String unit = rotation ? "deg" : "px";
+		System.out.println(String.format(
+				"%-16s horizon=%dms error mean %6.2f -> %6.2f %s, p95 %6.2f -> %6.2f %s, lag %4.1f ms, fallback %4.1f%%",
+				name, horizon, none.mean(), predicted.mean(), unit, none.p95(), predicted.p95(), unit,
+				horizon * predicted.mean() / none.mean(),
+				predicted.predictions == 0 ? 0.0 : 100.0 * predicted.fallbacks / predicted.predictions));
+		// a stream without measured moves has nothing to check
+		if (none.count > 0 && !(predicted.mean() < maxRatio * none.mean())) {
+			System.out.println(String.format("  %s: error with prediction above %.2f of the error without", name,
+					maxRatio));
+			return false;
+		}
+		return true;
+	}
+
+	private static Result measure(TouchSample[] stream, Track track, boolean rotation, TouchPredictor predictor,
+			long horizon) {
+		final Display display = new Display();
+		final BaseGestureDetector detector;
+		if (rotation) {
+			RotateGestureDetector rotate = new RotateGestureDetector(
+					new RotateGestureDetector.SimpleOnRotateGestureListener() {
+						@Override
+						public boolean onRotate(RotateGestureDetector detector) {
+							display.x += detector.getPredictedRotationDegreesDelta();
+							display.moved = true;
+							return true;
+						}
+					});
+			rotate.setPredictor(predictor);
+			detector = rotate;
+		} else {
+			MoveGestureDetector move = new MoveGestureDetector(new MoveGestureDetector.SimpleOnMoveGestureListener() {
+				@Override
+				public boolean onMove(MoveGestureDetector detector) {
+					display.x += detector.getPredictedFocusDeltaX();
+					display.y += detector.getPredictedFocusDeltaY();
+					display.moved = true;
+					return true;
+				}
+			});
+			move.setPredictor(predictor);
+			detector = move;
+		}
+		detector.setHistoryMode(BaseGestureDetector.HISTORY_COALESCE);
+
+		Result result = new Result();
+		result.errors = new double[stream.length];
+		for (int i = 0; i < stream.length; i++) {
+			if (i == 0 || track.segment[i] != track.segment[i - 1]) {
+				display.x = track.x[i];
+				display.y = track.y[i];
+			}
+			display.moved = false;
+			detector.onTouchEvent(stream[i]);
+			if (!display.moved) {
+				continue;
+			}
+			int j = track.findAt(i, track.time[i] + horizon);
+			if (j < 0) {
+				continue;
+			}
+			float dx = display.x - track.valueAt(track.x, j, track.time[i] + horizon);
+			float dy = display.y - track.valueAt(track.y, j, track.time[i] + horizon);
+			double error = Math.sqrt(dx * dx + dy * dy);
+			result.errors[result.count++] = error;
+			result.sumError += error;
+		}
+		if (predictor != null) {
+			result.predictions = predictor.getPredictionCount();
+			result.fallbacks = predictor.getFallbackCount();
+		}
+		return result;
+	}
+}
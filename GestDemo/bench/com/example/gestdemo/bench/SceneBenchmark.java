@@ -0,0 +1,144 @@
+package com.example.gestdemo.bench;
+
+import java.util.Random;
+
+import com.example.gestdemo.ImageTransform;
+import com.example.gestdemo.Scene;
+import com.example.gestdemo.SceneItem;
+
+/**
+ * Measures the {@link Scene} index with growing item counts. Items of
+ * 60..200 pixels, rotated and scaled at random, are spread over a square
+ * that holds about ITEMS_PER_SCREEN of them per 1080x1920 screen, so denser
+ * scenes cover more ground rather than piling up.
+ *
+ * Reports per item count:
+ * - hit test: ns per random point with the index, against walking every
+ *   item, and how many items the index looked at
+ * - drag: ns per update of an item moved by a few pixels per event, and
+ *   how often the move changed its cells
+ *
+ * Every hit test is checked against the walk.
+ *
+ * Usage: SceneBenchmark [item-count ...]
+ */
+public class SceneBenchmark {
+
+	private static final int[] ITEM_COUNTS = { 100, 1000, 10000, 100000 };
+	private static final int ITEMS_PER_SCREEN = 200;
+	private static final int HIT_TESTS = 100000;
+	private static final int DRAG_EVENTS = 100000;
+	private static final int ROUNDS = 5;
+
+	static volatile int sBlackhole;
+
+	public static void main(String[] args) {
+		int[] counts = ITEM_COUNTS;
+		if (args.length > 0) {
+			counts = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				counts[i] = Integer.parseInt(args[i]);
+			}
+		}
+		for (int count : counts) {
+			run(count);
+		}
+	}
+
+	private static void run(int count) {
+		final Random random = new Random(18);
+		final float side = (float) Math.sqrt((double) count / ITEMS_PER_SCREEN * 1080 * 1920);
+		final Scene scene = new Scene();
+		for (int i = 0; i < count; i++) {
+			final SceneItem item = new SceneItem(60f + random.nextFloat() * 140f, 60f + random.nextFloat() * 140f);
+			final ImageTransform transform = item.getTransform();
+			transform.setFocus(random.nextFloat() * side, random.nextFloat() * side);
+			transform.rotateBy(random.nextFloat() * 360f);
+			transform.setScale(0.5f + random.nextFloat());
+			scene.addItem(item);
+		}
+
+		final float[] xs = new float[HIT_TESTS];
+		final float[] ys = new float[HIT_TESTS];
+		for (int i = 0; i < HIT_TESTS; i++) {
+			xs[i] = random.nextFloat() * side;
+			ys[i] = random.nextFloat() * side;
+		}
+		final SceneItem[] hits = new SceneItem[HIT_TESTS];
+
+		for (int r = 0; r < ROUNDS; r++) {
+			final boolean report = r == ROUNDS - 1;
+
+			final long candidates = scene.getHitTestCandidates();
+			long start = System.nanoTime();
+			for (int i = 0; i < HIT_TESTS; i++) {
+				hits[i] = scene.hitTest(xs[i], ys[i]);
+			}
+			final long indexedNanos = System.nanoTime() - start;
+			final long looked = scene.getHitTestCandidates() - candidates;
+
+			// fewer walks for large scenes, they take long
+			final int walks = Math.max(1000, Math.min(HIT_TESTS, HIT_TESTS * 1000 / count));
+			int disagreements = 0;
+			int hitCount = 0;
+			start = System.nanoTime();
+			for (int i = 0; i < walks; i++) {
+				final SceneItem hit = walk(scene, xs[i], ys[i]);
+				if (hit != hits[i]) {
+					disagreements++;
+				}
+			}
+			final long walkNanos = System.nanoTime() - start;
+			for (int i = 0; i < HIT_TESTS; i++) {
+				if (hits[i] != null) {
+					hitCount++;
+				}
+			}
+
+			// drag one item after the other by small steps, there and back
+			final long moves = scene.getIndexMoveCount();
+			start = System.nanoTime();
+			SceneItem item = null;
+			for (int i = 0; i < DRAG_EVENTS; i++) {
+				if (i % 100 == 0) {
+					item = scene.getItem(random.nextInt(scene.getItemCount()));
+				}
+				final float direction = i % 100 < 50 ? 1f : -1f;
+				item.getTransform().translateBy(4f * direction, 3f * direction);
+				item.getTransform().rotateBy(0.5f * direction);
+				scene.update(item);
+			}
+			final long dragNanos = System.nanoTime() - start;
+			final long moved = scene.getIndexMoveCount() - moves;
+
+			// the index stays right after the drags
+			for (int i = 0; i < 1000; i++) {
+				if (scene.hitTest(xs[i], ys[i]) != walk(scene, xs[i], ys[i])) {
+					disagreements++;
+				}
+			}
+
+			if (report) {
+				System.out.println(String.format(
+						"items=%6d hit test %6.1f ns (%.1f items looked at, %.0f %% hit)  walk %9.1f ns"
+								+ "  drag %5.1f ns/update (%.1f %% moved cells)  disagreements %d",
+						count, (double) indexedNanos / HIT_TESTS, (double) looked / HIT_TESTS,
+						100.0 * hitCount / HIT_TESTS, (double) walkNanos / walks, (double) dragNanos / DRAG_EVENTS,
+						100.0 * moved / DRAG_EVENTS, disagreements));
+			}
+		}
+	}
+
+	/** The top-most item under the point by walking every item. */
+	private static SceneItem walk(Scene scene, float x, float y) {
+		SceneItem hit = null;
+		for (int i = 0, n = scene.getItemCount(); i < n; i++) {
+			final SceneItem item = scene.getItem(i);
+			if ((hit == null || scene.getZ(item) > scene.getZ(hit)) && item.contains(x, y)) {
+				hit = item;
+			}
+		}
+		sBlackhole += hit != null ? 1 : 0;
+		return hit;
+	}
+}
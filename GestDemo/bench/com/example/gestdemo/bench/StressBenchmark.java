@@ -0,0 +1,280 @@
+package com.example.gestdemo.bench;
+
+import com.example.gestdemo.BaseGestureDetector;
+import com.example.gestdemo.GestureGeometry;
+import com.example.gestdemo.MoveGestureDetector;
+import com.example.gestdemo.RotateGestureDetector;
+import com.example.gestdemo.ShoveGestureDetector;
+import com.example.gestdemo.TouchSample;
+
+/**
+ * Drives the rotate, shove and move detectors with a {@link TouchWorkload}
+ * of all gesture kinds for many millions of events and checks invariants
+ * on every event:
+ * - deltas and velocities passed to listeners are finite
+ * - begin and end alternate, updates only come between them, and the
+ *   listener and the detector agree on whether a gesture is in progress
+ * - no gesture is left in progress once all pointers are up or cancelled
+ * - detectors do not hold on to the sample after the event: like a
+ *   recycled MotionEvent, the one sample the workload writes into is
+ *   poisoned with NaN positions after every event, so a detector that
+ *   reads it later reports NaN deltas
+ *
+ * Reports events/s of the three detectors together and the violations
+ * found, per sample rate. Generating an event costs more than detecting
+ * it, so the generator is timed alone on the same events first and its
+ * time taken off. Move events at 1000 Hz carry 8 samples, the
+ * older ones as history.
+ *
+ * Usage: StressBenchmark [events-per-rate] [seed]
+ */
+public class StressBenchmark {
+
+	private static final long DEFAULT_EVENTS = 10000000;
+	private static final int[] SAMPLE_RATES = { 120, 240, 1000 };
+	private static final int SCREEN_WIDTH = 1080;
+	private static final int SCREEN_HEIGHT = 1920;
+	private static final float EDGE_SLOP = 24f;
+	/** Violations printed per checker; all are counted. */
+	private static final int MAX_REPORTED = 5;
+
+	public static void main(String[] args) {
+		final long events = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_EVENTS;
+		final long seed = args.length > 1 ? Long.parseLong(args[1]) : 23;
+		boolean failed = false;
+		for (int rate : SAMPLE_RATES) {
+			failed |= !run(rate, events, seed);
+		}
+		if (failed) {
+			System.exit(1);
+		}
+	}
+
+	private static boolean run(int rate, long events, long seed) {
+		final TouchWorkload workload = newWorkload(rate, seed);
+		final TouchSample sample = new TouchSample();
+		final TouchWorkload generatorOnly = newWorkload(rate, seed);
+		final long generatorStart = System.nanoTime();
+		for (long i = 0; i < events; i++) {
+			generatorOnly.next(sample);
+			poison(sample);
+		}
+		final long generatorNanos = System.nanoTime() - generatorStart;
+
+		final GestureGeometry geometry = new GestureGeometry();
+		geometry.setScreen(SCREEN_WIDTH, SCREEN_HEIGHT, EDGE_SLOP);
+		final Checker rotateChecker = new Checker("rotate");
+		final Checker shoveChecker = new Checker("shove");
+		final Checker moveChecker = new Checker("move");
+		final RotateGestureDetector rotate = new RotateGestureDetector(new RotateChecker(rotateChecker));
+		final ShoveGestureDetector shove = new ShoveGestureDetector(new ShoveChecker(shoveChecker));
+		final MoveGestureDetector move = new MoveGestureDetector(new MoveChecker(moveChecker));
+		rotate.setGeometry(geometry);
+		shove.setGeometry(geometry);
+		rotateChecker.mDetector = rotate;
+		shoveChecker.mDetector = shove;
+		moveChecker.mDetector = move;
+		if (rate >= 1000) {
+			rotate.setHistoryMode(BaseGestureDetector.HISTORY_COALESCE);
+			shove.setHistoryMode(BaseGestureDetector.HISTORY_COALESCE);
+			move.setHistoryMode(BaseGestureDetector.HISTORY_COALESCE);
+		}
+
+		long nanos = 0;
+		for (long done = 0; done < events;) {
+			final long start = System.nanoTime();
+			final long chunk = Math.min(events - done, 1000000);
+			for (long i = 0; i < chunk; i++) {
+				workload.next(sample);
+				final int action = sample.getActionMasked();
+				rotate.onTouchEvent(sample);
+				shove.onTouchEvent(sample);
+				move.onTouchEvent(sample);
+				final boolean allUp = action == TouchSample.ACTION_UP || action == TouchSample.ACTION_CANCEL;
+				rotateChecker.afterEvent(allUp);
+				shoveChecker.afterEvent(allUp);
+				moveChecker.afterEvent(allUp);
+				poison(sample);
+			}
+			nanos += System.nanoTime() - start;
+			done += chunk;
+		}
+
+		final StringBuilder gestures = new StringBuilder();
+		for (int kind = 0; kind < TouchWorkload.KINDS; kind++) {
+			gestures.append(' ').append(TouchWorkload.kindName(kind)).append('=')
+					.append(workload.getGestureCount(kind));
+		}
+		final long detectorNanos = Math.max(1, nanos - generatorNanos);
+		System.out.println(String.format(
+				"rate=%4d Hz  %d events  detectors %.0f events/s %.1f ns/event  generator %.1f ns/event  gestures%s",
+				rate, events, events * 1e9 / detectorNanos, (double) detectorNanos / events,
+				(double) generatorNanos / events, gestures));
+		return rotateChecker.report() & shoveChecker.report() & moveChecker.report();
+	}
+
+	private static TouchWorkload newWorkload(int rate, long seed) {
+		final TouchWorkload workload = new TouchWorkload(seed);
+		workload.setSampleRate(rate);
+		workload.setNoise(1f);
+		workload.setScreen(SCREEN_WIDTH, SCREEN_HEIGHT, EDGE_SLOP);
+		workload.setBatchSize(rate >= 1000 ? 8 : 1);
+		return workload;
+	}
+
+	/**
+	 * Overwrite the positions of the sample, as if it had been recycled and
+	 * reused for another event.
+	 */
+	private static void poison(TouchSample sample) {
+		final int count = sample.getPointerCount();
+		for (int i = 0; i < count; i++) {
+			sample.setPointer(i, sample.getPointerId(i), Float.NaN, Float.NaN, Float.NaN);
+		}
+		for (int h = 0; h < sample.getHistorySize(); h++) {
+			for (int i = 0; i < count; i++) {
+				sample.setHistoricalPointer(h, i, Float.NaN, Float.NaN, Float.NaN);
+			}
+		}
+	}
+
+	/** Invariants of the callbacks of one detector. */
+	private static class Checker {
+		final String mName;
+		BaseGestureDetector mDetector;
+		boolean mOpen;
+		long mBegins;
+		long mEnds;
+		long mUpdates;
+		long mViolations;
+
+		Checker(String name) {
+			mName = name;
+		}
+
+		void begin() {
+			if (mOpen) {
+				violation("begin while in progress");
+			}
+			mBegins++;
+			mOpen = true;
+		}
+
+		void update(float a, float b) {
+			if (!mOpen) {
+				violation("update outside a gesture");
+			}
+			checkFinite(a, b);
+			mUpdates++;
+		}
+
+		void checkFinite(float a, float b) {
+			if (Float.isNaN(a) || Float.isInfinite(a) || Float.isNaN(b) || Float.isInfinite(b)) {
+				violation("delta not finite: " + a + ", " + b);
+			}
+		}
+
+		void end() {
+			if (!mOpen) {
+				violation("end without begin");
+			}
+			mEnds++;
+			mOpen = false;
+		}
+
+		void afterEvent(boolean allUp) {
+			if (mOpen != mDetector.isInProgress()) {
+				violation("listener " + (mOpen ? "in" : "out of") + " gesture, detector not");
+				mOpen = mDetector.isInProgress();
+			}
+			if (allUp && mOpen) {
+				violation("gesture left in progress after the last pointer went up");
+				mOpen = false;
+			}
+		}
+
+		void violation(String message) {
+			if (mViolations++ < MAX_REPORTED) {
+				System.out.println("  " + mName + " violation: " + message);
+			}
+		}
+
+		/** @return true if there were no violations */
+		boolean report() {
+			System.out.println(String.format("  %-6s begun %d ended %d updates %d violations %d", mName, mBegins,
+					mEnds, mUpdates, mViolations));
+			return mViolations == 0;
+		}
+	}
+
+	private static class RotateChecker implements RotateGestureDetector.OnRotateGestureListener {
+		private final Checker mChecker;
+
+		RotateChecker(Checker checker) {
+			mChecker = checker;
+		}
+
+		public boolean onRotate(RotateGestureDetector detector) {
+			mChecker.update(detector.getRotationDegreesDelta(), detector.getAngularVelocity());
+			return true;
+		}
+
+		public boolean onRotateBegin(RotateGestureDetector detector) {
+			mChecker.begin();
+			return true;
+		}
+
+		public void onRotateEnd(RotateGestureDetector detector) {
+			mChecker.update(detector.getRotationDegreesDelta(), detector.getAngularVelocity());
+			mChecker.end();
+		}
+	}
+
+	private static class ShoveChecker implements ShoveGestureDetector.OnShoveGestureListener {
+		private final Checker mChecker;
+
+		ShoveChecker(Checker checker) {
+			mChecker = checker;
+		}
+
+		public boolean onShove(ShoveGestureDetector detector) {
+			mChecker.update(detector.getShovePixelsDelta(), detector.getShoveVelocity());
+			return true;
+		}
+
+		public boolean onShoveBegin(ShoveGestureDetector detector) {
+			mChecker.begin();
+			return true;
+		}
+
+		public void onShoveEnd(ShoveGestureDetector detector) {
+			mChecker.update(detector.getShovePixelsDelta(), detector.getShoveVelocity());
+			mChecker.end();
+		}
+	}
+
+	private static class MoveChecker implements MoveGestureDetector.OnMoveGestureListener {
+		private final Checker mChecker;
+
+		MoveChecker(Checker checker) {
+			mChecker = checker;
+		}
+
+		public boolean onMove(MoveGestureDetector detector) {
+			mChecker.update(detector.getFocusDeltaX(), detector.getFocusDeltaY());
+			mChecker.checkFinite(detector.getVelocityX(), detector.getVelocityY());
+			return true;
+		}
+
+		public boolean onMoveBegin(MoveGestureDetector detector) {
+			mChecker.begin();
+			return true;
+		}
+
+		public void onMoveEnd(MoveGestureDetector detector) {
+			mChecker.update(detector.getFocusDeltaX(), detector.getFocusDeltaY());
+			mChecker.checkFinite(detector.getVelocityX(), detector.getVelocityY());
+			mChecker.end();
+		}
+	}
+}
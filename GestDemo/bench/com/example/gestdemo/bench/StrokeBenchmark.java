@@ -0,0 +1,163 @@
+package com.example.gestdemo.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import com.example.gestdemo.StrokeTemplateLibrary;
+
+/**
+ * Measures the stroke matcher with a library grown to LIBRARY_SIZE
+ * templates: distorted copies of the default symbols. Queries are the
+ * default symbols drawn again at a random size, position and slant, with
+ * jitter.
+ *
+ * Reports the size and load time of the binary library, the time to
+ * normalize a stroke and to match it with the index and early abandoning,
+ * against comparing every template in full, how many templates the
+ * indexed search compares, the recognition rate, and that both searches
+ * agree.
+ *
+ * Usage: StrokeBenchmark [library-size]
+ */
+public class StrokeBenchmark {
+
+	private static final int LIBRARY_SIZE = 500;
+	private static final int QUERIES = 2000;
+	private static final int ROUNDS = 5;
+	private static final int LOADS = 200;
+	private static final int POINTS = StrokeTemplateLibrary.POINTS;
+
+	static volatile float sBlackhole;
+
+	public static void main(String[] args) throws IOException {
+		final int size = args.length > 0 ? Integer.parseInt(args[0]) : LIBRARY_SIZE;
+		final StrokeTemplateLibrary symbols = StrokeTemplateLibrary.createDefault();
+		final Random random = new Random(17);
+
+		StrokeTemplateLibrary library = StrokeTemplateLibrary.createDefault();
+		float[] xs = new float[POINTS];
+		float[] ys = new float[POINTS];
+		while (library.getTemplateCount() < size) {
+			final int symbol = random.nextInt(symbols.getTemplateCount());
+			draw(symbols.getTemplate(symbol), random, 1f, 0.25f, 0.02f, xs, ys);
+			library.add(symbols.getTemplate(symbol).getName(), xs, ys, POINTS);
+		}
+
+		// the binary format
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		library.write(bytes);
+		final byte[] encoded = bytes.toByteArray();
+		long start = 0;
+		for (int r = 0; r < 2 * LOADS; r++) {
+			if (r == LOADS) {
+				start = System.nanoTime();
+			}
+			library = StrokeTemplateLibrary.read(new ByteArrayInputStream(encoded));
+		}
+		System.out.println(String.format("library %d templates %d bytes (%.0f B/template) load %.3f ms",
+				library.getTemplateCount(), encoded.length, (double) encoded.length / library.getTemplateCount(),
+				(System.nanoTime() - start) / 1e6 / LOADS));
+
+		// queries, drawn in pixels
+		final float[][] queryX = new float[QUERIES][POINTS];
+		final float[][] queryY = new float[QUERIES][POINTS];
+		final String[] queryNames = new String[QUERIES];
+		for (int q = 0; q < QUERIES; q++) {
+			final int symbol = random.nextInt(symbols.getTemplateCount());
+			final float scale = 150f + random.nextFloat() * 450f;
+			draw(symbols.getTemplate(symbol), random, scale, 0.2f, 3f / scale, queryX[q], queryY[q]);
+			queryNames[q] = symbols.getTemplate(symbol).getName();
+		}
+
+		final float[][] normalized = new float[QUERIES][2 * POINTS];
+		final StrokeTemplateLibrary.Match match = new StrokeTemplateLibrary.Match();
+		for (int r = 0; r < ROUNDS; r++) {
+			final boolean report = r == ROUNDS - 1;
+
+			start = System.nanoTime();
+			for (int q = 0; q < QUERIES; q++) {
+				StrokeTemplateLibrary.normalize(queryX[q], queryY[q], POINTS, normalized[q]);
+			}
+			final long normalizeNanos = System.nanoTime() - start;
+
+			long compared = 0;
+			int recognized = 0;
+			final String[] indexedNames = new String[QUERIES];
+			start = System.nanoTime();
+			for (int q = 0; q < QUERIES; q++) {
+				library.match(normalized[q], 0f, match);
+				compared += match.getComparedCount();
+				indexedNames[q] = match.getName();
+				sBlackhole += match.getDistance();
+			}
+			final long indexedNanos = System.nanoTime() - start;
+			for (int q = 0; q < QUERIES; q++) {
+				if (queryNames[q].equals(indexedNames[q])) {
+					recognized++;
+				}
+			}
+
+			int disagreements = 0;
+			start = System.nanoTime();
+			for (int q = 0; q < QUERIES; q++) {
+				final String name = bruteForce(library, normalized[q]);
+				if (!name.equals(indexedNames[q])) {
+					disagreements++;
+				}
+			}
+			final long bruteNanos = System.nanoTime() - start;
+
+			if (report) {
+				System.out.println(String.format(
+						"normalize %.2f us  match indexed %.1f us (%.1f templates compared)  full %.1f us"
+								+ "  recognized %.1f %%  disagreements %d",
+						normalizeNanos / 1e3 / QUERIES, indexedNanos / 1e3 / QUERIES,
+						(double) compared / QUERIES, bruteNanos / 1e3 / QUERIES,
+						100.0 * recognized / QUERIES, disagreements));
+			}
+		}
+	}
+
+	/**
+	 * Draw a template again: scaled, slanted by up to slant radians,
+	 * stretched by up to 20 % and jittered by jitter in template units.
+	 */
+	private static void draw(StrokeTemplateLibrary.Template template, Random random, float scale, float slant,
+			float jitter, float[] xs, float[] ys) {
+		final double angle = (random.nextDouble() * 2 - 1) * slant;
+		final float cos = (float) Math.cos(angle);
+		final float sin = (float) Math.sin(angle);
+		final float stretchX = 0.8f + random.nextFloat() * 0.4f;
+		final float stretchY = 0.8f + random.nextFloat() * 0.4f;
+		final float offsetX = random.nextFloat() * 1000f;
+		final float offsetY = random.nextFloat() * 1000f;
+		for (int i = 0; i < POINTS; i++) {
+			final float x = template.getX(i) * stretchX + (random.nextFloat() * 2 - 1) * jitter;
+			final float y = template.getY(i) * stretchY + (random.nextFloat() * 2 - 1) * jitter;
+			xs[i] = offsetX + scale * (cos * x - sin * y);
+			ys[i] = offsetY + scale * (sin * x + cos * y);
+		}
+	}
+
+	/** Every template in full, the reference for the indexed search. */
+	private static String bruteForce(StrokeTemplateLibrary library, float[] stroke) {
+		float best = Float.POSITIVE_INFINITY;
+		String name = null;
+		for (int t = 0; t < library.getTemplateCount(); t++) {
+			final StrokeTemplateLibrary.Template template = library.getTemplate(t);
+			float sum = 0f;
+			for (int i = 0; i < POINTS; i++) {
+				final float dx = stroke[2 * i] - template.getX(i);
+				final float dy = stroke[2 * i + 1] - template.getY(i);
+				sum += (float) Math.sqrt(dx * dx + dy * dy);
+			}
+			if (sum < best) {
+				best = sum;
+				name = template.getName();
+			}
+		}
+		return name;
+	}
+}
@@ -0,0 +1,228 @@
+package com.example.gestdemo.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.example.gestdemo.BaseGestureDetector;
+import com.example.gestdemo.CallbackThrottle;
+import com.example.gestdemo.GestureGeometry;
+import com.example.gestdemo.GestureMetrics;
+import com.example.gestdemo.MoveGestureDetector;
+import com.example.gestdemo.RotateGestureDetector;
+import com.example.gestdemo.ShoveGestureDetector;
+import com.example.gestdemo.TouchSample;
+
+/**
+ * Replays pans, rotations and shoves sampled at 240 Hz in real time through
+ * the move, rotate and shove detectors, whose listeners busy-wait for a
+ * given time per call like heavy downstream work, without and with a
+ * {@link CallbackThrottle} for a 120 Hz display.
+ *
+ * The detectors coalesce history like in MainActivity. Reports per
+ * listener cost the share of updates decimated, the listener time per
+ * frame (95th percentile and maximum, in ms out of the 8.3 ms frame), how
+ * late events were handled behind their time, and how far the net delta of
+ * a gesture differs from the run without throttle at the same cost: move
+ * px, rotate degrees, shove px. The net delta sums the updates, and for
+ * rotate and shove the rest the end callback reports. Skipped updates carry
+ * over and the last one is made before the end, so that difference stays
+ * at rounding error.
+ *
+ * Usage: ThrottleBenchmark [seconds-per-run]
+ */
+public class ThrottleBenchmark {
+
+	private static final int SAMPLE_RATE = 240;
+	private static final float REFRESH_RATE = 120f;
+	private static final long[] LISTENER_MICROS = { 100, 2000, 6000 };
+	private static final double DEFAULT_SECONDS = 5;
+
+	public static void main(String[] args) {
+		final double seconds = args.length > 0 ? Double.parseDouble(args[0]) : DEFAULT_SECONDS;
+		final TouchWorkload workload = new TouchWorkload(25);
+		workload.setSampleRate(SAMPLE_RATE);
+		workload.setKinds(TouchWorkload.PAN, TouchWorkload.ROTATE, TouchWorkload.SHOVE);
+		final ArrayList<TouchSample> events = new ArrayList<TouchSample>();
+		TouchSample sample = new TouchSample();
+		workload.next(sample);
+		final long firstTime = sample.getEventTime();
+		// end with a whole gesture
+		while (sample.getEventTime() - firstTime < seconds * 1000
+				|| sample.getActionMasked() != TouchSample.ACTION_DOWN) {
+			events.add(sample);
+			sample = new TouchSample();
+			workload.next(sample);
+		}
+		final TouchSample[] stream = events.toArray(new TouchSample[events.size()]);
+		int gestures = 0;
+		for (TouchSample event : stream) {
+			if (event.getActionMasked() == TouchSample.ACTION_DOWN) {
+				gestures++;
+			}
+		}
+		System.out.println(stream.length + " events, " + gestures + " gestures, "
+				+ (stream[stream.length - 1].getEventTime() - firstTime) + " ms per run");
+
+		for (long micros : LISTENER_MICROS) {
+			final Run plain = new Run(stream, gestures, micros * 1000, false);
+			final Run throttled = new Run(stream, gestures, micros * 1000, true);
+			plain.report(null);
+			throttled.report(plain);
+		}
+	}
+
+	private static class Run implements MoveGestureDetector.OnMoveGestureListener,
+			RotateGestureDetector.OnRotateGestureListener, ShoveGestureDetector.OnShoveGestureListener {
+		final long mCost;
+		final boolean mThrottled;
+		final long mFrameInterval = (long) (1e9 / REFRESH_RATE);
+		/** Per gesture the net update deltas of move, rotate and shove. */
+		final double[][] mNet;
+		int mGesture = -1;
+		/** Listener time per frame since the start of the run. */
+		final long[] mFrameCost;
+		long mStart;
+		double mLatencySum;
+		long mLatencyMax;
+		double mDecimationRatio;
+
+		Run(TouchSample[] stream, int gestures, long cost, boolean throttled) {
+			mCost = cost;
+			mThrottled = throttled;
+			mNet = new double[3][gestures];
+			final long span = (stream[stream.length - 1].getEventTime() - stream[0].getEventTime()) * 1000000L;
+			// room for the lag the slowest listener builds up
+			mFrameCost = new long[(int) (4 * span / mFrameInterval) + 2];
+
+			final GestureGeometry geometry = new GestureGeometry();
+			geometry.setScreen(1080, 1920, 24f);
+			final MoveGestureDetector move = new MoveGestureDetector(this);
+			final RotateGestureDetector rotate = new RotateGestureDetector(this);
+			final ShoveGestureDetector shove = new ShoveGestureDetector(this);
+			rotate.setGeometry(geometry);
+			shove.setGeometry(geometry);
+			final BaseGestureDetector[] detectors = { move, rotate, shove };
+			for (BaseGestureDetector detector : detectors) {
+				detector.setHistoryMode(BaseGestureDetector.HISTORY_COALESCE);
+			}
+			if (throttled) {
+				final CallbackThrottle throttle = new CallbackThrottle();
+				throttle.setRefreshRate(REFRESH_RATE);
+				for (BaseGestureDetector detector : detectors) {
+					detector.setCallbackThrottle(throttle);
+				}
+			}
+
+			final long firstTime = stream[0].getEventTime();
+			mStart = System.nanoTime();
+			for (TouchSample event : stream) {
+				final long due = mStart + (event.getEventTime() - firstTime) * 1000000L;
+				long now = System.nanoTime();
+				while (now < due) {
+					now = System.nanoTime();
+				}
+				final long latency = now - due;
+				mLatencySum += latency;
+				mLatencyMax = Math.max(mLatencyMax, latency);
+				if (event.getActionMasked() == TouchSample.ACTION_DOWN) {
+					mGesture++;
+				}
+				for (BaseGestureDetector detector : detectors) {
+					detector.onTouchEvent(event);
+				}
+			}
+			mLatencySum /= stream.length;
+
+			long decimated = 0;
+			long updates = 0;
+			final GestureMetrics.Snapshot snapshot = new GestureMetrics.Snapshot();
+			for (BaseGestureDetector detector : detectors) {
+				detector.getMetrics().snapshot(snapshot);
+				decimated += snapshot.getCount(GestureMetrics.UPDATES_DECIMATED);
+				updates += snapshot.getCount(GestureMetrics.UPDATES);
+			}
+			mDecimationRatio = (double) decimated / Math.max(1, decimated + updates);
+		}
+
+		/** Busy-wait like a listener doing heavy work. */
+		private void work() {
+			final long start = System.nanoTime();
+			long now = start;
+			while (now - start < mCost) {
+				now = System.nanoTime();
+			}
+			final int frame = (int) Math.min((start - mStart) / mFrameInterval, mFrameCost.length - 1);
+			mFrameCost[frame] += now - start;
+		}
+
+		void report(Run plain) {
+			final long[] costs = mFrameCost.clone();
+			Arrays.sort(costs);
+			final long p95 = costs[(int) (0.95 * (costs.length - 1))];
+			final long max = costs[costs.length - 1];
+			String difference = "";
+			if (plain != null) {
+				final double[] worst = new double[3];
+				for (int d = 0; d < 3; d++) {
+					for (int g = 0; g < mNet[d].length; g++) {
+						worst[d] = Math.max(worst[d], Math.abs(mNet[d][g] - plain.mNet[d][g]));
+					}
+				}
+				difference = String.format("  net delta difference %.4f px %.4f deg %.4f px", worst[0], worst[1],
+						worst[2]);
+			}
+			System.out.println(String.format(
+					"listener %5.1f ms %-10s decimated %5.1f %%  listener per frame p95 %5.2f ms max %5.2f ms"
+							+ "  lateness mean %7.2f ms max %8.2f ms%s",
+					mCost / 1e6, mThrottled ? "throttled" : "plain", 100 * mDecimationRatio, p95 / 1e6, max / 1e6,
+					mLatencySum / 1e6, mLatencyMax / 1e6, difference));
+		}
+
+		public boolean onMove(MoveGestureDetector detector) {
+			mNet[0][mGesture] += detector.getFocusDeltaX() + detector.getFocusDeltaY();
+			work();
+			return true;
+		}
+
+		public boolean onMoveBegin(MoveGestureDetector detector) {
+			work();
+			return true;
+		}
+
+		public void onMoveEnd(MoveGestureDetector detector) {
+			work();
+		}
+
+		public boolean onRotate(RotateGestureDetector detector) {
+			mNet[1][mGesture] += detector.getRotationDegreesDelta();
+			work();
+			return true;
+		}
+
+		public boolean onRotateBegin(RotateGestureDetector detector) {
+			work();
+			return true;
+		}
+
+		public void onRotateEnd(RotateGestureDetector detector) {
+			mNet[1][mGesture] += detector.getRotationDegreesDelta();
+			work();
+		}
+
+		public boolean onShove(ShoveGestureDetector detector) {
+			mNet[2][mGesture] += detector.getShovePixelsDelta();
+			work();
+			return true;
+		}
+
+		public boolean onShoveBegin(ShoveGestureDetector detector) {
+			work();
+			return true;
+		}
+
+		public void onShoveEnd(ShoveGestureDetector detector) {
+			mNet[2][mGesture] += detector.getShovePixelsDelta();
+			work();
+		}
+	}
+}
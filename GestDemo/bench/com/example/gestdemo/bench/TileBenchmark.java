@@ -0,0 +1,162 @@
+package com.example.gestdemo.bench;
+
+import java.util.Random;
+
+import com.example.gestdemo.TileCache;
+import com.example.gestdemo.TileLayout;
+
+/**
+ * Replays a scripted session of pans and zooms over a large image through
+ * the tile planning of TiledImageView, with a decoder simulated as
+ * DECODES_PER_FRAME tiles per 60 Hz frame, about what a phone decodes of a
+ * JPEG in a frame.
+ *
+ * Reports with and without prefetching in the direction of motion:
+ * - missing: visible tiles not decoded yet when drawn, the base layer shows;
+ *   in all frames and in the frames of pans without zoom
+ * - decoded: tiles decoded over the session
+ * - memory: the cache budget against the whole image at full resolution
+ * - plan: ns per frame to find the visible tiles and the ones to decode
+ *
+ * Usage: TileBenchmark [decodes-per-frame]
+ */
+public class TileBenchmark {
+
+	private static final int IMAGE_WIDTH = 16000;
+	private static final int IMAGE_HEIGHT = 12000;
+	private static final int VIEW_WIDTH = 1080;
+	private static final int VIEW_HEIGHT = 1920;
+	/** RGB_565 tiles. */
+	private static final int TILE_BYTES = TileLayout.TILE_SIZE * TileLayout.TILE_SIZE * 2;
+	private static final long CACHE_BYTES = 32L << 20;
+	private static final int DECODES_PER_FRAME = 2;
+	private static final int FRAMES = 60 * 120;
+	private static final int ROUNDS = 3;
+
+	private static final Object TILE = new Object();
+
+	public static void main(String[] args) {
+		final int decodes = args.length > 0 ? Integer.parseInt(args[0]) : DECODES_PER_FRAME;
+		for (int r = 0; r < ROUNDS; r++) {
+			final boolean report = r == ROUNDS - 1;
+			run("no prefetch", false, decodes, report);
+			run("prefetch", true, decodes, report);
+		}
+	}
+
+	private static void run(String name, boolean prefetch, int decodes, boolean report) {
+		final Random random = new Random(19);
+		final TileLayout layout = new TileLayout(IMAGE_WIDTH, IMAGE_HEIGHT);
+		final TileCache<Object> cache = new TileCache<Object>(CACHE_BYTES) {
+			@Override
+			protected int sizeOf(Object tile) {
+				return TILE_BYTES;
+			}
+		};
+		final float[] bounds = new float[4];
+		final int[] range = new int[4];
+		final int[] ahead = new int[4];
+		long[] wanted = new long[1024];
+
+		// the image centre on the screen, and how it moves
+		float focusX = VIEW_WIDTH / 2f;
+		float focusY = VIEW_HEIGHT / 2f;
+		float scale = 0.1f;
+		float degrees = 0f;
+		float velocityX = 0f;
+		float velocityY = 0f;
+		float zoom = 1f;
+		float lastCenterX = Float.NaN;
+		float lastCenterY = 0f;
+
+		long visible = 0;
+		long missing = 0;
+		long panVisible = 0;
+		long panMissing = 0;
+		long decoded = 0;
+		long planNanos = 0;
+		for (int frame = 0; frame < FRAMES; frame++) {
+			if (frame % 90 == 0) {
+				// a new gesture: a fling, sometimes a zoom
+				final double angle = random.nextDouble() * 2 * Math.PI;
+				final float speed = 500f + random.nextFloat() * 2500f;
+				velocityX = (float) Math.cos(angle) * speed;
+				velocityY = (float) Math.sin(angle) * speed;
+				zoom = random.nextInt(3) == 0 ? (float) Math.pow(2, (random.nextFloat() * 2 - 1) / 30) : 1f;
+				degrees = random.nextFloat() * 20f - 10f;
+			}
+			focusX += velocityX / 60f;
+			focusY += velocityY / 60f;
+			velocityX *= 0.97f;
+			velocityY *= 0.97f;
+			scale = Math.max(0.05f, Math.min(scale * zoom, 2f));
+			// keep the image on the screen
+			final float halfWidth = IMAGE_WIDTH * scale / 2;
+			final float halfHeight = IMAGE_HEIGHT * scale / 2;
+			focusX = Math.max(VIEW_WIDTH - halfWidth, Math.min(focusX, halfWidth));
+			focusY = Math.max(VIEW_HEIGHT - halfHeight, Math.min(focusY, halfHeight));
+
+			// what onDraw does
+			final long start = System.nanoTime();
+			final int sample = TileLayout.sampleSizeFor(scale);
+			layout.getVisibleBounds(focusX, focusY, degrees, scale, VIEW_WIDTH, VIEW_HEIGHT, bounds);
+			final float centerX = (bounds[0] + bounds[2]) / 2;
+			final float centerY = (bounds[1] + bounds[3]) / 2;
+			final float dx = Float.isNaN(lastCenterX) ? 0f : centerX - lastCenterX;
+			final float dy = Float.isNaN(lastCenterX) ? 0f : centerY - lastCenterY;
+			lastCenterX = centerX;
+			lastCenterY = centerY;
+			int count = 0;
+			if (layout.getTileRange(bounds, sample, range)) {
+				for (int row = range[1]; row <= range[3]; row++) {
+					for (int column = range[0]; column <= range[2]; column++) {
+						final long key = TileLayout.key(sample, column, row);
+						visible++;
+						if (zoom == 1f) {
+							panVisible++;
+						}
+						if (cache.get(key) == null) {
+							missing++;
+							if (zoom == 1f) {
+								panMissing++;
+							}
+							wanted[count++] = key;
+						}
+					}
+				}
+				if (prefetch) {
+					layout.getPrefetchRange(range, dx, dy, sample, ahead);
+					for (int row = ahead[1]; row <= ahead[3]; row++) {
+						for (int column = ahead[0]; column <= ahead[2]; column++) {
+							if (row >= range[1] && row <= range[3] && column >= range[0] && column <= range[2]) {
+								continue;
+							}
+							final long key = TileLayout.key(sample, column, row);
+							if (!cache.contains(key)) {
+								wanted[count++] = key;
+							}
+						}
+					}
+				}
+			}
+			planNanos += System.nanoTime() - start;
+
+			// the decoder works through the request until the next frame
+			for (int i = 0; i < Math.min(decodes, count); i++) {
+				cache.put(wanted[i], TILE);
+				decoded++;
+			}
+			if (wanted.length < 4 * count) {
+				wanted = new long[8 * count];
+			}
+		}
+		if (report) {
+			System.out.println(String.format(
+					"%-12s missing %5.2f %% of visible tiles, %5.2f %% in pans  decoded %d tiles"
+							+ "  memory %.0f MB (whole image %.0f MB)  plan %.0f ns/frame",
+					name, 100.0 * missing / visible, 100.0 * panMissing / panVisible, decoded,
+					(double) CACHE_BYTES / (1 << 20), (double) IMAGE_WIDTH * IMAGE_HEIGHT * 2 / (1 << 20),
+					(double) planNanos / FRAMES));
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package com.example.gestdemo.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.example.gestdemo.TouchSample;
+import com.example.gestdemo.TouchTraceReplayer;
+
+/**
+ * Builds synthetic multi-touch streams for the benchmarks. A stream is a
+ * preallocated array of samples, so replaying it allocates nothing.
+ */
+public final class TouchStreams {
+
+	private TouchStreams() {
+	}
+
+	/**
+	 * Build a stream of gestures with the given number of pointers. Every
+	 * gesture puts the pointers down one after the other, moves them for
+	 * movesPerGesture samples while they pan, rotate and spread, and lifts
+	 * them again.
+	 *
+	 * @param pointers number of pointers per gesture, at least 1
+	 * @param gestures number of gestures in the stream
+	 * @param movesPerGesture number of ACTION_MOVE samples per gesture
+	 * @param sampleIntervalMs time between two samples
+	 * @return
+	 */
+	public static TouchSample[] gestures(int pointers, int gestures, int movesPerGesture, long sampleIntervalMs) {
+		final int perGesture = 2 * pointers + movesPerGesture;
+		TouchSample[] stream = new TouchSample[gestures * perGesture];
+		long time = 0;
+		int n = 0;
+		for (int g = 0; g < gestures; g++) {
+			for (int p = 0; p < pointers; p++) {
+				int action = p == 0 ? TouchSample.ACTION_DOWN : TouchSample.ACTION_POINTER_DOWN;
+				stream[n++] = sample(action, p, time, p + 1, g, 0);
+				time += sampleIntervalMs;
+			}
+			for (int m = 0; m < movesPerGesture; m++) {
+				stream[n++] = sample(TouchSample.ACTION_MOVE, 0, time, pointers, g, m + 1);
+				time += sampleIntervalMs;
+			}
+			for (int p = pointers - 1; p >= 0; p--) {
+				int action = p == 0 ? TouchSample.ACTION_UP : TouchSample.ACTION_POINTER_UP;
+				stream[n++] = sample(action, p, time, p + 1, g, movesPerGesture);
+				time += sampleIntervalMs;
+			}
+		}
+		return stream;
+	}
+
+	/**
+	 * Copy a stream and add uniform noise of up to amplitude pixels to every
+	 * pointer position, like the jitter of a real touch screen.
+	 */
+	public static TouchSample[] noisy(TouchSample[] stream, float amplitude, long seed) {
+		Random random = new Random(seed);
+		TouchSample[] noisy = new TouchSample[stream.length];
+		for (int n = 0; n < stream.length; n++) {
+			TouchSample s = new TouchSample();
+			s.set(stream[n]);
+			for (int p = 0; p < s.getPointerCount(); p++) {
+				s.setPointer(p, s.getPointerId(p),
+						s.getX(p) + (random.nextFloat() * 2 - 1) * amplitude,
+						s.getY(p) + (random.nextFloat() * 2 - 1) * amplitude,
+						s.getPressure(p));
+			}
+			noisy[n] = s;
+		}
+		return noisy;
+	}
+
+	/**
+	 * Load a recorded trace into a stream.
+	 */
+	public static TouchSample[] fromTrace(File trace) throws IOException {
+		TouchTraceReplayer replayer = new TouchTraceReplayer(trace);
+		ArrayList<TouchSample> samples = new ArrayList<TouchSample>();
+		TouchSample sample;
+		while ((sample = replayer.next()) != null) {
+			TouchSample copy = new TouchSample();
+			copy.set(sample);
+			samples.add(copy);
+		}
+		return samples.toArray(new TouchSample[samples.size()]);
+	}
+
+	/**
+	 * Pointers sit on a circle around a moving center. With every step the
+	 * center pans, the circle rotates by one degree and its radius grows.
+	 */
+	private static TouchSample sample(int action, int actionIndex, long time, int pointerCount,
+			int gesture, int step) {
+		TouchSample s = new TouchSample();
+		s.setAction(action, actionIndex, time, pointerCount);
+		final float centerX = 400f + step * 2f + (gesture % 7) * 10f;
+		final float centerY = 600f + step * 1.5f;
+		final float radius = 150f + step * 0.5f;
+		for (int p = 0; p < pointerCount; p++) {
+			double angle = Math.toRadians(step + p * 360.0 / Math.max(pointerCount, 2));
+			s.setPointer(p, p,
+					centerX + (float) (radius * Math.cos(angle)),
+					centerY + (float) (radius * Math.sin(angle)),
+					0.8f);
+		}
+		return s;
+	}
+}
@@ -0,0 +1,382 @@
+package com.example.gestdemo.bench;
+
+import java.util.Random;
+
+import com.example.gestdemo.TouchSample;
+
+/**
+ * Generates an endless multi-touch stream of parametric gestures from a
+ * seeded random source, for stress and throughput runs far longer than a
+ * person can produce by hand. See {@link #next(TouchSample)}.
+ *
+ * Gesture kinds:
+ * - PAN: 1 to 3 pointers translate together
+ * - PINCH: 2 pointers spread or close
+ * - ROTATE: 2 pointers turn around their centre, or half of the time
+ *   around the first pointer
+ * - SHOVE: 2 side by side pointers move up or down together
+ * - CHURN: up to MAX_POINTERS pointers, with pointers going down and up at
+ *   random between the moves
+ * - CANCEL: any motion, ended by ACTION_CANCEL at a random move
+ * - EDGE: the first pointer goes down in the edge slop band or just off
+ *   the screen and moves inwards
+ *
+ * A gesture lasts a random time and is sampled at the sample rate, so a
+ * higher rate gives more and finer steps along the same path, and CHURN
+ * changes pointers at the same rate per second. Positions get uniform
+ * noise, and at a batch size above 1 every move event carries the samples
+ * before it as history, like a touch screen that samples faster than the
+ * display.
+ */
+public class TouchWorkload {
+
+	public static final int PAN = 0;
+	public static final int PINCH = 1;
+	public static final int ROTATE = 2;
+	public static final int SHOVE = 3;
+	public static final int CHURN = 4;
+	public static final int CANCEL = 5;
+	public static final int EDGE = 6;
+	public static final int KINDS = 7;
+
+	public static final int MAX_POINTERS = 10;
+
+	private static final String[] KIND_NAMES = {
+		"pan", "pinch", "rotate", "shove", "churn", "cancel", "edge"
+	};
+
+	private static final int PHASE_DONE = 0;
+	private static final int PHASE_DOWN = 1;
+	private static final int PHASE_MOVE = 2;
+	private static final int PHASE_UP = 3;
+
+	/** Pointers going down or up per second in CHURN, instead of a move. */
+	private static final float CHURN_RATE = 24f;
+
+	private final Random mRandom;
+
+	private int mSampleRate = 120;
+	private float mNoise = 1f;
+	private int mBatchSize = 1;
+	/** Length of a gesture's motion in ms. */
+	private int mMinDuration = 170;
+	private int mMaxDuration = 1700;
+	private int mScreenWidth = 1080;
+	private int mScreenHeight = 1920;
+	private float mEdgeSlop = 24f;
+	private int[] mKinds = { PAN, PINCH, ROTATE, SHOVE, CHURN, CANCEL, EDGE };
+
+	private double mTime;
+	private long mEventCount;
+	private final long[] mGestureCounts = new long[KINDS];
+
+	/** The gesture being generated. */
+	private int mKind;
+	private int mPhase = PHASE_DONE;
+	private int mTargetPointers;
+	private int mStep;
+	private int mSteps;
+	private int mCancelStep;
+	private float mCenterX;
+	private float mCenterY;
+	private float mPanX;
+	private float mPanY;
+	private float mRadius;
+	private float mPinch;
+	private double mAngle;
+	private double mRotation;
+	/** Rotate around the first pointer instead of the centre. */
+	private boolean mPivot;
+
+	/** Pointers down, ordered by id. */
+	private int mPointerCount;
+	private final int[] mIds = new int[MAX_POINTERS];
+	private final double[] mOffsetAngles = new double[MAX_POINTERS];
+	private final float[] mRadiusScales = new float[MAX_POINTERS];
+
+	/** Times and progress of the history of a move event. */
+	private long[] mHistoryTimes = new long[1];
+	private float[] mHistoryProgress = new float[1];
+	/** Result of {@link #position(int, float)}. */
+	private float mX;
+	private float mY;
+
+	public TouchWorkload(long seed) {
+		mRandom = new Random(seed);
+	}
+
+	/**
+	 * @param hz samples per second, 1 to 1000
+	 */
+	public void setSampleRate(int hz) {
+		mSampleRate = Math.max(1, Math.min(hz, 1000));
+	}
+
+	/**
+	 * @param pixels largest offset added to every position
+	 */
+	public void setNoise(float pixels) {
+		mNoise = pixels;
+	}
+
+	/**
+	 * @param samples samples per move event, the older ones as history
+	 */
+	public void setBatchSize(int samples) {
+		mBatchSize = Math.max(1, samples);
+		if (mHistoryTimes.length < mBatchSize) {
+			mHistoryTimes = new long[mBatchSize];
+			mHistoryProgress = new float[mBatchSize];
+		}
+	}
+
+	/**
+	 * @param min shortest motion of a gesture in ms
+	 * @param max longest motion of a gesture in ms
+	 */
+	public void setGestureDuration(int min, int max) {
+		mMinDuration = Math.max(1, min);
+		mMaxDuration = Math.max(mMinDuration, max);
+	}
+
+	/**
+	 * The screen the gestures happen on, and the edge band EDGE gestures
+	 * start in.
+	 */
+	public void setScreen(int width, int height, float edgeSlop) {
+		mScreenWidth = width;
+		mScreenHeight = height;
+		mEdgeSlop = edgeSlop;
+	}
+
+	/**
+	 * Gesture kinds to choose from, with equal chance.
+	 */
+	public void setKinds(int... kinds) {
+		mKinds = kinds.clone();
+	}
+
+	public static String kindName(int kind) {
+		return KIND_NAMES[kind];
+	}
+
+	/**
+	 * Kind of the gesture the last event belongs to.
+	 */
+	public int getKind() {
+		return mKind;
+	}
+
+	public long getEventCount() {
+		return mEventCount;
+	}
+
+	public long getGestureCount(int kind) {
+		return mGestureCounts[kind];
+	}
+
+	/**
+	 * Write the next event into out, which may be the same sample every
+	 * time.
+	 *
+	 * @param out
+	 */
+	public void next(TouchSample out) {
+		if (mPhase == PHASE_DONE) {
+			startGesture();
+		}
+		mEventCount++;
+		switch (mPhase) {
+			case PHASE_DOWN:
+				addPointer(out);
+				if (mPointerCount == mTargetPointers) {
+					mPhase = PHASE_MOVE;
+				}
+				break;
+
+			case PHASE_MOVE:
+				if (mKind == CANCEL && mStep == mCancelStep) {
+					emit(out, TouchSample.ACTION_CANCEL, 0, progress());
+					endGesture();
+					break;
+				}
+				if (mKind == CHURN && mRandom.nextFloat() < CHURN_RATE * mBatchSize / mSampleRate) {
+					if (mPointerCount < MAX_POINTERS && (mPointerCount < 2 || mRandom.nextBoolean())) {
+						addPointer(out);
+					} else {
+						removePointer(out);
+					}
+					break;
+				}
+				move(out);
+				if (mStep >= mSteps) {
+					mPhase = PHASE_UP;
+				}
+				break;
+
+			case PHASE_UP:
+				removePointer(out);
+				if (mPointerCount == 0) {
+					endGesture();
+				}
+				break;
+		}
+	}
+
+	private void startGesture() {
+		final Random random = mRandom;
+		mKind = mKinds[random.nextInt(mKinds.length)];
+		mGestureCounts[mKind]++;
+		mPhase = PHASE_DOWN;
+		mStep = 0;
+		final int duration = mMinDuration + random.nextInt(mMaxDuration - mMinDuration + 1);
+		mSteps = Math.max(1, Math.round(duration * mSampleRate / 1000f));
+		mCancelStep = random.nextInt(mSteps);
+		mCenterX = mScreenWidth * (0.2f + 0.6f * random.nextFloat());
+		mCenterY = mScreenHeight * (0.2f + 0.6f * random.nextFloat());
+		mRadius = 50f + random.nextFloat() * 200f;
+		mAngle = random.nextDouble() * 2 * Math.PI;
+		mPanX = 0f;
+		mPanY = 0f;
+		mPinch = 0f;
+		mRotation = 0;
+		mPivot = false;
+		int pointers = 2;
+		switch (mKind) {
+			case PAN:
+				pointers = 1 + random.nextInt(3);
+				mPanX = (random.nextFloat() * 2 - 1) * 600f;
+				mPanY = (random.nextFloat() * 2 - 1) * 600f;
+				break;
+			case PINCH:
+				mPinch = (random.nextFloat() * 2 - 1) * 0.8f;
+				break;
+			case ROTATE:
+				mRotation = (random.nextDouble() * 2 - 1) * Math.PI;
+				mPivot = random.nextBoolean();
+				break;
+			case SHOVE:
+				mAngle = 0;
+				mPanY = (random.nextFloat() * 2 - 1) * 400f;
+				break;
+			case CHURN:
+			case CANCEL:
+				pointers = 1 + random.nextInt(4);
+				mPanX = (random.nextFloat() * 2 - 1) * 300f;
+				mPanY = (random.nextFloat() * 2 - 1) * 300f;
+				mPinch = (random.nextFloat() * 2 - 1) * 0.5f;
+				mRotation = (random.nextDouble() * 2 - 1) * Math.PI / 2;
+				break;
+			case EDGE:
+				// the first pointer, at angle pi, lands in the left band or off the screen
+				mAngle = 0;
+				mCenterX = mRadius + (random.nextFloat() * 1.5f - 0.5f) * mEdgeSlop;
+				mPanX = 100f + random.nextFloat() * 300f;
+				break;
+		}
+		mTargetPointers = pointers;
+	}
+
+	private void endGesture() {
+		mPointerCount = 0;
+		mPhase = PHASE_DONE;
+		mTime += 50 + mRandom.nextInt(250);
+	}
+
+	private float progress() {
+		return (float) mStep / mSteps;
+	}
+
+	private void addPointer(TouchSample out) {
+		// the lowest free id, at its place in id order
+		int id = 0;
+		int index = 0;
+		while (index < mPointerCount && mIds[index] == id) {
+			id++;
+			index++;
+		}
+		for (int i = mPointerCount; i > index; i--) {
+			mIds[i] = mIds[i - 1];
+			mOffsetAngles[i] = mOffsetAngles[i - 1];
+			mRadiusScales[i] = mRadiusScales[i - 1];
+		}
+		mIds[index] = id;
+		if (mKind == SHOVE || mKind == EDGE || mKind == PINCH || mKind == ROTATE) {
+			mOffsetAngles[index] = id == 0 ? Math.PI : 0;
+			mRadiusScales[index] = id < 2 ? 1f : 0.5f;
+		} else {
+			mOffsetAngles[index] = mRandom.nextDouble() * 2 * Math.PI;
+			mRadiusScales[index] = 0.3f + mRandom.nextFloat() * 0.7f;
+		}
+		mPointerCount++;
+		emit(out, mPointerCount == 1 ? TouchSample.ACTION_DOWN : TouchSample.ACTION_POINTER_DOWN, index,
+				progress());
+		advanceTime();
+	}
+
+	private void removePointer(TouchSample out) {
+		final int index = mRandom.nextInt(mPointerCount);
+		emit(out, mPointerCount == 1 ? TouchSample.ACTION_UP : TouchSample.ACTION_POINTER_UP, index, progress());
+		for (int i = index; i < mPointerCount - 1; i++) {
+			mIds[i] = mIds[i + 1];
+			mOffsetAngles[i] = mOffsetAngles[i + 1];
+			mRadiusScales[i] = mRadiusScales[i + 1];
+		}
+		mPointerCount--;
+		advanceTime();
+	}
+
+	private void move(TouchSample out) {
+		final int history = Math.min(mBatchSize, mSteps - mStep) - 1;
+		final long[] times = mHistoryTimes;
+		final float[] t = mHistoryProgress;
+		for (int h = 0; h < history; h++) {
+			mStep++;
+			times[h] = (long) mTime;
+			t[h] = progress();
+			advanceTime();
+		}
+		mStep++;
+		emit(out, TouchSample.ACTION_MOVE, 0, progress());
+		if (history > 0) {
+			out.setHistorySize(history);
+			for (int h = 0; h < history; h++) {
+				out.setHistoricalEventTime(h, times[h]);
+				for (int i = 0; i < mPointerCount; i++) {
+					position(i, t[h]);
+					out.setHistoricalPointer(h, i, mX, mY, 0.8f);
+				}
+			}
+		}
+		advanceTime();
+	}
+
+	private void emit(TouchSample out, int action, int actionIndex, float progress) {
+		out.setAction(action, actionIndex, (long) mTime, mPointerCount);
+		for (int i = 0; i < mPointerCount; i++) {
+			position(i, progress);
+			out.setPointer(i, mIds[i], mX, mY, 0.8f);
+		}
+	}
+
+	/** Position of the pointer at the given index at the given progress, into mX and mY. */
+	private void position(int index, float t) {
+		final double angle = mAngle + mRotation * t + mOffsetAngles[index];
+		final float radius = mRadius * (1f + mPinch * t) * mRadiusScales[index];
+		float centerX = mCenterX + mPanX * t;
+		float centerY = mCenterY + mPanY * t;
+		if (mPivot) {
+			// the centre circles the first pointer, at angle pi, which stays put
+			final double turned = mAngle + mRotation * t;
+			centerX += (float) (mRadius * (Math.cos(turned) - Math.cos(mAngle)));
+			centerY += (float) (mRadius * (Math.sin(turned) - Math.sin(mAngle)));
+		}
+		final Random random = mRandom;
+		mX = centerX + (float) (radius * Math.cos(angle)) + (random.nextFloat() * 2 - 1) * mNoise;
+		mY = centerY + (float) (radius * Math.sin(angle)) + (random.nextFloat() * 2 - 1) * mNoise;
+	}
+
+	private void advanceTime() {
+		mTime += 1000.0 / mSampleRate;
+	}
+}
@@ -0,0 +1,66 @@
+package com.example.gestdemo.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import com.example.gestdemo.GestureEngine;
+import com.example.gestdemo.TouchSample;
+import com.example.gestdemo.TouchTraceRecorder;
+import com.example.gestdemo.TouchTraceReplayer;
+
+/**
+ * Records synthetic streams into a trace file and replays the file at full
+ * speed, reporting the trace size and the replay throughput with and
+ * without the detectors attached.
+ */
+public class TraceBenchmark {
+
+	private static final int[] POINTER_COUNTS = { 1, 2, 5 };
+	private static final int ROUNDS = 10;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		for (int pointers : POINTER_COUNTS) {
+			TouchSample[] stream = TouchStreams.gestures(pointers, 2000, 240, 4);
+			File file = File.createTempFile("gestures", ".trace");
+			file.deleteOnExit();
+
+			TouchTraceRecorder recorder = new TouchTraceRecorder(new FileOutputStream(file));
+			long start = System.nanoTime();
+			for (TouchSample sample : stream) {
+				recorder.record(sample);
+			}
+			recorder.close();
+			long recordNanos = System.nanoTime() - start;
+
+			TouchTraceReplayer replayer = new TouchTraceReplayer(file);
+			GestureEngine empty = new GestureEngine();
+			GestureEngine detectors = new GestureEngine();
+			detectors.addDetector(DetectorBenchmark.newRotateDetector());
+			detectors.addDetector(DetectorBenchmark.newMoveDetector());
+			detectors.addDetector(DetectorBenchmark.newShoveDetector());
+
+			double decodeRate = replayRate(replayer, empty);
+			double replayRate = replayRate(replayer, detectors);
+			System.out.println(String.format(
+					"pointers=%d %d events %6.2f B/event record %6.1f ns/event decode %10.0f events/s replay %10.0f events/s",
+					pointers, stream.length, (double) file.length() / stream.length,
+					(double) recordNanos / stream.length, decodeRate, replayRate));
+		}
+	}
+
+	private static double replayRate(TouchTraceReplayer replayer, GestureEngine engine) throws InterruptedException {
+		long events = 0;
+		long start = 0;
+		for (int r = 0; r < 2 * ROUNDS; r++) {
+			if (r == ROUNDS) {
+				// first half is warm-up
+				events = 0;
+				start = System.nanoTime();
+			}
+			replayer.rewind();
+			events += replayer.replay(engine, false);
+		}
+		return events * 1e9 / (System.nanoTime() - start);
+	}
+}
@@ -26,8 +26,15 @@ public final class R {
         public static final int img=0x7f020002;
     }
     public static final class id {
+        public static final int action_pipeline=0x7f080003;
+        public static final int action_properties=0x7f080007;
+        public static final int action_record_trace=0x7f080002;
         public static final int action_settings=0x7f080001;
+        public static final int action_symbols=0x7f080004;
+        public static final int action_tiles=0x7f080006;
+        public static final int container=0x7f080008;
         public static final int imageView=0x7f080000;
+        public static final int tiledView=0x7f080005;
     }
     public static final class layout {
         public static final int main=0x7f030000;
@@ -36,7 +43,12 @@ public final class R {
         public static final int main=0x7f070000;
     }
     public static final class string {
+        public static final int action_pipeline=0x7f050004;
+        public static final int action_properties=0x7f050007;
+        public static final int action_record_trace=0x7f050003;
         public static final int action_settings=0x7f050001;
+        public static final int action_symbols=0x7f050005;
+        public static final int action_tiles=0x7f050006;
         public static final int app_name=0x7f050000;
         public static final int hello_world=0x7f050002;
     }
@@ -1,15 +1,20 @@
 package com.example.gestdemo;
 
-import android.content.Context;
-import android.view.MotionEvent;
-
- 
+/**
+ * Base class of all gesture detectors. Detectors work on {@link TouchSample}s
+ * only and have no Android dependencies; see {@link MotionEventAdapter} for
+ * feeding them MotionEvents.
+ */
 public abstract class BaseGestureDetector {
-    protected final Context mContext;
     protected boolean mGestureInProgress;
 
-    protected MotionEvent mPrevEvent;
-    protected MotionEvent mCurrEvent;
+    /**
+     * Features of the event the current deltas are measured against. This is
+     * a copy owned by the detector; the current frame is shared with other
+     * detectors and only valid while an event is dispatched.
+     */
+    protected final GestureFrame mPrevFrame = new GestureFrame();
+    protected GestureFrame mCurrFrame;
     
     protected float mCurrPressure;
     protected float mPrevPressure;
@@ -22,13 +27,52 @@ public abstract class BaseGestureDetector {
 	 * between events the position values can often be imprecise, as it usually
 	 * indicates that the user is in the process of lifting a pointer off of the
 	 * device. This value was tuned experimentally.
+	 *
+	 * Moves are no longer dropped by default: many digitizers report a zero
+	 * or constant pressure, and dropping moves stutters. Smooth the positions
+	 * with a {@link TouchFilter} instead, or pass this value to
+	 * {@link #setPressureThreshold(float)} for the old behaviour.
 	 */
-    protected static final float PRESSURE_THRESHOLD = 0.67f;
+    public static final float PRESSURE_THRESHOLD = 0.67f;
+
+    private float mPressureThreshold;
+
+    /**
+     * History modes, see {@link #setHistoryMode(int)}. With HISTORY_IGNORE
+     * only the newest sample of a move event is used.
+     */
+    public static final int HISTORY_IGNORE = 0;
+    /**
+     * All historical samples of a move event are walked and their deltas
+     * accumulated; listeners get one callback per event.
+     */
+    public static final int HISTORY_COALESCE = 1;
+    /**
+     * Every historical sample is handled like a move event of its own;
+     * listeners get one callback per sample.
+     */
+    public static final int HISTORY_PER_SAMPLE = 2;
+
+    /** Frame used when the detector is fed samples directly. */
+    private final GestureFrame mOwnFrame = new GestureFrame();
+
+    private int mHistoryMode = HISTORY_IGNORE;
+    private final GestureFrame mHistoryFrame = new GestureFrame();
+    /** Last frame accumulated while coalescing, start of the next step. */
+    private final GestureFrame mStepFrame = new GestureFrame();
+
+    private final GestureMetrics mMetrics = new GestureMetrics();
+    private long mCallbackStartTime;
+    private CallbackThrottle mThrottle;
+    private long mThrottleStartTime;
+    /** An update callback was skipped since the last one made. */
+    private boolean mUpdateDecimated;
+
+    private float mGestureDeltaX;
+    private float mGestureDeltaY;
+    private boolean mDormant;
+    private boolean mCancelled;
 
-    
-    public BaseGestureDetector(Context context) {
-    	mContext = context; 	
-    }
     
 	/**
 	 * All gesture detectors need to be called through this method to be able to
@@ -39,66 +83,347 @@ public abstract class BaseGestureDetector {
 	 * @param event
 	 * @return
 	 */
-    public boolean onTouchEvent(MotionEvent event){
-    	final int actionCode = event.getAction() & MotionEvent.ACTION_MASK;
+    public boolean onTouchEvent(TouchSample event){
+    	mOwnFrame.setSample(event);
+    	return onFrame(mOwnFrame);
+    }
+
+	/**
+	 * Same as {@link #onTouchEvent(TouchSample)} for a frame that has already
+	 * been computed, used by {@link GestureEngine} to share one frame between
+	 * detectors.
+	 * 
+	 * @param frame
+	 * @return
+	 */
+    public boolean onFrame(GestureFrame frame){
+    	final GestureMetrics metrics = mMetrics;
+    	final long startTime = metrics.startEvent();
+    	final boolean wasInProgress = mGestureInProgress;
+    	metrics.increment(GestureMetrics.EVENTS);
+
+    	final int actionCode = frame.getActionMasked();
+    	mCancelled = actionCode == TouchSample.ACTION_CANCEL;
+    	if (mGestureInProgress && actionCode == TouchSample.ACTION_MOVE
+    			&& mHistoryMode != HISTORY_IGNORE) {
+    		walkHistory(frame);
+    	}
     	 if (!mGestureInProgress) {
-    		handleStartProgressEvent(actionCode, event);
+    		handleStartProgressEvent(actionCode, frame);
     	} else {
-    		handleInProgressEvent(actionCode, event);
+    		handleInProgressEvent(actionCode, frame);
+    	}
+
+    	if (mGestureInProgress != wasInProgress) {
+    		metrics.increment(mGestureInProgress ? GestureMetrics.GESTURES_BEGUN : GestureMetrics.GESTURES_ENDED);
     	}
+    	metrics.record(GestureMetrics.EVENT_TIME, startTime);
+    	mCancelled = false;
     	return true;
     }
     
+	/**
+	 * Walk the historical samples of a move frame in one pass. In
+	 * HISTORY_PER_SAMPLE mode every sample is handled as a move of its own;
+	 * in HISTORY_COALESCE mode the steps between consecutive samples, ending
+	 * with the frame itself, are passed to
+	 * {@link #accumulateHistoryStep(GestureFrame, GestureFrame)}.
+	 * 
+	 * @param frame
+	 */
+    private void walkHistory(GestureFrame frame){
+    	final TouchSample sample = frame.getSample();
+    	final int historySize = sample == null ? 0 : sample.getHistorySize();
+    	final GestureFrame historyFrame = mHistoryFrame;
+
+    	if (mHistoryMode == HISTORY_PER_SAMPLE) {
+    		for (int pos = 0; pos < historySize && mGestureInProgress; pos++) {
+    			historyFrame.setHistoricalSample(sample, pos);
+    			handleInProgressEvent(TouchSample.ACTION_MOVE, historyFrame);
+    		}
+    		return;
+    	}
+
+    	for (int pos = 0; pos < historySize; pos++) {
+    		historyFrame.setHistoricalSample(sample, pos);
+    		accumulateHistoryStep(mStepFrame, historyFrame);
+    		mStepFrame.set(historyFrame);
+    	}
+    	accumulateHistoryStep(mStepFrame, frame);
+    	mStepFrame.set(frame);
+    }
+
     /**
 	 * Called when the current event occurred when NO gesture is in progress
 	 * yet. The handling in this implementation may set the gesture in progress
 	 * (via mGestureInProgress) or out of progress
 	 * @param actionCode
-	 * @param event
+	 * @param frame
 	 */
-    protected abstract void handleStartProgressEvent(int actionCode, MotionEvent event);
+    protected abstract void handleStartProgressEvent(int actionCode, GestureFrame frame);
     
 	/**
 	 * Called when the current event occurred when a gesture IS in progress.
 	 * @param actionCode
-	 * @param event
+	 * @param frame
 	 */
-    protected abstract void handleInProgressEvent(int actionCode, MotionEvent event);
+    protected abstract void handleInProgressEvent(int actionCode, GestureFrame frame);
     
     
-    protected void updateStateByEvent(MotionEvent curr){
-    	final MotionEvent prev = mPrevEvent;
-    	
-        if (mCurrEvent != null) {
-            mCurrEvent.recycle();
-            mCurrEvent = null;
-        }
-        mCurrEvent = MotionEvent.obtain(curr);
+    protected void updateStateByEvent(GestureFrame curr){
+    	mCurrFrame = curr;
         
-        
-        mTimeDelta = curr.getEventTime() - prev.getEventTime();
+        mTimeDelta = curr.getEventTime() - mPrevFrame.getEventTime();
+
+        mCurrPressure = curr.getPressure();
+        mPrevPressure = mPrevFrame.getPressure();
+    }
+
+    /**
+     * Check that the pressure did not fall too fast since the previous
+     * state, see {@link #setPressureThreshold(float)}. A move that fails is
+     * counted in the metrics and not reported. Always true without a
+     * threshold or without a previous pressure to compare with.
+     * 
+     * @return true if the current event can be reported
+     */
+    protected boolean isPressureSteady() {
+    	if (mPressureThreshold <= 0f || !(mPrevPressure > 0f)
+    			|| mCurrPressure / mPrevPressure > mPressureThreshold) {
+    		return true;
+    	}
+    	mMetrics.increment(GestureMetrics.PRESSURE_DROPS);
+    	return false;
+    }
+
+    /**
+     * Whether the update callback for the current event is to be made, see
+     * {@link #setCallbackThrottle(CallbackThrottle)}. If not, the previous
+     * state stays and the next update reports the deltas of this event too.
+     * 
+     * @return true if the listener is to be called
+     */
+    protected final boolean isUpdateDue() {
+    	if (mThrottle != null && !mThrottle.isUpdateDue(System.nanoTime())) {
+    		mMetrics.increment(GestureMetrics.UPDATES_DECIMATED);
+    		mUpdateDecimated = true;
+    		return false;
+    	}
+    	mMetrics.increment(GestureMetrics.UPDATES);
+    	mUpdateDecimated = false;
+    	return true;
+    }
+
+    /**
+     * Called when the gesture ends, before the end callback: true if the
+     * last update callbacks were skipped and one more has to be made so the
+     * listener gets the final delta.
+     * 
+     * @return
+     */
+    protected final boolean takeDecimatedUpdate() {
+    	if (!mUpdateDecimated) {
+    		return false;
+    	}
+    	mUpdateDecimated = false;
+    	mMetrics.increment(GestureMetrics.UPDATES);
+    	return true;
+    }
+
+    /**
+     * Add a delta a listener consumed to the total of the gesture in
+     * progress, see {@link #getGestureMagnitude()}. Detectors that measure
+     * one value pass 0 for dy.
+     * 
+     * @param dx
+     * @param dy
+     */
+    protected final void addGestureDelta(float dx, float dy) {
+    	mGestureDeltaX += dx;
+    	mGestureDeltaY += dy;
+    }
 
-        mCurrPressure = curr.getPressure(curr.getActionIndex());
-        mPrevPressure = prev.getPressure(prev.getActionIndex());
+    /**
+     * End the gesture in progress as if the touch had been cancelled, with
+     * the end callback. Used by {@link GestureArbiter} for detectors that
+     * lost to another gesture.
+     * 
+     * @param frame the frame being dispatched
+     */
+    void cancelGesture(GestureFrame frame) {
+    	if (!mGestureInProgress) {
+    		return;
+    	}
+    	mCancelled = true;
+    	handleInProgressEvent(TouchSample.ACTION_CANCEL, frame);
+    	mCancelled = false;
+    	mMetrics.increment(GestureMetrics.GESTURES_ENDED);
+    }
+
+    void setDormant(boolean dormant) {
+    	mDormant = dormant;
+    }
+
+    /**
+     * Call before a listener method, and {@link #endCallback()} after it, to
+     * count and time the call in the metrics.
+     */
+    protected final void startCallback() {
+    	mCallbackStartTime = mMetrics.startTiming();
+    	if (mThrottle != null) {
+    		mThrottleStartTime = System.nanoTime();
+    	}
+    }
+
+    protected final void endCallback() {
+    	mMetrics.increment(GestureMetrics.CALLBACKS);
+    	mMetrics.record(GestureMetrics.CALLBACK_TIME, mCallbackStartTime);
+    	if (mThrottle != null) {
+    		mThrottle.charge(System.nanoTime() - mThrottleStartTime);
+    	}
+    }
+
+    /**
+     * Store the given frame as the previous state. Used when a gesture starts.
+     * @param frame
+     */
+    protected void setPreviousState(GestureFrame frame) {
+    	mPrevFrame.set(frame);
+    	mStepFrame.set(frame);
+    	resetHistoryAccumulation();
+    }
+
+    /**
+     * Make the current state the previous state. Called when a listener
+     * consumed the current event, so the next deltas are measured from here.
+     */
+    protected void updatePreviousState() {
+    	mPrevFrame.set(mCurrFrame);
+    	resetHistoryAccumulation();
+    }
+
+	/**
+	 * Add the delta from one sample to the next to the accumulated deltas of
+	 * the detector. Only called in HISTORY_COALESCE mode; the accumulated
+	 * deltas span everything since the previous state.
+	 * 
+	 * @param from
+	 * @param to
+	 */
+    protected void accumulateHistoryStep(GestureFrame from, GestureFrame to) {
+    }
+
+	/**
+	 * Clear the accumulated deltas, called whenever the previous state is
+	 * replaced.
+	 */
+    protected void resetHistoryAccumulation() {
+    }
+
+    /**
+     * Set how historical samples batched into move events are used, one of
+     * HISTORY_IGNORE (default), HISTORY_COALESCE and HISTORY_PER_SAMPLE.
+     * 
+     * @param historyMode
+     */
+    public void setHistoryMode(int historyMode) {
+    	mHistoryMode = historyMode;
+    }
+
+    public int getHistoryMode() {
+    	return mHistoryMode;
+    }
+
+    /**
+     * Drop moves whose pressure fell below this ratio of the previous
+     * pressure, see PRESSURE_THRESHOLD; 0 (default) reports all moves.
+     * 
+     * @param threshold
+     */
+    public void setPressureThreshold(float threshold) {
+    	mPressureThreshold = threshold;
+    }
+
+    public float getPressureThreshold() {
+    	return mPressureThreshold;
+    }
+
+    /**
+     * Skip update callbacks while the listeners overrun their share of the
+     * frame, see {@link CallbackThrottle}; null (default) makes every
+     * update. Set before events arrive. Stroke detection ignores it.
+     * 
+     * @param throttle
+     */
+    public void setCallbackThrottle(CallbackThrottle throttle) {
+    	mThrottle = throttle;
+    }
+
+    public CallbackThrottle getCallbackThrottle() {
+    	return mThrottle;
+    }
+
+    protected boolean isCoalescingHistory() {
+    	return mHistoryMode == HISTORY_COALESCE;
     }
     
     protected void resetState() {
-        if (mPrevEvent != null) {
-            mPrevEvent.recycle();
-            mPrevEvent = null;
-        }
-        if (mCurrEvent != null) {
-            mCurrEvent.recycle();
-            mCurrEvent = null;
-        }
+        mCurrFrame = null;
         mGestureInProgress = false;
+        mGestureDeltaX = 0f;
+        mGestureDeltaY = 0f;
+        mUpdateDecimated = false;
     }
 
 
     
+    /**
+     * Counters and latencies of this detector, see {@link GestureMetrics}.
+     * 
+     * @return
+     */
+    public GestureMetrics getMetrics() {
+    	return mMetrics;
+    }
+
     public boolean isInProgress() {
         return mGestureInProgress;
     }
+
+    /**
+     * True in the end callback of a gesture that did not end by lifting the
+     * pointers: the touch was cancelled, or a {@link GestureArbiter} gave it
+     * to another detector. Listeners should not start a fling then.
+     * 
+     * @return
+     */
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * How far the gesture in progress has gone since it began, the length
+     * of the sum of the deltas the listener consumed, in the unit of the
+     * detector: degrees for rotate and transform, pixels for move and
+     * shove. Jitter back and forth cancels out. 0 for detectors that do
+     * not measure it.
+     * 
+     * @return
+     */
+    public float getGestureMagnitude() {
+    	return (float) Math.sqrt(mGestureDeltaX * mGestureDeltaX + mGestureDeltaY * mGestureDeltaY);
+    }
+
+    /**
+     * True while a {@link GestureArbiter} has put the detector to sleep
+     * because an incompatible gesture won; a {@link GestureEngine} does not
+     * feed it events until all pointers are up.
+     * 
+     * @return
+     */
+    public boolean isDormant() {
+    	return mDormant;
+    }
  
 	public long getTimeDelta() {
 		return mTimeDelta;
@@ -111,7 +436,7 @@ public abstract class BaseGestureDetector {
 	 * @return Current GestureDetector event time in milliseconds.
 	 */
 	public long getEventTime() {
-		return mCurrEvent.getEventTime();
+		return mCurrFrame.getEventTime();
 	}
    
 }
@@ -0,0 +1,104 @@
+package com.example.gestdemo;
+
+/**
+ * Keeps the listeners of detectors within a share of the frame interval.
+ * The detectors that use a throttle, see
+ * {@link BaseGestureDetector#setCallbackThrottle(CallbackThrottle)}, charge
+ * the time of every listener call to it. While the calls took more than
+ * their share, update callbacks (onMove, onRotate, onShove, onTransform)
+ * are skipped. A skipped update is not lost: the detector keeps its
+ * previous state, so the next update reports the deltas of both, and an
+ * update still outstanding when the gesture ends is made right before the
+ * end callback. Begin and end callbacks are never skipped. Deltas carry
+ * over exactly with {@link BaseGestureDetector#HISTORY_COALESCE}; otherwise
+ * a step across a pointer going down or up is lost, as when a listener
+ * does not consume an update.
+ *
+ * The listeners earn budget times the time that passes, up to budget times
+ * one frame interval, so a cheap listener is called for every event and a
+ * slow one about as often as its cost allows. See
+ * {@link GestureMetrics#UPDATES_DECIMATED} for how many were skipped.
+ *
+ * Share one throttle between the detectors whose listeners run on the same
+ * thread. It is used on the thread that feeds the detectors; the frame
+ * interval can be set from any thread.
+ */
+public class CallbackThrottle {
+
+	/** Share of the frame interval the listeners may take. */
+	public static final float DEFAULT_BUDGET = 0.5f;
+	public static final long DEFAULT_FRAME_INTERVAL = 1000000000L / 60;
+
+	private volatile long mFrameInterval = DEFAULT_FRAME_INTERVAL;
+	private volatile float mBudget = DEFAULT_BUDGET;
+
+	/** Listener time in ns that can be spent, negative after an overrun. */
+	private long mCredit;
+	private long mLastTime;
+	private boolean mStarted;
+
+	/**
+	 * @param nanos time between two frames of the display
+	 */
+	public void setFrameInterval(long nanos) {
+		mFrameInterval = nanos;
+	}
+
+	/**
+	 * Set the frame interval from the refresh rate of the display.
+	 *
+	 * @param hz
+	 */
+	public void setRefreshRate(float hz) {
+		if (hz > 0f) {
+			mFrameInterval = (long) (1e9 / hz);
+		}
+	}
+
+	public long getFrameInterval() {
+		return mFrameInterval;
+	}
+
+	/**
+	 * @param budget share of the frame interval the listeners may take, 1
+	 *            for all of it
+	 */
+	public void setBudget(float budget) {
+		mBudget = budget;
+	}
+
+	public float getBudget() {
+		return mBudget;
+	}
+
+	/**
+	 * Whether an update callback can be made now.
+	 *
+	 * @param now System.nanoTime()
+	 */
+	boolean isUpdateDue(long now) {
+		final float budget = mBudget;
+		final long limit = (long) (budget * mFrameInterval);
+		if (!mStarted) {
+			// calls charged before the first update count against a full budget
+			mStarted = true;
+			mCredit += limit;
+		} else {
+			mCredit += (long) (budget * (now - mLastTime));
+			if (mCredit > limit) {
+				mCredit = limit;
+			}
+		}
+		mLastTime = now;
+		return mCredit > 0;
+	}
+
+	/**
+	 * Charge the time of a listener call.
+	 *
+	 * @param nanos
+	 */
+	void charge(long nanos) {
+		mCredit -= nanos;
+	}
+}
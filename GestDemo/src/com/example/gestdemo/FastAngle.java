@@ -0,0 +1,51 @@
+package com.example.gestdemo;
+
+/**
+ * Approximate angle math for checks that classify angles against
+ * thresholds and do not need the last digits of {@link Math#atan2}.
+ * AngleBenchmark in bench/ measures the error and the speed against the
+ * platform functions.
+ */
+public final class FastAngle {
+
+	private static final float PI = (float) Math.PI;
+	private static final float HALF_PI = (float) (Math.PI / 2);
+
+	/** Odd polynomial for atan on [0, 1], Abramowitz and Stegun 4.4.49. */
+	private static final float C1 = 0.9998660f;
+	private static final float C3 = -0.3302995f;
+	private static final float C5 = 0.1801410f;
+	private static final float C7 = -0.0851330f;
+	private static final float C9 = 0.0208351f;
+
+	private FastAngle() {
+	}
+
+	/**
+	 * Like {@link Math#atan2(double, double)}, within about 1e-5 radians.
+	 * The axes map exactly onto 0, +-pi/2 and pi, and atan2(0, 0) is 0.
+	 *
+	 * @param y
+	 * @param x
+	 * @return the angle of (x, y) in radians, in [-pi, pi]
+	 */
+	public static float atan2(float y, float x) {
+		final float ax = Math.abs(x);
+		final float ay = Math.abs(y);
+		if (ay == 0f && ax == 0f) {
+			return 0f;
+		}
+		// reduce to the octant [0, pi/4], where the polynomial is accurate
+		final boolean steep = ay > ax;
+		final float z = steep ? ax / ay : ay / ax;
+		final float z2 = z * z;
+		float angle = z * (C1 + z2 * (C3 + z2 * (C5 + z2 * (C7 + z2 * C9))));
+		if (steep) {
+			angle = HALF_PI - angle;
+		}
+		if (x < 0f) {
+			angle = PI - angle;
+		}
+		return y < 0f ? -angle : angle;
+	}
+}
@@ -0,0 +1,78 @@
+package com.example.gestdemo;
+
+/**
+ * Histogram of the time frames take to draw, in buckets of BUCKET_NANOS
+ * up to MAX_NANOS, fine enough to compare two ways of drawing the same
+ * content. Longer frames count in the last bucket.
+ *
+ * Not thread safe.
+ */
+public class FrameCostStats {
+
+	public static final long BUCKET_NANOS = 50000;
+	public static final long MAX_NANOS = 32000000;
+	private static final int BUCKETS = (int) (MAX_NANOS / BUCKET_NANOS);
+
+	private final String mName;
+	private final long[] mBuckets = new long[BUCKETS];
+	private long mCount;
+	private long mTotalNanos;
+	private long mMaxNanos;
+
+	public FrameCostStats(String name) {
+		mName = name;
+	}
+
+	public void record(long nanos) {
+		mBuckets[(int) Math.min(Math.max(nanos, 0) / BUCKET_NANOS, BUCKETS - 1)]++;
+		mCount++;
+		mTotalNanos += nanos;
+		mMaxNanos = Math.max(mMaxNanos, nanos);
+	}
+
+	public long getCount() {
+		return mCount;
+	}
+
+	public long getMeanNanos() {
+		return mCount > 0 ? mTotalNanos / mCount : 0;
+	}
+
+	public long getMaxNanos() {
+		return mMaxNanos;
+	}
+
+	/**
+	 * The upper limit of the bucket that holds the given fraction of the
+	 * frames.
+	 *
+	 * @param fraction 0..1, 0.5 for the median
+	 */
+	public long getPercentileNanos(double fraction) {
+		final long rank = (long) Math.ceil(fraction * mCount);
+		long seen = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			seen += mBuckets[b];
+			if (seen >= rank && seen > 0) {
+				return (b + 1) * BUCKET_NANOS;
+			}
+		}
+		return 0;
+	}
+
+	public void clear() {
+		for (int b = 0; b < BUCKETS; b++) {
+			mBuckets[b] = 0;
+		}
+		mCount = 0;
+		mTotalNanos = 0;
+		mMaxNanos = 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s frames %d mean %.2f ms p50 %.2f ms p90 %.2f ms p99 %.2f ms max %.2f ms", mName,
+				mCount, getMeanNanos() / 1e6, getPercentileNanos(0.5) / 1e6, getPercentileNanos(0.9) / 1e6,
+				getPercentileNanos(0.99) / 1e6, mMaxNanos / 1e6);
+	}
+}
@@ -0,0 +1,160 @@
+package com.example.gestdemo;
+
+import java.util.ArrayList;
+
+/**
+ * Decides between detectors that recognize incompatible gestures from the
+ * same touch. A detector commits once its gesture passes its commit
+ * threshold, see {@link BaseGestureDetector#getGestureMagnitude()}. The
+ * first detector to commit wins the touch; if several commit on the same
+ * event the one with the highest priority wins. Detectors exclusive with
+ * the winner lose: a gesture they have in progress is cancelled, and they
+ * stay dormant, skipped by the {@link GestureEngine} without any work, until
+ * all pointers are up.
+ *
+ * Detectors without a commit threshold never win, but can lose. Rules are
+ * set up before events arrive; the arbiter runs on the thread that feeds
+ * the engine.
+ */
+public class GestureArbiter {
+
+	private static class Entry {
+		final BaseGestureDetector mDetector;
+		float mThreshold = Float.NaN;
+		int mPriority;
+		final ArrayList<Entry> mExclusive = new ArrayList<Entry>();
+
+		Entry(BaseGestureDetector detector) {
+			mDetector = detector;
+		}
+	}
+
+	private final ArrayList<Entry> mEntries = new ArrayList<Entry>();
+	private Entry mWinner;
+	private long mWinCount;
+	private long mDormancyCount;
+
+	/**
+	 * Let the detector win once its gesture magnitude reaches the given
+	 * value.
+	 *
+	 * @param detector
+	 * @param magnitude in the unit of the detector, degrees or pixels
+	 */
+	public void setCommitThreshold(BaseGestureDetector detector, float magnitude) {
+		entry(detector).mThreshold = magnitude;
+	}
+
+	/**
+	 * Priority among detectors that commit on the same event, higher wins.
+	 * Default 0; equal priorities go by the order the detectors were first
+	 * named to the arbiter.
+	 *
+	 * @param detector
+	 * @param priority
+	 */
+	public void setPriority(BaseGestureDetector detector, int priority) {
+		entry(detector).mPriority = priority;
+	}
+
+	/**
+	 * Make the two detectors exclusive: when either wins, the other goes
+	 * dormant.
+	 *
+	 * @param a
+	 * @param b
+	 */
+	public void setExclusive(BaseGestureDetector a, BaseGestureDetector b) {
+		final Entry entryA = entry(a);
+		final Entry entryB = entry(b);
+		if (!entryA.mExclusive.contains(entryB)) {
+			entryA.mExclusive.add(entryB);
+			entryB.mExclusive.add(entryA);
+		}
+	}
+
+	/**
+	 * The detector that won the current touch, or null.
+	 */
+	public BaseGestureDetector getWinner() {
+		return mWinner != null ? mWinner.mDetector : null;
+	}
+
+	/**
+	 * Number of touches a detector won.
+	 */
+	public long getWinCount() {
+		return mWinCount;
+	}
+
+	/**
+	 * Number of times a detector was put to sleep.
+	 */
+	public long getDormancyCount() {
+		return mDormancyCount;
+	}
+
+	/**
+	 * Called by the engine after the detectors handled a frame.
+	 *
+	 * @param frame
+	 */
+	void onFrameHandled(GestureFrame frame) {
+		final int action = frame.getActionMasked();
+		if (action == TouchSample.ACTION_UP || action == TouchSample.ACTION_CANCEL) {
+			reset();
+			return;
+		}
+		if (mWinner != null) {
+			return;
+		}
+
+		final ArrayList<Entry> entries = mEntries;
+		Entry winner = null;
+		for (int i = 0, n = entries.size(); i < n; i++) {
+			final Entry entry = entries.get(i);
+			final BaseGestureDetector detector = entry.mDetector;
+			if (detector.isDormant() || !detector.isInProgress()
+					|| !(detector.getGestureMagnitude() >= entry.mThreshold)) {
+				continue;
+			}
+			if (winner == null || entry.mPriority > winner.mPriority) {
+				winner = entry;
+			}
+		}
+		if (winner == null) {
+			return;
+		}
+		mWinner = winner;
+		mWinCount++;
+		final ArrayList<Entry> losers = winner.mExclusive;
+		for (int i = 0, n = losers.size(); i < n; i++) {
+			final BaseGestureDetector loser = losers.get(i).mDetector;
+			loser.cancelGesture(frame);
+			loser.setDormant(true);
+			mDormancyCount++;
+		}
+	}
+
+	/**
+	 * Wake all detectors and forget the winner.
+	 */
+	void reset() {
+		final ArrayList<Entry> entries = mEntries;
+		for (int i = 0, n = entries.size(); i < n; i++) {
+			entries.get(i).mDetector.setDormant(false);
+		}
+		mWinner = null;
+	}
+
+	private Entry entry(BaseGestureDetector detector) {
+		for (int i = 0, n = mEntries.size(); i < n; i++) {
+			if (mEntries.get(i).mDetector == detector) {
+				return mEntries.get(i);
+			}
+		}
+		final Entry entry = new Entry(detector);
+		mEntries.add(entry);
+		return entry;
+	}
+}
@@ -0,0 +1,374 @@
+package com.example.gestdemo;
+
+/**
+ * Collects the deltas of the move, rotate, shove and transform detectors
+ * and hands them to an {@link OnGestureBatchListener} in batches, so a
+ * listener that does expensive work per callback does it once per frame
+ * rather than once per touch event.
+ *
+ * Register the listeners from {@link #getMoveListener()} and its siblings
+ * with the detectors. A batch is delivered when {@link #flush()} is called,
+ * typically once per display frame, and, if a batch window is set, as soon
+ * as an event arrives that is a window later than the first event of the
+ * batch, and when a gesture ends. Empty batches are not delivered.
+ *
+ * Deltas are summed, scale factors and transform maps composed. Collecting
+ * and flushing may run on different threads, for example the worker of a
+ * {@link GesturePipeline} and the UI thread; the listener runs on the
+ * thread that delivers the batch, never on two threads at once.
+ */
+public class GestureBatcher {
+
+	public interface OnGestureBatchListener {
+		/**
+		 * @param batch valid during the call only
+		 */
+		public void onGestureBatch(Batch batch);
+	}
+
+	/**
+	 * The aggregated deltas of the events since the previous batch.
+	 */
+	public static class Batch {
+		private int mEventCount;
+		private long mFirstEventTime;
+		private long mLastEventTime;
+		private float mFocusDeltaX;
+		private float mFocusDeltaY;
+		private float mRotationDegrees;
+		private float mScaleFactor = 1f;
+		private float mShovePixels;
+		/** Composed transform map, p' = (a + ib) p + t. */
+		private double mA = 1;
+		private double mB;
+		private double mTx;
+		private double mTy;
+		private int mBeginCount;
+		private int mEndCount;
+
+		/**
+		 * Number of touch events the batch covers. Detectors that respond to
+		 * the same event count it once.
+		 */
+		public int getEventCount() {
+			return mEventCount;
+		}
+
+		/** Event time of the first event in the batch, in milliseconds. */
+		public long getFirstEventTime() {
+			return mFirstEventTime;
+		}
+
+		public long getLastEventTime() {
+			return mLastEventTime;
+		}
+
+		/** Sum of the focus deltas of the move detector. */
+		public float getFocusDeltaX() {
+			return mFocusDeltaX;
+		}
+
+		public float getFocusDeltaY() {
+			return mFocusDeltaY;
+		}
+
+		/** Sum of the rotation deltas of the rotate and transform detectors. */
+		public float getRotationDegrees() {
+			return mRotationDegrees;
+		}
+
+		/** Product of the scale factors of the transform detector. */
+		public float getScaleFactor() {
+			return mScaleFactor;
+		}
+
+		/** Sum of the shove deltas. */
+		public float getShovePixels() {
+			return mShovePixels;
+		}
+
+		/**
+		 * The transform deltas composed, see
+		 * {@link TransformGestureDetector#getDeltaA()}.
+		 */
+		public double getMapA() {
+			return mA;
+		}
+
+		public double getMapB() {
+			return mB;
+		}
+
+		public double getMapTx() {
+			return mTx;
+		}
+
+		public double getMapTy() {
+			return mTy;
+		}
+
+		/** Gestures that began in the batch, of any detector. */
+		public int getBeginCount() {
+			return mBeginCount;
+		}
+
+		/** Gestures that ended in the batch, of any detector. */
+		public int getEndCount() {
+			return mEndCount;
+		}
+
+		public boolean isEmpty() {
+			return mEventCount == 0 && mBeginCount == 0 && mEndCount == 0;
+		}
+
+		void addEvent(long eventTime) {
+			if (mEventCount == 0) {
+				mFirstEventTime = eventTime;
+				mLastEventTime = eventTime;
+				mEventCount = 1;
+			} else if (eventTime != mLastEventTime) {
+				mLastEventTime = eventTime;
+				mEventCount++;
+			}
+		}
+
+		void addTransform(double a, double b, double tx, double ty) {
+			final double mapA = a * mA - b * mB;
+			final double mapB = a * mB + b * mA;
+			final double mapTx = a * mTx - b * mTy + tx;
+			mTy = b * mTx + a * mTy + ty;
+			mTx = mapTx;
+			mA = mapA;
+			mB = mapB;
+		}
+
+		void copyFrom(Batch batch) {
+			mEventCount = batch.mEventCount;
+			mFirstEventTime = batch.mFirstEventTime;
+			mLastEventTime = batch.mLastEventTime;
+			mFocusDeltaX = batch.mFocusDeltaX;
+			mFocusDeltaY = batch.mFocusDeltaY;
+			mRotationDegrees = batch.mRotationDegrees;
+			mScaleFactor = batch.mScaleFactor;
+			mShovePixels = batch.mShovePixels;
+			mA = batch.mA;
+			mB = batch.mB;
+			mTx = batch.mTx;
+			mTy = batch.mTy;
+			mBeginCount = batch.mBeginCount;
+			mEndCount = batch.mEndCount;
+		}
+
+		void clear() {
+			mEventCount = 0;
+			mFirstEventTime = 0;
+			mLastEventTime = 0;
+			mFocusDeltaX = 0f;
+			mFocusDeltaY = 0f;
+			mRotationDegrees = 0f;
+			mScaleFactor = 1f;
+			mShovePixels = 0f;
+			mA = 1;
+			mB = 0;
+			mTx = 0;
+			mTy = 0;
+			mBeginCount = 0;
+			mEndCount = 0;
+		}
+	}
+
+	private final OnGestureBatchListener mListener;
+	/** Collected under the lock of the batcher. */
+	private final Batch mCollecting = new Batch();
+	/** Handed to the listener, under mDeliverLock. */
+	private final Batch mDelivering = new Batch();
+	private final Object mDeliverLock = new Object();
+	private volatile long mBatchWindow;
+	private long mBatchCount;
+
+	private final MoveGestureDetector.OnMoveGestureListener mMoveListener =
+			new MoveGestureDetector.OnMoveGestureListener() {
+		public boolean onMove(MoveGestureDetector detector) {
+			synchronized (GestureBatcher.this) {
+				mCollecting.addEvent(detector.getEventTime());
+				mCollecting.mFocusDeltaX += detector.getFocusDeltaX();
+				mCollecting.mFocusDeltaY += detector.getFocusDeltaY();
+			}
+			deliverIfDue(detector.getEventTime());
+			return true;
+		}
+
+		public boolean onMoveBegin(MoveGestureDetector detector) {
+			begin(detector);
+			return true;
+		}
+
+		public void onMoveEnd(MoveGestureDetector detector) {
+			end(detector);
+		}
+	};
+
+	private final RotateGestureDetector.OnRotateGestureListener mRotateListener =
+			new RotateGestureDetector.OnRotateGestureListener() {
+		public boolean onRotate(RotateGestureDetector detector) {
+			synchronized (GestureBatcher.this) {
+				mCollecting.addEvent(detector.getEventTime());
+				mCollecting.mRotationDegrees += detector.getRotationDegreesDelta();
+			}
+			deliverIfDue(detector.getEventTime());
+			return true;
+		}
+
+		public boolean onRotateBegin(RotateGestureDetector detector) {
+			begin(detector);
+			return true;
+		}
+
+		public void onRotateEnd(RotateGestureDetector detector) {
+			end(detector);
+		}
+	};
+
+	private final ShoveGestureDetector.OnShoveGestureListener mShoveListener =
+			new ShoveGestureDetector.OnShoveGestureListener() {
+		public boolean onShove(ShoveGestureDetector detector) {
+			synchronized (GestureBatcher.this) {
+				mCollecting.addEvent(detector.getEventTime());
+				mCollecting.mShovePixels += detector.getShovePixelsDelta();
+			}
+			deliverIfDue(detector.getEventTime());
+			return true;
+		}
+
+		public boolean onShoveBegin(ShoveGestureDetector detector) {
+			begin(detector);
+			return true;
+		}
+
+		public void onShoveEnd(ShoveGestureDetector detector) {
+			end(detector);
+		}
+	};
+
+	private final TransformGestureDetector.OnTransformGestureListener mTransformListener =
+			new TransformGestureDetector.OnTransformGestureListener() {
+		public boolean onTransform(TransformGestureDetector detector) {
+			addTransform(detector);
+			deliverIfDue(detector.getEventTime());
+			return true;
+		}
+
+		public boolean onTransformBegin(TransformGestureDetector detector) {
+			begin(detector);
+			return true;
+		}
+
+		public void onTransformEnd(TransformGestureDetector detector) {
+			// the end takes back the prediction still applied
+			addTransform(detector);
+			end(detector);
+		}
+	};
+
+	public GestureBatcher(OnGestureBatchListener listener) {
+		mListener = listener;
+	}
+
+	public MoveGestureDetector.OnMoveGestureListener getMoveListener() {
+		return mMoveListener;
+	}
+
+	public RotateGestureDetector.OnRotateGestureListener getRotateListener() {
+		return mRotateListener;
+	}
+
+	public ShoveGestureDetector.OnShoveGestureListener getShoveListener() {
+		return mShoveListener;
+	}
+
+	public TransformGestureDetector.OnTransformGestureListener getTransformListener() {
+		return mTransformListener;
+	}
+
+	/**
+	 * Deliver a batch from the detector thread once its events span this
+	 * much event time, and when a gesture ends; 0 (default) to deliver only
+	 * on {@link #flush()}.
+	 *
+	 * @param millis
+	 */
+	public void setBatchWindow(long millis) {
+		mBatchWindow = millis;
+	}
+
+	public long getBatchWindow() {
+		return mBatchWindow;
+	}
+
+	/**
+	 * Deliver what was collected, if anything.
+	 */
+	public void flush() {
+		synchronized (mDeliverLock) {
+			synchronized (this) {
+				if (mCollecting.isEmpty()) {
+					return;
+				}
+				mDelivering.copyFrom(mCollecting);
+				mCollecting.clear();
+			}
+			mBatchCount++;
+			mListener.onGestureBatch(mDelivering);
+		}
+	}
+
+	/**
+	 * Number of batches delivered.
+	 */
+	public long getBatchCount() {
+		synchronized (mDeliverLock) {
+			return mBatchCount;
+		}
+	}
+
+	private void addTransform(TransformGestureDetector detector) {
+		synchronized (this) {
+			mCollecting.addEvent(detector.getEventTime());
+			mCollecting.addTransform(detector.getDeltaA(), detector.getDeltaB(), detector.getDeltaTx(),
+					detector.getDeltaTy());
+			mCollecting.mRotationDegrees += detector.getRotationDegreesDelta();
+			mCollecting.mScaleFactor *= detector.getScaleFactor();
+		}
+	}
+
+	private void begin(BaseGestureDetector detector) {
+		synchronized (this) {
+			mCollecting.addEvent(detector.getEventTime());
+			mCollecting.mBeginCount++;
+		}
+	}
+
+	private void end(BaseGestureDetector detector) {
+		synchronized (this) {
+			mCollecting.addEvent(detector.getEventTime());
+			mCollecting.mEndCount++;
+		}
+		if (mBatchWindow > 0) {
+			flush();
+		}
+	}
+
+	private void deliverIfDue(long eventTime) {
+		final long window = mBatchWindow;
+		if (window <= 0) {
+			return;
+		}
+		final boolean due;
+		synchronized (this) {
+			due = eventTime - mCollecting.mFirstEventTime >= window;
+		}
+		if (due) {
+			flush();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.example.gestdemo;
+
+import java.util.ArrayList;
+
+/**
+ * Feeds every event to a set of detectors. The engine computes one
+ * {@link GestureFrame} per event and all registered detectors read their
+ * features from it, instead of each detector walking the pointers again.
+ * An optional {@link TouchFilter} smooths the pointer positions before the
+ * frame is computed, and an optional {@link GestureArbiter} puts detectors
+ * to sleep once an incompatible gesture has won.
+ */
+public class GestureEngine {
+
+	private final GestureFrame mFrame = new GestureFrame();
+	private final ArrayList<BaseGestureDetector> mDetectors = new ArrayList<BaseGestureDetector>();
+	private TouchFilter mFilter;
+	private GestureArbiter mArbiter;
+	private final TouchSample mFiltered = new TouchSample();
+
+	/**
+	 * Register a detector. Detectors receive events in the order in which
+	 * they were added.
+	 *
+	 * @param detector
+	 */
+	public void addDetector(BaseGestureDetector detector) {
+		mDetectors.add(detector);
+	}
+
+	public void removeDetector(BaseGestureDetector detector) {
+		mDetectors.remove(detector);
+	}
+
+	/**
+	 * Smooth the pointer positions of all following events with the given
+	 * filter, null (default) to pass them on as they are.
+	 *
+	 * @param filter
+	 */
+	public void setTouchFilter(TouchFilter filter) {
+		mFilter = filter;
+		if (filter != null) {
+			filter.reset();
+		}
+	}
+
+	public TouchFilter getTouchFilter() {
+		return mFilter;
+	}
+
+	/**
+	 * Arbitrate between the detectors with the given arbiter, null (default)
+	 * to feed every detector every event.
+	 *
+	 * @param arbiter
+	 */
+	public void setArbiter(GestureArbiter arbiter) {
+		if (mArbiter != null) {
+			mArbiter.reset();
+		}
+		mArbiter = arbiter;
+	}
+
+	public GestureArbiter getArbiter() {
+		return mArbiter;
+	}
+
+	public boolean onTouchEvent(TouchSample event) {
+		final GestureFrame frame = mFrame;
+		if (mFilter != null) {
+			mFilter.filter(event, mFiltered);
+			frame.setSample(mFiltered);
+		} else {
+			frame.setSample(event);
+		}
+
+		final ArrayList<BaseGestureDetector> detectors = mDetectors;
+		for (int i = 0, n = detectors.size(); i < n; i++) {
+			final BaseGestureDetector detector = detectors.get(i);
+			if (detector.isDormant()) {
+				detector.getMetrics().increment(GestureMetrics.DORMANT_SKIPS);
+				continue;
+			}
+			detector.onFrame(frame);
+		}
+		if (mArbiter != null) {
+			mArbiter.onFrameHandled(frame);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,276 @@
+package com.example.gestdemo;
+
+/**
+ * Features of one touch sample that several detectors need: the centroid of
+ * all pointers, the vector between the first two pointers, its length and
+ * angle, the pressure of the action pointer and the time since the previous
+ * sample. A {@link GestureEngine} computes one frame per event and hands the
+ * same frame to all of its detectors, so the work is done once per event and
+ * not once per detector. The span and angle are only computed when a
+ * detector asks for them.
+ *
+ * Detectors keep a copy of the frame their deltas are measured against,
+ * see {@link #set(GestureFrame)}.
+ */
+public class GestureFrame {
+
+	private TouchSample mSample;
+	private int mHistoryPos;
+	private boolean mHasEventTime;
+
+	private int mAction;
+	private int mActionIndex;
+	private int mPointerCount;
+	private long mEventTime;
+	private long mTimeDelta;
+	private float mPressure;
+
+	private float mFocusX;
+	private float mFocusY;
+
+	private float mPairDiffX;
+	private float mPairDiffY;
+	private float mPairFocusY;
+	private int mPairId0;
+	private int mPairId1;
+
+	private boolean mSpanValid;
+	private float mPairSpan;
+	private boolean mAngleValid;
+	private double mPairAngle;
+
+	/**
+	 * Compute the features of the given sample. The time delta is measured
+	 * against the sample this frame held before.
+	 *
+	 * @param sample
+	 */
+	public void setSample(TouchSample sample) {
+		compute(sample, -1);
+		mSample = sample;
+		mHistoryPos = -1;
+	}
+
+	/**
+	 * Compute the features of one of the historical samples batched into the
+	 * given sample.
+	 *
+	 * @param sample
+	 * @param pos history position, 0 is the oldest
+	 */
+	public void setHistoricalSample(TouchSample sample, int pos) {
+		compute(sample, pos);
+		mSample = sample;
+		mHistoryPos = pos;
+	}
+
+	private void compute(TouchSample sample, int pos) {
+		final boolean current = pos < 0;
+		final long eventTime = current ? sample.getEventTime() : sample.getHistoricalEventTime(pos);
+		final int count = sample.getPointerCount();
+
+		mTimeDelta = mHasEventTime ? eventTime - mEventTime : 0;
+		mHasEventTime = true;
+		mAction = current ? sample.getActionMasked() : TouchSample.ACTION_MOVE;
+		mActionIndex = current ? sample.getActionIndex() : 0;
+		mPointerCount = count;
+		mEventTime = eventTime;
+		mPressure = current ? sample.getPressure(mActionIndex) : sample.getHistoricalPressure(mActionIndex, pos);
+
+		float x = 0f;
+		float y = 0f;
+		for (int i = 0; i < count; i++) {
+			x += current ? sample.getX(i) : sample.getHistoricalX(i, pos);
+			y += current ? sample.getY(i) : sample.getHistoricalY(i, pos);
+		}
+		mFocusX = x / count;
+		mFocusY = y / count;
+
+		if (count >= 2) {
+			final float x0 = current ? sample.getX(0) : sample.getHistoricalX(0, pos);
+			final float y0 = current ? sample.getY(0) : sample.getHistoricalY(0, pos);
+			final float x1 = current ? sample.getX(1) : sample.getHistoricalX(1, pos);
+			final float y1 = current ? sample.getY(1) : sample.getHistoricalY(1, pos);
+			mPairDiffX = x1 - x0;
+			mPairDiffY = y1 - y0;
+			mPairFocusY = (y0 + y1) / 2.0f;
+			mPairId0 = sample.getPointerId(0);
+			mPairId1 = sample.getPointerId(1);
+		} else {
+			mPairDiffX = 0f;
+			mPairDiffY = 0f;
+			mPairFocusY = 0f;
+			mPairId0 = -1;
+			mPairId1 = -1;
+		}
+		mSpanValid = false;
+		mAngleValid = false;
+	}
+
+	/**
+	 * Copy the features of the given frame. The copy does not reference the
+	 * other frame's sample.
+	 *
+	 * @param other
+	 */
+	public void set(GestureFrame other) {
+		mSample = null;
+		mHistoryPos = -1;
+		mHasEventTime = other.mHasEventTime;
+		mAction = other.mAction;
+		mActionIndex = other.mActionIndex;
+		mPointerCount = other.mPointerCount;
+		mEventTime = other.mEventTime;
+		mTimeDelta = other.mTimeDelta;
+		mPressure = other.mPressure;
+		mFocusX = other.mFocusX;
+		mFocusY = other.mFocusY;
+		mPairDiffX = other.mPairDiffX;
+		mPairDiffY = other.mPairDiffY;
+		mPairFocusY = other.mPairFocusY;
+		mPairId0 = other.mPairId0;
+		mPairId1 = other.mPairId1;
+		mSpanValid = other.mSpanValid;
+		mPairSpan = other.mPairSpan;
+		mAngleValid = other.mAngleValid;
+		mPairAngle = other.mPairAngle;
+	}
+
+	/**
+	 * The sample this frame was computed from, or null for copies. Only valid
+	 * while the event is being dispatched. For historical frames this is the
+	 * sample the history is batched into, see {@link #getHistoryPos()}.
+	 */
+	public TouchSample getSample() {
+		return mSample;
+	}
+
+	/**
+	 * History position this frame was computed from, -1 for the current
+	 * position of the sample.
+	 */
+	public int getHistoryPos() {
+		return mHistoryPos;
+	}
+
+	/**
+	 * Id of the pointer at the given index. Like {@link #getX(int)} and
+	 * {@link #getY(int)} this reads the sample and is not available on
+	 * copies.
+	 */
+	public int getPointerId(int pointerIndex) {
+		return mSample.getPointerId(pointerIndex);
+	}
+
+	public float getX(int pointerIndex) {
+		return mHistoryPos < 0 ? mSample.getX(pointerIndex) : mSample.getHistoricalX(pointerIndex, mHistoryPos);
+	}
+
+	public float getY(int pointerIndex) {
+		return mHistoryPos < 0 ? mSample.getY(pointerIndex) : mSample.getHistoricalY(pointerIndex, mHistoryPos);
+	}
+
+	public int getActionMasked() {
+		return mAction;
+	}
+
+	public int getActionIndex() {
+		return mActionIndex;
+	}
+
+	public int getPointerCount() {
+		return mPointerCount;
+	}
+
+	public long getEventTime() {
+		return mEventTime;
+	}
+
+	/**
+	 * Time in milliseconds since the sample before this one.
+	 */
+	public long getTimeDelta() {
+		return mTimeDelta;
+	}
+
+	/**
+	 * Pressure of the pointer the action refers to.
+	 */
+	public float getPressure() {
+		return mPressure;
+	}
+
+	public float getFocusX() {
+		return mFocusX;
+	}
+
+	public float getFocusY() {
+		return mFocusY;
+	}
+
+	/**
+	 * X component of the vector from the first to the second pointer, 0 if
+	 * fewer than two pointers are down.
+	 */
+	public float getPairDiffX() {
+		return mPairDiffX;
+	}
+
+	/**
+	 * Y component of the vector from the first to the second pointer, 0 if
+	 * fewer than two pointers are down.
+	 */
+	public float getPairDiffY() {
+		return mPairDiffY;
+	}
+
+	/**
+	 * Average Y coordinate of the first two pointers.
+	 */
+	public float getPairFocusY() {
+		return mPairFocusY;
+	}
+
+	/**
+	 * Ids of the first two pointers, -1 if fewer than two pointers are down.
+	 * When they differ between two frames, the pair features of the two
+	 * frames belong to different pointers and cannot be compared.
+	 */
+	public int getPairId0() {
+		return mPairId0;
+	}
+
+	public int getPairId1() {
+		return mPairId1;
+	}
+
+	/**
+	 * True if both frames measured their pair features on the same two
+	 * pointers.
+	 */
+	public boolean isSamePair(GestureFrame other) {
+		return mPairId0 == other.mPairId0 && mPairId1 == other.mPairId1;
+	}
+
+	/**
+	 * Distance between the first two pointers.
+	 */
+	public float getPairSpan() {
+		if (!mSpanValid) {
+			mPairSpan = (float) Math.sqrt(mPairDiffX * mPairDiffX + mPairDiffY * mPairDiffY);
+			mSpanValid = true;
+		}
+		return mPairSpan;
+	}
+
+	/**
+	 * Angle of the vector from the first to the second pointer in radians.
+	 */
+	public double getPairAngle() {
+		if (!mAngleValid) {
+			mPairAngle = Math.atan2(mPairDiffY, mPairDiffX);
+			mAngleValid = true;
+		}
+		return mPairAngle;
+	}
+}
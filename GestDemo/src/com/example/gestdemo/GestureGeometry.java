@@ -0,0 +1,158 @@
+package com.example.gestdemo;
+
+/**
+ * Screen regions in which pointers make a gesture sloppy: a band along the
+ * screen edges plus any number of exclusion rectangles, for example system
+ * gesture areas, a display cutout or the bounds of another window in split
+ * screen. One instance is shared by all detectors.
+ *
+ * The regions are rasterized into a coarse grid of cells with one bit per
+ * cell, so a lookup is a shift and a bit test. A cell is rejected when its
+ * center lies in a region, which makes the borders exact to half a cell.
+ * The grid is rebuilt lazily on the first lookup after a change, so it should
+ * only be changed on configuration or inset changes.
+ *
+ * The regions may be changed on one thread, usually the UI thread, while
+ * the detectors look them up on another, see {@link GesturePipeline}.
+ * Changes are made under the lock of the geometry; lookups go without a
+ * lock to an immutable grid published through a volatile field, so they
+ * see either the old grid or a complete new one.
+ */
+public class GestureGeometry {
+
+	/** The rasterized regions, never changed once built. */
+	private static final class Grid {
+		final int mColumns;
+		final int mRows;
+		final long[] mRejectedCells;
+
+		Grid(int columns, int rows, long[] rejectedCells) {
+			mColumns = columns;
+			mRows = rows;
+			mRejectedCells = rejectedCells;
+		}
+	}
+
+	private static final int DEFAULT_CELL_SHIFT = 3; // 8 pixel cells
+
+	private final int mCellShift;
+
+	private int mScreenWidth;
+	private int mScreenHeight;
+	private float mEdgeSlop;
+
+	/** Exclusion rectangles as left, top, right, bottom quadruples. */
+	private float[] mExclusions = new float[16];
+	private int mExclusionCount;
+
+	/** Null after a change until the next lookup rebuilds it. */
+	private volatile Grid mGrid;
+
+	public GestureGeometry() {
+		this(DEFAULT_CELL_SHIFT);
+	}
+
+	/**
+	 * @param cellShift log2 of the cell size in pixels
+	 */
+	public GestureGeometry(int cellShift) {
+		mCellShift = cellShift;
+	}
+
+	/**
+	 * Set the screen size and the width of the band along the screen edges in
+	 * which pointers are rejected. Pointers outside the screen are always
+	 * rejected.
+	 */
+	public synchronized void setScreen(int width, int height, float edgeSlop) {
+		mScreenWidth = width;
+		mScreenHeight = height;
+		mEdgeSlop = edgeSlop;
+		mGrid = null;
+	}
+
+	public synchronized void addExclusion(float left, float top, float right, float bottom) {
+		if (mExclusionCount * 4 == mExclusions.length) {
+			float[] exclusions = new float[mExclusions.length * 2];
+			System.arraycopy(mExclusions, 0, exclusions, 0, mExclusions.length);
+			mExclusions = exclusions;
+		}
+		final int i = mExclusionCount * 4;
+		mExclusions[i] = left;
+		mExclusions[i + 1] = top;
+		mExclusions[i + 2] = right;
+		mExclusions[i + 3] = bottom;
+		mExclusionCount++;
+		mGrid = null;
+	}
+
+	public synchronized void clearExclusions() {
+		mExclusionCount = 0;
+		mGrid = null;
+	}
+
+	/**
+	 * Check whether a point in screen coordinates lies in a rejected region.
+	 */
+	public boolean isRejected(float rawX, float rawY) {
+		Grid grid = mGrid;
+		if (grid == null) {
+			grid = rebuild();
+		}
+		if (rawX < 0 || rawY < 0) {
+			return true;
+		}
+		final int column = (int) rawX >> mCellShift;
+		final int row = (int) rawY >> mCellShift;
+		if (column >= grid.mColumns || row >= grid.mRows) {
+			return true;
+		}
+		final int cell = row * grid.mColumns + column;
+		return (grid.mRejectedCells[cell >> 6] & (1L << cell)) != 0;
+	}
+
+	/**
+	 * Check whether any pointer of the sample lies in a rejected region.
+	 */
+	public boolean isAnyPointerRejected(TouchSample sample) {
+		for (int i = 0, count = sample.getPointerCount(); i < count; i++) {
+			if (isRejected(sample.getRawX(i), sample.getRawY(i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private synchronized Grid rebuild() {
+		if (mGrid != null) {
+			// another thread rebuilt it meanwhile
+			return mGrid;
+		}
+		final int cellSize = 1 << mCellShift;
+		final int columns = (mScreenWidth + cellSize - 1) >> mCellShift;
+		final int rows = (mScreenHeight + cellSize - 1) >> mCellShift;
+		final long[] rejectedCells = new long[(columns * rows + 63) >> 6];
+
+		final float rightSlop = mScreenWidth - mEdgeSlop;
+		final float bottomSlop = mScreenHeight - mEdgeSlop;
+		for (int row = 0; row < rows; row++) {
+			final float y = (row << mCellShift) + cellSize / 2f;
+			for (int column = 0; column < columns; column++) {
+				final float x = (column << mCellShift) + cellSize / 2f;
+				boolean rejected = x < mEdgeSlop || y < mEdgeSlop || x > rightSlop || y > bottomSlop;
+				for (int e = 0; !rejected && e < mExclusionCount; e++) {
+					final int i = e * 4;
+					rejected = x >= mExclusions[i] && y >= mExclusions[i + 1]
+							&& x < mExclusions[i + 2] && y < mExclusions[i + 3];
+				}
+				if (rejected) {
+					final int cell = row * columns + column;
+					rejectedCells[cell >> 6] |= 1L << cell;
+				}
+			}
+		}
+		final Grid grid = new Grid(columns, rows, rejectedCells);
+		mGrid = grid;
+		return grid;
+	}
+}
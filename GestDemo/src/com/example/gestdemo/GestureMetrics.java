@@ -0,0 +1,279 @@
+package com.example.gestdemo;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Runtime counters and latency histograms of one detector. Every
+ * {@link BaseGestureDetector} keeps one, see
+ * {@link BaseGestureDetector#getMetrics()}.
+ *
+ * The metrics are written only by the thread that feeds the detector, so a
+ * plain read and an ordered write per update are enough and no update takes
+ * a lock or a compare-and-set. Any thread can take a {@link Snapshot} to log
+ * them; a snapshot taken while an event is handled may show it half
+ * counted.
+ *
+ * Latencies are sampled, see {@link #setTimingInterval(int)}, and counted
+ * in buckets of powers of two: bucket 0 holds times below 256 ns, bucket b
+ * the times from 2^(b+7) up to 2^(b+8) ns and the last bucket everything
+ * from about 67 ms on.
+ */
+public class GestureMetrics {
+
+	/** Events handed to the detector. */
+	public static final int EVENTS = 0;
+	/**
+	 * Moves not reported because the pressure fell, see
+	 * {@link BaseGestureDetector#setPressureThreshold(float)}.
+	 */
+	public static final int PRESSURE_DROPS = 1;
+	/** Checks that found a gesture sloppy and kept it from starting. */
+	public static final int SLOPPY_REJECTIONS = 2;
+	public static final int GESTURES_BEGUN = 3;
+	public static final int GESTURES_ENDED = 4;
+	/** Calls of listener methods. */
+	public static final int CALLBACKS = 5;
+	/** Events skipped while the detector was dormant, see GestureArbiter. */
+	public static final int DORMANT_SKIPS = 6;
+	/** Update callbacks made, such as onMove, onRotate and onShove. */
+	public static final int UPDATES = 7;
+	/** Update callbacks skipped to keep within the budget of a CallbackThrottle. */
+	public static final int UPDATES_DECIMATED = 8;
+	public static final int COUNTERS = 9;
+
+	/** Time the detector takes for one event, listener calls included. */
+	public static final int EVENT_TIME = 0;
+	/** Time of one listener call. */
+	public static final int CALLBACK_TIME = 1;
+	public static final int HISTOGRAMS = 2;
+
+	/**
+	 * Time one event out of this many, with the listener calls it makes.
+	 * Reading the clock costs about as much as handling a simple event, so
+	 * the histograms are a sample; the counters are exact.
+	 */
+	public static final int DEFAULT_TIMING_INTERVAL = 16;
+
+	public static final int BUCKETS = 20;
+	private static final int MIN_BUCKET_SHIFT = 8;
+
+	/** Per histogram the buckets, then the sum and the maximum. */
+	private static final int HISTOGRAM_SIZE = BUCKETS + 2;
+	private static final int SUM = BUCKETS;
+	private static final int MAX = BUCKETS + 1;
+	private static final int SIZE = COUNTERS + HISTOGRAMS * HISTOGRAM_SIZE;
+
+	private static final String[] COUNTER_NAMES = {
+		"events", "pressureDrops", "sloppy", "begun", "ended", "callbacks", "dormantSkips", "updates",
+		"decimated"
+	};
+	private static final String[] HISTOGRAM_NAMES = { "event", "callback" };
+
+	private final AtomicLongArray mValues = new AtomicLongArray(SIZE);
+	private volatile int mTimingInterval = DEFAULT_TIMING_INTERVAL;
+	/** Events until the next timed one. */
+	private int mTimingCountdown = 1;
+	/** Whether the event being handled is timed. */
+	private boolean mTiming;
+
+	/**
+	 * Set how often events are timed.
+	 *
+	 * @param interval time one event out of this many, 1 to time every
+	 *            event, 0 to turn the histograms off
+	 */
+	public void setTimingInterval(int interval) {
+		mTimingInterval = interval;
+	}
+
+	public int getTimingInterval() {
+		return mTimingInterval;
+	}
+
+	void increment(int counter) {
+		final AtomicLongArray values = mValues;
+		values.lazySet(counter, values.get(counter) + 1);
+	}
+
+	/**
+	 * Called when an event arrives, decides if it is timed.
+	 *
+	 * @return the start time to pass to {@link #record(int, long)}, or 0 if
+	 *         the event is not timed
+	 */
+	long startEvent() {
+		if (--mTimingCountdown > 0) {
+			mTiming = false;
+			return 0;
+		}
+		final int interval = mTimingInterval;
+		mTimingCountdown = interval > 0 ? interval : Integer.MAX_VALUE;
+		mTiming = interval > 0;
+		return mTiming ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * @return the start time of a listener call, or 0 if the current event
+	 *         is not timed
+	 */
+	long startTiming() {
+		return mTiming ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Count the time since startTime in the given histogram.
+	 *
+	 * @param histogram
+	 * @param startTime from {@link #startEvent()} or {@link #startTiming()}
+	 */
+	void record(int histogram, long startTime) {
+		if (startTime == 0) {
+			return;
+		}
+		final long nanos = System.nanoTime() - startTime;
+		final AtomicLongArray values = mValues;
+		final int base = COUNTERS + histogram * HISTOGRAM_SIZE;
+		final int bucket = base + bucketOf(nanos);
+		values.lazySet(bucket, values.get(bucket) + 1);
+		values.lazySet(base + SUM, values.get(base + SUM) + nanos);
+		if (nanos > values.get(base + MAX)) {
+			values.lazySet(base + MAX, nanos);
+		}
+	}
+
+	private static int bucketOf(long nanos) {
+		final int bucket = 64 - Long.numberOfLeadingZeros(nanos >>> MIN_BUCKET_SHIFT);
+		return bucket < BUCKETS ? bucket : BUCKETS - 1;
+	}
+
+	/**
+	 * Upper bound of the times counted in a bucket, in nanoseconds, or
+	 * Long.MAX_VALUE for the last bucket.
+	 */
+	public static long getBucketLimitNanos(int bucket) {
+		return bucket < BUCKETS - 1 ? 1L << (bucket + MIN_BUCKET_SHIFT) : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Copy the current values into a new snapshot.
+	 */
+	public Snapshot snapshot() {
+		return snapshot(new Snapshot());
+	}
+
+	/**
+	 * Copy the current values into the given snapshot, for logging without
+	 * allocating.
+	 *
+	 * @param snapshot
+	 * @return snapshot
+	 */
+	public Snapshot snapshot(Snapshot snapshot) {
+		final AtomicLongArray values = mValues;
+		final long[] copy = snapshot.mValues;
+		for (int i = 0; i < SIZE; i++) {
+			copy[i] = values.get(i);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * The metrics of a detector at one point in time.
+	 */
+	public static class Snapshot {
+		private final long[] mValues = new long[SIZE];
+
+		/**
+		 * @param counter one of EVENTS, PRESSURE_DROPS, SLOPPY_REJECTIONS,
+		 *            GESTURES_BEGUN, GESTURES_ENDED, CALLBACKS,
+		 *            DORMANT_SKIPS, UPDATES and UPDATES_DECIMATED
+		 */
+		public long getCount(int counter) {
+			return mValues[counter];
+		}
+
+		/**
+		 * Share of the update callbacks a {@link CallbackThrottle} skipped,
+		 * 0 when all were made.
+		 */
+		public double getDecimationRatio() {
+			final long decimated = getCount(UPDATES_DECIMATED);
+			final long total = decimated + getCount(UPDATES);
+			return total == 0 ? 0 : (double) decimated / total;
+		}
+
+		/**
+		 * @param histogram EVENT_TIME or CALLBACK_TIME
+		 * @param bucket
+		 */
+		public long getBucketCount(int histogram, int bucket) {
+			return mValues[COUNTERS + histogram * HISTOGRAM_SIZE + bucket];
+		}
+
+		/**
+		 * Number of times counted in the histogram.
+		 */
+		public long getTimedCount(int histogram) {
+			long count = 0;
+			for (int b = 0; b < BUCKETS; b++) {
+				count += getBucketCount(histogram, b);
+			}
+			return count;
+		}
+
+		public long getTotalNanos(int histogram) {
+			return mValues[COUNTERS + histogram * HISTOGRAM_SIZE + SUM];
+		}
+
+		public long getMaxNanos(int histogram) {
+			return mValues[COUNTERS + histogram * HISTOGRAM_SIZE + MAX];
+		}
+
+		public long getMeanNanos(int histogram) {
+			final long count = getTimedCount(histogram);
+			return count == 0 ? 0 : getTotalNanos(histogram) / count;
+		}
+
+		/**
+		 * Time below which the given fraction of the counted times fall,
+		 * rounded up to the limit of its bucket and at most the maximum.
+		 *
+		 * @param histogram
+		 * @param fraction for example 0.99
+		 */
+		public long getPercentileNanos(int histogram, double fraction) {
+			final long count = getTimedCount(histogram);
+			if (count == 0) {
+				return 0;
+			}
+			final long rank = (long) Math.ceil(count * fraction);
+			long seen = 0;
+			for (int b = 0; b < BUCKETS; b++) {
+				seen += getBucketCount(histogram, b);
+				if (seen >= rank) {
+					return Math.min(getBucketLimitNanos(b), getMaxNanos(histogram));
+				}
+			}
+			return getMaxNanos(histogram);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			for (int c = 0; c < COUNTERS; c++) {
+				if (c > 0) {
+					builder.append(' ');
+				}
+				builder.append(COUNTER_NAMES[c]).append('=').append(getCount(c));
+			}
+			for (int h = 0; h < HISTOGRAMS; h++) {
+				builder.append(' ').append(HISTOGRAM_NAMES[h])
+						.append(" mean=").append(getMeanNanos(h))
+						.append("ns p50<=").append(getPercentileNanos(h, 0.5))
+						.append("ns p99<=").append(getPercentileNanos(h, 0.99))
+						.append("ns max=").append(getMaxNanos(h)).append("ns");
+			}
+			return builder.toString();
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package com.example.gestdemo;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs gesture recognition on a worker thread instead of the UI thread.
+ *
+ * The UI thread calls {@link #enqueue(TouchSample)}, which copies the
+ * sample into a preallocated ring of samples and returns. The worker
+ * thread takes the samples out in the order they were enqueued and hands
+ * them to the {@link EventHandler}, typically a {@link GestureEngine}
+ * whose listeners collect their results in a {@link TransformUpdate}.
+ * When the worker has caught up with the queue it calls
+ * {@link EventHandler#onQueueDrained()} once, so results are posted back
+ * to the UI thread once per burst of events rather than per event.
+ *
+ * The ring has one producer and one consumer: each side only writes its
+ * own index and the samples between the indices belong to one side at a
+ * time, so neither side takes a lock. The worker parks when the ring is
+ * empty and the producer only unparks it when it is parked. When the ring
+ * is full, move events are dropped and counted, since the next move
+ * carries the current positions anyway; other events wait for room, as
+ * losing a down or up would break the gestures.
+ *
+ * Nothing here depends on Android, so the pipeline can be benchmarked on a
+ * plain JVM (see PipelineBenchmark in bench/).
+ */
+public class GesturePipeline {
+
+	/**
+	 * Receives the events on the worker thread.
+	 */
+	public interface EventHandler {
+		/**
+		 * Handle one event. The sample belongs to the pipeline and is only
+		 * valid during the call.
+		 *
+		 * @param sample
+		 */
+		public void onTouchEvent(TouchSample sample);
+
+		/**
+		 * Called after one or more events when no further event is queued.
+		 */
+		public void onQueueDrained();
+	}
+
+	public static final int DEFAULT_CAPACITY = 64;
+
+	private final TouchSample[] mSlots;
+	private final int mMask;
+	private final EventHandler mHandler;
+	private final Thread mWorker;
+
+	/** Next slot the producer writes, written by the producer only. */
+	private volatile long mTail;
+	/** Next slot the worker reads, written by the worker only. */
+	private volatile long mHead;
+	/** The producer's last read of mHead. */
+	private long mCachedHead;
+
+	private volatile boolean mWorkerParked;
+	private volatile boolean mStopped;
+
+	private long mDroppedCount;
+	private long mStallCount;
+
+	public GesturePipeline(EventHandler handler) {
+		this(DEFAULT_CAPACITY, handler);
+	}
+
+	/**
+	 * @param capacity number of samples the ring holds, rounded up to a
+	 *            power of two
+	 * @param handler
+	 */
+	public GesturePipeline(int capacity, EventHandler handler) {
+		int size = 2;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		mSlots = new TouchSample[size];
+		for (int i = 0; i < size; i++) {
+			mSlots[i] = new TouchSample();
+		}
+		mMask = size - 1;
+		mHandler = handler;
+		mWorker = new Thread(new Runnable() {
+			public void run() {
+				drain();
+			}
+		}, "GesturePipeline");
+	}
+
+	public void start() {
+		mWorker.start();
+	}
+
+	/**
+	 * Let the worker handle all queued events, then stop it and wait for it
+	 * to end. Called on the producer thread; afterwards the handler can be
+	 * used by that thread again.
+	 */
+	public void stop() {
+		mStopped = true;
+		LockSupport.unpark(mWorker);
+		boolean interrupted = false;
+		while (mWorker.isAlive()) {
+			try {
+				mWorker.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Copy the sample into the queue. Called on the producer thread only.
+	 *
+	 * @param sample
+	 * @return false if the sample was a move and was dropped because the
+	 *         queue is full
+	 */
+	public boolean enqueue(TouchSample sample) {
+		final long tail = mTail;
+		if (tail - mCachedHead > mMask) {
+			mCachedHead = mHead;
+			if (tail - mCachedHead > mMask) {
+				if (sample.getActionMasked() == TouchSample.ACTION_MOVE) {
+					mDroppedCount++;
+					return false;
+				}
+				mStallCount++;
+				do {
+					LockSupport.unpark(mWorker);
+					Thread.yield();
+					mCachedHead = mHead;
+				} while (tail - mCachedHead > mMask);
+			}
+		}
+		mSlots[(int) tail & mMask].set(sample);
+		// publishes the slot to the worker
+		mTail = tail + 1;
+		if (mWorkerParked) {
+			LockSupport.unpark(mWorker);
+		}
+		return true;
+	}
+
+	private void drain() {
+		final TouchSample[] slots = mSlots;
+		final EventHandler handler = mHandler;
+		long head = mHead;
+		long tail = head;
+		boolean handled = false;
+		while (true) {
+			if (head == tail) {
+				tail = mTail;
+				if (head == tail) {
+					if (handled) {
+						handled = false;
+						handler.onQueueDrained();
+						continue;
+					}
+					if (mStopped) {
+						// a last look, the producer stopped enqueueing before it set mStopped
+						if (mTail == head) {
+							break;
+						}
+						continue;
+					}
+					// the producer writes mTail before it reads mWorkerParked, so
+					// one of both sees the other's write and no wakeup is lost
+					mWorkerParked = true;
+					if (mTail == head && !mStopped) {
+						LockSupport.park(this);
+					}
+					mWorkerParked = false;
+					continue;
+				}
+			}
+			handler.onTouchEvent(slots[(int) head & mMask]);
+			head++;
+			// hands the slot back to the producer
+			mHead = head;
+			handled = true;
+		}
+	}
+
+	/**
+	 * Number of move events dropped because the queue was full.
+	 */
+	public long getDroppedCount() {
+		return mDroppedCount;
+	}
+
+	/**
+	 * Number of times the producer had to wait for room in the queue.
+	 */
+	public long getStallCount() {
+		return mStallCount;
+	}
+}
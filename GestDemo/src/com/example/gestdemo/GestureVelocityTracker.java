@@ -0,0 +1,134 @@
+package com.example.gestdemo;
+
+/**
+ * Estimates the velocity of a point from its recent samples. The samples
+ * are kept in a fixed-size ring of primitive arrays, so adding a sample
+ * costs a few stores and never allocates. The velocity is the slope of a
+ * least-squares line through the samples within the time window before the
+ * newest one, computed when it is asked for and cached until the next
+ * sample.
+ *
+ * Detectors that track a single value, like an angle, use only x.
+ */
+public class GestureVelocityTracker {
+
+	public static final int DEFAULT_CAPACITY = 32;
+	/** Long enough for a stable fit, short enough to follow a change of pace. */
+	public static final long DEFAULT_WINDOW = 100;
+
+	private final long[] mTimes;
+	private final float[] mX;
+	private final float[] mY;
+	private final long mWindow;
+	private int mCount;
+	private int mNewest = -1;
+
+	private boolean mVelocityValid;
+	private float mVelocityX;
+	private float mVelocityY;
+
+	public GestureVelocityTracker() {
+		this(DEFAULT_CAPACITY, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * @param capacity number of samples kept, enough to fill the window at
+	 *            the highest sample rate
+	 * @param window time in milliseconds before the newest sample that the
+	 *            fit uses
+	 */
+	public GestureVelocityTracker(int capacity, long window) {
+		mTimes = new long[capacity];
+		mX = new float[capacity];
+		mY = new float[capacity];
+		mWindow = window;
+	}
+
+	public void clear() {
+		mCount = 0;
+		mNewest = -1;
+		mVelocityValid = false;
+	}
+
+	/**
+	 * Add a sample. A sample with the time of the newest sample replaces it,
+	 * older samples are ignored.
+	 *
+	 * @param time event time in milliseconds
+	 * @param x
+	 * @param y
+	 */
+	public void addSample(long time, float x, float y) {
+		if (mCount > 0 && time <= mTimes[mNewest]) {
+			if (time < mTimes[mNewest]) {
+				return;
+			}
+		} else {
+			mNewest = (mNewest + 1) % mTimes.length;
+			if (mCount < mTimes.length) {
+				mCount++;
+			}
+		}
+		mTimes[mNewest] = time;
+		mX[mNewest] = x;
+		mY[mNewest] = y;
+		mVelocityValid = false;
+	}
+
+	/**
+	 * Velocity of x in units per second, 0 without two samples in the
+	 * window.
+	 */
+	public float getVelocityX() {
+		computeVelocity();
+		return mVelocityX;
+	}
+
+	/**
+	 * Velocity of y in units per second, 0 without two samples in the
+	 * window.
+	 */
+	public float getVelocityY() {
+		computeVelocity();
+		return mVelocityY;
+	}
+
+	private void computeVelocity() {
+		if (mVelocityValid) {
+			return;
+		}
+		mVelocityValid = true;
+		mVelocityX = 0f;
+		mVelocityY = 0f;
+		if (mCount < 2) {
+			return;
+		}
+
+		// times relative to the newest sample keep the sums small
+		final int capacity = mTimes.length;
+		final long newestTime = mTimes[mNewest];
+		double sumT = 0, sumX = 0, sumY = 0, sumTT = 0, sumTX = 0, sumTY = 0;
+		int n = 0;
+		for (int k = 0, i = mNewest; k < mCount; k++, i = (i + capacity - 1) % capacity) {
+			final double t = mTimes[i] - newestTime;
+			if (-t > mWindow) {
+				break;
+			}
+			final double x = mX[i];
+			final double y = mY[i];
+			sumT += t;
+			sumX += x;
+			sumY += y;
+			sumTT += t * t;
+			sumTX += t * x;
+			sumTY += t * y;
+			n++;
+		}
+		final double denominator = n * sumTT - sumT * sumT;
+		if (n < 2 || denominator <= 0) {
+			return;
+		}
+		mVelocityX = (float) ((n * sumTX - sumT * sumX) / denominator * 1000);
+		mVelocityY = (float) ((n * sumTY - sumT * sumY) / denominator * 1000);
+	}
+}
@@ -0,0 +1,160 @@
+package com.example.gestdemo;
+
+/**
+ * Scale, rotation, focus point and alpha of the manipulated image. Gesture
+ * listeners change the values as often as events arrive; the view only
+ * applies them once per display frame, and only the parts that changed
+ * since the last frame (see {@link #isMatrixDirty()} and
+ * {@link #isAlphaDirty()}).
+ *
+ * Also counts how many applies this saves compared to applying the matrix
+ * and alpha on every touch event.
+ */
+public class ImageTransform {
+
+	public static final float MIN_SCALE = 0.1f;
+	public static final float MAX_SCALE = 10.0f;
+
+	private float mScale = 1f;
+	private float mRotationDegrees;
+	private float mFocusX;
+	private float mFocusY;
+	private int mAlpha = 255;
+
+	private boolean mMatrixDirty = true;
+	private boolean mAlphaDirty = true;
+
+	private long mTouchEventCount;
+	private long mFrameCount;
+	private long mMatrixApplyCount;
+	private long mAlphaApplyCount;
+
+	public float getScale() {
+		return mScale;
+	}
+
+	public float getRotationDegrees() {
+		return mRotationDegrees;
+	}
+
+	public float getFocusX() {
+		return mFocusX;
+	}
+
+	public float getFocusY() {
+		return mFocusY;
+	}
+
+	public int getAlpha() {
+		return mAlpha;
+	}
+
+	/**
+	 * Set the scale, clamped to MIN_SCALE..MAX_SCALE.
+	 */
+	public void setScale(float scale) {
+		scale = Math.max(MIN_SCALE, Math.min(scale, MAX_SCALE));
+		if (scale != mScale) {
+			mScale = scale;
+			mMatrixDirty = true;
+		}
+	}
+
+	public void scaleBy(float factor) {
+		setScale(mScale * factor);
+	}
+
+	public void rotateBy(float degrees) {
+		if (degrees != 0f) {
+			mRotationDegrees += degrees;
+			mMatrixDirty = true;
+		}
+	}
+
+	public void setFocus(float x, float y) {
+		if (x != mFocusX || y != mFocusY) {
+			mFocusX = x;
+			mFocusY = y;
+			mMatrixDirty = true;
+		}
+	}
+
+	public void translateBy(float dx, float dy) {
+		setFocus(mFocusX + dx, mFocusY + dy);
+	}
+
+	/**
+	 * Set the alpha, clamped to 0..255.
+	 */
+	public void setAlpha(int alpha) {
+		alpha = Math.max(0, Math.min(alpha, 255));
+		if (alpha != mAlpha) {
+			mAlpha = alpha;
+			mAlphaDirty = true;
+		}
+	}
+
+	public void addAlpha(float delta) {
+		setAlpha((int) (mAlpha + delta));
+	}
+
+	public boolean isMatrixDirty() {
+		return mMatrixDirty;
+	}
+
+	public boolean isAlphaDirty() {
+		return mAlphaDirty;
+	}
+
+	public boolean isDirty() {
+		return mMatrixDirty || mAlphaDirty;
+	}
+
+	/**
+	 * Count one touch event that changed, or could have changed, the
+	 * transform.
+	 */
+	public void countTouchEvent() {
+		mTouchEventCount++;
+	}
+
+	/**
+	 * Record that a frame applied the dirty parts of the transform, and
+	 * clear the dirty flags.
+	 */
+	public void onApplied() {
+		mFrameCount++;
+		if (mMatrixDirty) {
+			mMatrixApplyCount++;
+			mMatrixDirty = false;
+		}
+		if (mAlphaDirty) {
+			mAlphaApplyCount++;
+			mAlphaDirty = false;
+		}
+	}
+
+	public long getTouchEventCount() {
+		return mTouchEventCount;
+	}
+
+	public long getFrameCount() {
+		return mFrameCount;
+	}
+
+	public long getMatrixApplyCount() {
+		return mMatrixApplyCount;
+	}
+
+	public long getAlphaApplyCount() {
+		return mAlphaApplyCount;
+	}
+
+	/**
+	 * Number of matrix and alpha applies saved compared to applying both on
+	 * every touch event.
+	 */
+	public long getSavedApplyCount() {
+		return 2 * mTouchEventCount - mMatrixApplyCount - mAlphaApplyCount;
+	}
+}
@@ -0,0 +1,280 @@
+package com.example.gestdemo;
+
+/**
+ * Lets an {@link ImageTransform} glide on after a gesture ends. Every
+ * channel (translation, rotation, scale and alpha) is flung with the
+ * velocity the detector measured when the gesture ended, and slows down by
+ * friction. Translation and scale that end up outside their bounds are
+ * pulled back by a damped spring; alpha stops at 0 and 255.
+ *
+ * The physics advance in fixed steps of STEP_NANOS, however long the
+ * frames are, so the motion is the same at every frame rate. Call
+ * {@link #step(long)} once per display frame; it reads the transform,
+ * advances all steps up to the frame time and writes the transform back.
+ * Nothing is allocated after construction.
+ */
+public class InertiaAnimator {
+
+	/** Length of one physics step. */
+	public static final long STEP_NANOS = 4000000;
+	/** Frames longer than this are cut short instead of catching up. */
+	private static final long MAX_FRAME_NANOS = 100000000;
+	private static final float STEP_SECONDS = STEP_NANOS / 1e9f;
+	/** A slow channel this close to its bound in time snaps onto it. */
+	private static final float SETTLE_SECONDS = 0.05f;
+
+	private static final int TRANSLATION_X = 0;
+	private static final int TRANSLATION_Y = 1;
+	private static final int ROTATION = 2;
+	/** Scale is animated as its logarithm, so zooming in and out feel alike. */
+	private static final int SCALE = 3;
+	private static final int ALPHA = 4;
+	private static final int CHANNELS = 5;
+
+	private final ImageTransform mTransform;
+
+	private final float[] mVelocity = new float[CHANNELS];
+	private final float[] mMinVelocity = new float[CHANNELS];
+	private final boolean[] mActive = new boolean[CHANNELS];
+	private final float[] mMin = new float[CHANNELS];
+	private final float[] mMax = new float[CHANNELS];
+	private final float[] mValue = new float[CHANNELS];
+	/** Alpha with the fraction the int alpha of the transform drops. */
+	private float mAlpha;
+
+	private float mStepDecay;
+	private float mSpringStiffness = 150f;
+	private float mSpringDamping = 2 * (float) Math.sqrt(150f);
+
+	private long mLastStepNanos;
+	private boolean mRunning;
+	private long mStepCount;
+
+	public InertiaAnimator(ImageTransform transform) {
+		mTransform = transform;
+		setFriction(4f);
+		for (int c = 0; c < CHANNELS; c++) {
+			mMin[c] = Float.NEGATIVE_INFINITY;
+			mMax[c] = Float.POSITIVE_INFINITY;
+		}
+		mMinVelocity[TRANSLATION_X] = 10f;
+		mMinVelocity[TRANSLATION_Y] = 10f;
+		mMinVelocity[ROTATION] = 2f;
+		mMinVelocity[SCALE] = 0.01f;
+		mMinVelocity[ALPHA] = 5f;
+		mMin[ALPHA] = 0f;
+		mMax[ALPHA] = 255f;
+		setScaleBounds(ImageTransform.MIN_SCALE, ImageTransform.MAX_SCALE);
+	}
+
+	/**
+	 * Set how fast flung channels slow down.
+	 *
+	 * @param friction velocity decay rate per second; velocity falls to
+	 *            1/e of its value in 1/friction seconds
+	 */
+	public void setFriction(float friction) {
+		mStepDecay = (float) Math.exp(-friction * STEP_SECONDS);
+	}
+
+	/**
+	 * Set the spring that pulls translation and scale back into bounds.
+	 *
+	 * @param stiffness
+	 * @param dampingRatio 1 for a critically damped spring
+	 */
+	public void setSpring(float stiffness, float dampingRatio) {
+		mSpringStiffness = stiffness;
+		mSpringDamping = 2 * dampingRatio * (float) Math.sqrt(stiffness);
+	}
+
+	/**
+	 * Set the rectangle the focus point is pulled back into.
+	 */
+	public void setTranslationBounds(float left, float top, float right, float bottom) {
+		mMin[TRANSLATION_X] = left;
+		mMin[TRANSLATION_Y] = top;
+		mMax[TRANSLATION_X] = right;
+		mMax[TRANSLATION_Y] = bottom;
+	}
+
+	/**
+	 * Set the range the scale is pulled back into.
+	 */
+	public void setScaleBounds(float minScale, float maxScale) {
+		mMin[SCALE] = (float) Math.log(minScale);
+		mMax[SCALE] = (float) Math.log(maxScale);
+	}
+
+	/**
+	 * Fling the focus point. Also called with zero velocity, to pull the
+	 * focus back into bounds.
+	 *
+	 * @param velocityX in pixels per second
+	 * @param velocityY in pixels per second
+	 * @param timeNanos time of the fling, in the time base of {@link #step(long)}
+	 */
+	public void flingTranslation(float velocityX, float velocityY, long timeNanos) {
+		fling(TRANSLATION_X, velocityX, timeNanos);
+		fling(TRANSLATION_Y, velocityY, timeNanos);
+	}
+
+	/**
+	 * @param velocity in degrees per second
+	 * @param timeNanos
+	 */
+	public void flingRotation(float velocity, long timeNanos) {
+		fling(ROTATION, velocity, timeNanos);
+	}
+
+	/**
+	 * @param velocity change of the natural logarithm of the scale per second
+	 * @param timeNanos
+	 */
+	public void flingScale(float velocity, long timeNanos) {
+		fling(SCALE, velocity, timeNanos);
+	}
+
+	/**
+	 * @param velocity alpha units per second
+	 * @param timeNanos
+	 */
+	public void flingAlpha(float velocity, long timeNanos) {
+		fling(ALPHA, velocity, timeNanos);
+	}
+
+	private void fling(int channel, float velocity, long timeNanos) {
+		mVelocity[channel] = velocity;
+		mActive[channel] = true;
+		if (!mRunning) {
+			mRunning = true;
+			mLastStepNanos = timeNanos;
+		}
+	}
+
+	/**
+	 * Stop all channels where they are, as when a pointer goes down.
+	 */
+	public void cancel() {
+		for (int c = 0; c < CHANNELS; c++) {
+			mActive[c] = false;
+			mVelocity[c] = 0f;
+		}
+		mRunning = false;
+	}
+
+	public boolean isRunning() {
+		return mRunning;
+	}
+
+	/**
+	 * Advance the animation to the given frame time and apply it to the
+	 * transform.
+	 *
+	 * @param frameTimeNanos
+	 * @return true if the animation still runs and wants another frame
+	 */
+	public boolean step(long frameTimeNanos) {
+		if (!mRunning) {
+			return false;
+		}
+		long elapsed = frameTimeNanos - mLastStepNanos;
+		if (elapsed > MAX_FRAME_NANOS) {
+			elapsed = MAX_FRAME_NANOS;
+			mLastStepNanos = frameTimeNanos - MAX_FRAME_NANOS;
+		}
+		final int steps = (int) (elapsed / STEP_NANOS);
+		if (steps <= 0) {
+			return true;
+		}
+		mLastStepNanos += steps * STEP_NANOS;
+
+		final ImageTransform transform = mTransform;
+		final float[] value = mValue;
+		value[TRANSLATION_X] = transform.getFocusX();
+		value[TRANSLATION_Y] = transform.getFocusY();
+		value[ROTATION] = transform.getRotationDegrees();
+		value[SCALE] = (float) Math.log(transform.getScale());
+		value[ALPHA] = Math.round(mAlpha) == transform.getAlpha() ? mAlpha : transform.getAlpha();
+
+		boolean running = false;
+		int stepped = 0;
+		for (int c = 0; c < CHANNELS; c++) {
+			if (mActive[c]) {
+				mActive[c] = stepChannel(c, steps);
+				running |= mActive[c];
+				stepped |= 1 << c;
+			}
+		}
+		mStepCount += steps;
+		mRunning = running;
+		mAlpha = value[ALPHA];
+
+		// only write back what moved, the rest would just lose precision
+		if ((stepped & (1 << TRANSLATION_X | 1 << TRANSLATION_Y)) != 0) {
+			transform.setFocus(value[TRANSLATION_X], value[TRANSLATION_Y]);
+		}
+		if ((stepped & 1 << ROTATION) != 0) {
+			transform.rotateBy(value[ROTATION] - transform.getRotationDegrees());
+		}
+		if ((stepped & 1 << SCALE) != 0) {
+			transform.setScale((float) Math.exp(value[SCALE]));
+		}
+		if ((stepped & 1 << ALPHA) != 0) {
+			transform.setAlpha(Math.round(value[ALPHA]));
+		}
+		return running;
+	}
+
+	/**
+	 * Advance one channel by the given number of steps.
+	 *
+	 * @return false if the channel came to rest
+	 */
+	private boolean stepChannel(int c, int steps) {
+		final float min = mMin[c];
+		final float max = mMax[c];
+		final boolean spring = c != ALPHA;
+		float x = mValue[c];
+		float v = mVelocity[c];
+		boolean active = true;
+		for (int s = 0; s < steps; s++) {
+			final float outside = x < min ? x - min : x > max ? x - max : 0f;
+			if (outside != 0f && spring) {
+				// semi-implicit Euler keeps the spring stable at this step size
+				v += (-mSpringStiffness * outside - mSpringDamping * v) * STEP_SECONDS;
+			} else {
+				v *= mStepDecay;
+			}
+			x += v * STEP_SECONDS;
+			if (!spring && (x < min || x > max)) {
+				x = x < min ? min : max;
+				v = 0f;
+			}
+			if (Math.abs(v) < mMinVelocity[c]) {
+				final float distance = x < min ? min - x : x > max ? x - max : 0f;
+				if (distance == 0f) {
+					active = false;
+					v = 0f;
+					break;
+				}
+				if (distance < mMinVelocity[c] * SETTLE_SECONDS) {
+					x = x < min ? min : max;
+					active = false;
+					v = 0f;
+					break;
+				}
+			}
+		}
+		mValue[c] = x;
+		mVelocity[c] = v;
+		return active;
+	}
+
+	/**
+	 * Number of physics steps taken so far.
+	 */
+	public long getStepCount() {
+		return mStepCount;
+	}
+}
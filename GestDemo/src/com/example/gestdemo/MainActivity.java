@@ -1,31 +1,99 @@
 package com.example.gestdemo;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import android.app.Activity;
+import android.content.res.Configuration;
 import android.graphics.Matrix;
-import android.graphics.PointF;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.util.Log;
+import android.view.Choreographer;
 import android.view.Display;
+import android.view.FrameMetrics;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.MotionEvent;
-import android.view.ScaleGestureDetector;
 import android.view.View;
 import android.view.View.OnTouchListener;
+import android.view.Window;
 import android.widget.ImageView;
+import android.widget.Toast;
 
 public class MainActivity extends Activity implements OnTouchListener {
 	private static final String TAG = "TouchActivity";
+	/** Time from a touch event to the display of its frame, predicted ahead. */
+	private static final long PREDICTION_HORIZON = 24;
+	private static final float MAX_PREDICTED_PIXELS = 48f;
+	private static final float MAX_PREDICTED_DEGREES = 10f;
+	/** Rotation after which a touch is a rotation and shoving stops. */
+	private static final float ROTATION_COMMIT_DEGREES = 10f;
+	/** Shove after which a touch is a shove and the transform stops. */
+	private static final float SHOVE_COMMIT_PIXELS = 60f;
+	/** Scale range a flung image springs back into. */
+	private static final float MIN_FLING_SCALE = 0.2f;
+	private static final float MAX_FLING_SCALE = 4f;
+	/** Least time between two logs of the detector metrics. */
+	private static final long METRICS_LOG_INTERVAL = 10000;
+	/** Part of the heap the decoded tiles may take. */
+	private static final int TILE_CACHE_DIVISOR = 8;
 	private Matrix mMatrix = new Matrix();
-    private float mScaleFactor = .4f;
-    private float mRotationDegrees = 0.f;
-    private float mFocusX = 0.f;
-    private float mFocusY = 0.f;  
-    private int mAlpha = 255;
+    private final ImageTransform mTransform = new ImageTransform();
     private int mImageHeight, mImageWidth;
+    private ImageView mImageView;
+    /** Shows the image instead of mImageView while tiles are decoded. */
+    private TiledImageView mTiledView;
+    private boolean mTiledMode;
+    /**
+     * Move the ImageView by its view properties instead of its image
+     * matrix, so a frame recomposes the view instead of redrawing it.
+     */
+    private boolean mPropertyMode;
+    /** Scale of the image in the ImageView in property mode, to fit it. */
+    private float mContentScale = 1f;
+    private boolean mLayerActive;
+    private boolean mTouching;
+    private final FrameCostStats mMatrixFrameCost = new FrameCostStats("matrix");
+    private final FrameCostStats mPropertyFrameCost = new FrameCostStats("properties");
+    private Window.OnFrameMetricsAvailableListener mFrameMetricsListener;
+    private final FrameCallback mFrameCallback = new FrameCallback();
+    private boolean mFrameScheduled;
+
+    private GestureEngine mGestureEngine;
+    private final GestureGeometry mGestureGeometry = new GestureGeometry();
+    private final MotionEventAdapter mTouchAdapter = new MotionEventAdapter();
+    private TouchTraceRecorder mTraceRecorder;
+    private final InertiaAnimator mInertia = new InertiaAnimator(mTransform);
+    private TransformGestureDetector mTransformDetector;
+    private ShoveGestureDetector mShoveDetector;
+    /** Replaces the transform detector while symbols are drawn. */
+    private StrokeGestureDetector mStrokeDetector;
+    private boolean mSymbolMode;
+    /** Shared by the detectors, whose listeners run on the same thread. */
+    private final CallbackThrottle mCallbackThrottle = new CallbackThrottle();
+    private final GestureMetrics.Snapshot mMetricsSnapshot = new GestureMetrics.Snapshot();
+    private long mLastMetricsLogTime;
 
-    private ScaleGestureDetector mScaleDetector;
-    private RotateGestureDetector mRotateDetector;
-    private MoveGestureDetector mMoveDetector;
-    private ShoveGestureDetector mShoveDetector; 
+    /** Listener results not applied to the transform yet. */
+    private final TransformUpdate mUpdate = new TransformUpdate();
+    private final TransformUpdate mAppliedUpdate = new TransformUpdate();
+    /** Runs the detectors off the UI thread, null when they run in onTouch. */
+    private GesturePipeline mPipeline;
+    private boolean mPipelineMode;
+    private final AtomicBoolean mUpdatePosted = new AtomicBoolean();
+    private final Runnable mApplyUpdate = new Runnable() {
+		public void run() {
+			mUpdatePosted.set(false);
+			applyUpdate();
+			scheduleFrame();
+		}
+	};
 
 	@SuppressWarnings("deprecation")
 	@Override
@@ -34,96 +102,609 @@ public class MainActivity extends Activity implements OnTouchListener {
 		setContentView(R.layout.main);
 
 		Display display = getWindowManager().getDefaultDisplay();
-		mFocusX = display.getWidth()/2f;
-		mFocusY = display.getHeight()/2f;
+		mTransform.setFocus(display.getWidth()/2f, display.getHeight()/2f);
+		mTransform.setScale(.4f);
+		mInertia.setScaleBounds(MIN_FLING_SCALE, MAX_FLING_SCALE);
+		updateInertiaBounds();
 		
-		ImageView view = (ImageView) findViewById(R.id.imageView);
-		view.setOnTouchListener(this);
+		mImageView = (ImageView) findViewById(R.id.imageView);
+		mTiledView = (TiledImageView) findViewById(R.id.tiledView);
+		// touches come from the container, which is never moved, so in property
+		// mode they are not mapped through the transform of the image view
+		findViewById(R.id.container).setOnTouchListener(this);
 		
 		Drawable d 		= this.getResources().getDrawable(R.drawable.img);
 		mImageHeight 	= d.getIntrinsicHeight();
 		mImageWidth 	= d.getIntrinsicWidth();
 
-        float scaledImageCenterX = (mImageWidth * mScaleFactor)/2; 
-        float scaledImageCenterY = (mImageHeight * mScaleFactor)/2;
-        
-		mMatrix.postScale(mScaleFactor, mScaleFactor);
-		mMatrix.postTranslate(mFocusX - scaledImageCenterX, mFocusY - scaledImageCenterY);
-		view.setImageMatrix(mMatrix);
+		applyTransform();
 
 		 
-		mScaleDetector 	= new ScaleGestureDetector(this, new ScaleListener());
-		mRotateDetector = new RotateGestureDetector(this, new RotateListener());
-		mMoveDetector 	= new MoveGestureDetector(this, new MoveListener());
-		mShoveDetector 	= new ShoveGestureDetector(this, new ShoveListener());
+		TransformGestureDetector transformDetector = new TransformGestureDetector(new TransformListener());
+		ShoveGestureDetector shoveDetector 	= new ShoveGestureDetector(new ShoveListener());
+		mTransformDetector = transformDetector;
+		mShoveDetector = shoveDetector;
+		MotionEventAdapter.updateGeometry(this, mGestureGeometry);
+		shoveDetector.setGeometry(mGestureGeometry);
+		// the angle check only has to tell about 20 degrees apart
+		shoveDetector.setFastAngle(true);
+		
+		// use every batched sample, but only one callback per event
+		transformDetector.setHistoryMode(BaseGestureDetector.HISTORY_COALESCE);
+		shoveDetector.setHistoryMode(BaseGestureDetector.HISTORY_COALESCE);
+
+		TouchPredictor translationPredictor = new TouchPredictor();
+		translationPredictor.setHorizon(PREDICTION_HORIZON);
+		translationPredictor.setMaxOffset(MAX_PREDICTED_PIXELS);
+		TouchPredictor rotationPredictor = new TouchPredictor();
+		rotationPredictor.setHorizon(PREDICTION_HORIZON);
+		rotationPredictor.setMaxOffset(MAX_PREDICTED_DEGREES);
+		transformDetector.setPredictors(translationPredictor, rotationPredictor);
+
+		// skip updates while the listeners overrun the frame, never begin or end
+		mCallbackThrottle.setRefreshRate(display.getRefreshRate());
+		transformDetector.setCallbackThrottle(mCallbackThrottle);
+		shoveDetector.setCallbackThrottle(mCallbackThrottle);
+
+		mGestureEngine = new GestureEngine();
+		// smooth resting fingers, follow fast ones
+		mGestureEngine.setTouchFilter(new TouchFilter());
+		mGestureEngine.addDetector(transformDetector);
+		mGestureEngine.addDetector(shoveDetector);
+		// a rotation does not change the alpha, a shove does not move the image
+		GestureArbiter arbiter = new GestureArbiter();
+		arbiter.setExclusive(transformDetector, shoveDetector);
+		arbiter.setCommitThreshold(transformDetector, ROTATION_COMMIT_DEGREES);
+		arbiter.setCommitThreshold(shoveDetector, SHOVE_COMMIT_PIXELS);
+		arbiter.setPriority(transformDetector, 1);
+		mGestureEngine.setArbiter(arbiter);
+
+		mStrokeDetector = new StrokeGestureDetector(new StrokeListener(), loadStrokeTemplates());
+	}
+
+	/**
+	 * The templates in the files directory if there are any, the built-in
+	 * symbols otherwise.
+	 */
+	private StrokeTemplateLibrary loadStrokeTemplates() {
+		File file = new File(getFilesDir(), "strokes.bin");
+		if (file.exists()) {
+			FileInputStream in = null;
+			try {
+				in = new FileInputStream(file);
+				StrokeTemplateLibrary library = StrokeTemplateLibrary.read(in);
+				Log.i(TAG, "loaded " + library.getTemplateCount() + " stroke templates from " + file);
+				return library;
+			} catch (IOException e) {
+				Log.w(TAG, "cannot read stroke templates", e);
+			} finally {
+				if (in != null) {
+					try {
+						in.close();
+					} catch (IOException e) {
+						// Ignore
+					}
+				}
+			}
+		}
+		return StrokeTemplateLibrary.createDefault();
+	}
+	
+	@Override
+	public void onConfigurationChanged(Configuration newConfig) {
+		super.onConfigurationChanged(newConfig);
+		MotionEventAdapter.updateGeometry(this, mGestureGeometry);
+		updateInertiaBounds();
+		mCallbackThrottle.setRefreshRate(getWindowManager().getDefaultDisplay().getRefreshRate());
+	}
+
+	/**
+	 * Keep the focus of a flung image on the screen.
+	 */
+	@SuppressWarnings("deprecation")
+	private void updateInertiaBounds() {
+		Display display = getWindowManager().getDefaultDisplay();
+		mInertia.setTranslationBounds(0, 0, display.getWidth(), display.getHeight());
 	}
 	
+	@Override
+	protected void onResume() {
+		super.onResume();
+		if (mPipelineMode) {
+			startPipeline();
+		}
+		if (mTiledMode) {
+			openTiles();
+		}
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+			if (mFrameMetricsListener == null) {
+				mFrameMetricsListener = new FrameCostListener();
+			}
+			getWindow().addOnFrameMetricsAvailableListener(mFrameMetricsListener, new Handler());
+		}
+	}
+
+	@Override
+	protected void onPause() {
+		super.onPause();
+		stopPipeline();
+		mTiledView.close();
+		if (mFrameMetricsListener != null) {
+			getWindow().removeOnFrameMetricsAvailableListener(mFrameMetricsListener);
+		}
+		releaseLayer();
+		if (mFrameScheduled) {
+			Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+			mFrameScheduled = false;
+		}
+		mInertia.cancel();
+		Log.d(TAG, "touch events " + mTransform.getTouchEventCount()
+				+ ", frames applied " + mTransform.getFrameCount()
+				+ ", matrix applies " + mTransform.getMatrixApplyCount()
+				+ ", alpha applies " + mTransform.getAlphaApplyCount()
+				+ ", applies saved " + mTransform.getSavedApplyCount());
+		logMetrics();
+		stopTraceRecording();
+	}
+
+	private void logMetrics() {
+		Log.d(TAG, "transform " + mTransformDetector.getMetrics().snapshot(mMetricsSnapshot));
+		Log.d(TAG, "shove " + mShoveDetector.getMetrics().snapshot(mMetricsSnapshot));
+		Log.d(TAG, "stroke " + mStrokeDetector.getMetrics().snapshot(mMetricsSnapshot));
+		if (mMatrixFrameCost.getCount() > 0 || mPropertyFrameCost.getCount() > 0) {
+			Log.d(TAG, "draw cost " + mMatrixFrameCost);
+			Log.d(TAG, "draw cost " + mPropertyFrameCost);
+		}
+	}
+
+	@Override
+	public boolean onCreateOptionsMenu(Menu menu) {
+		getMenuInflater().inflate(R.menu.main, menu);
+		return true;
+	}
+
+	@Override
+	public boolean onPrepareOptionsMenu(Menu menu) {
+		menu.findItem(R.id.action_record_trace).setChecked(mTraceRecorder != null);
+		menu.findItem(R.id.action_pipeline).setChecked(mPipelineMode);
+		menu.findItem(R.id.action_symbols).setChecked(mSymbolMode);
+		menu.findItem(R.id.action_tiles).setChecked(mTiledMode);
+		menu.findItem(R.id.action_properties).setChecked(mPropertyMode);
+		return true;
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		if (item.getItemId() == R.id.action_record_trace) {
+			if (mTraceRecorder == null) {
+				startTraceRecording();
+			} else {
+				stopTraceRecording();
+			}
+			return true;
+		}
+		if (item.getItemId() == R.id.action_pipeline) {
+			mPipelineMode = !mPipelineMode;
+			if (mPipelineMode) {
+				startPipeline();
+			} else {
+				stopPipeline();
+			}
+			return true;
+		}
+		if (item.getItemId() == R.id.action_symbols) {
+			setSymbolMode(!mSymbolMode);
+			return true;
+		}
+		if (item.getItemId() == R.id.action_tiles) {
+			setTiledMode(!mTiledMode);
+			return true;
+		}
+		if (item.getItemId() == R.id.action_properties) {
+			setPropertyMode(!mPropertyMode);
+			return true;
+		}
+		return super.onOptionsItemSelected(item);
+	}
+
+	/**
+	 * Draw symbols with one finger instead of moving the image. The worker
+	 * of the pipeline is stopped while the detectors change.
+	 */
+	private void setSymbolMode(boolean symbolMode) {
+		if (symbolMode == mSymbolMode) {
+			return;
+		}
+		mSymbolMode = symbolMode;
+		final boolean pipeline = mPipeline != null;
+		stopPipeline();
+		if (symbolMode) {
+			mGestureEngine.removeDetector(mTransformDetector);
+			mGestureEngine.addDetector(mStrokeDetector);
+		} else {
+			mGestureEngine.removeDetector(mStrokeDetector);
+			mGestureEngine.addDetector(mTransformDetector);
+		}
+		if (pipeline) {
+			startPipeline();
+		}
+	}
+
+	private void startPipeline() {
+		if (mPipeline == null) {
+			mPipeline = new GesturePipeline(new PipelineHandler());
+			mPipeline.start();
+		}
+	}
+
+	/**
+	 * Finish the queued events on the worker and recognize on the UI thread
+	 * again.
+	 */
+	private void stopPipeline() {
+		if (mPipeline == null) {
+			return;
+		}
+		mPipeline.stop();
+		Log.d(TAG, "pipeline dropped " + mPipeline.getDroppedCount() + " moves, stalled "
+				+ mPipeline.getStallCount() + " times");
+		mPipeline = null;
+		applyUpdate();
+		scheduleFrame();
+	}
+
+	/**
+	 * Show the image from tiles decoded at the resolution of the screen
+	 * instead of one bitmap at full resolution.
+	 */
+	private void setTiledMode(boolean tiledMode) {
+		if (tiledMode == mTiledMode) {
+			return;
+		}
+		mTiledMode = tiledMode;
+		if (tiledMode) {
+			if (!openTiles()) {
+				mTiledMode = false;
+				return;
+			}
+			mTiledView.setVisibility(View.VISIBLE);
+			mImageView.setVisibility(View.GONE);
+		} else {
+			mTiledView.close();
+			mImageView.setVisibility(View.VISIBLE);
+			mTiledView.setVisibility(View.GONE);
+		}
+		applyMatrix();
+		applyAlpha();
+	}
+
+	/**
+	 * Apply the transform through the translation, rotation, scale and
+	 * alpha of the ImageView, on a hardware layer while the image moves.
+	 * The image matrix then only fits the image into the view, as the view
+	 * clips its content before it is transformed. Has no effect on the
+	 * tiled view, which needs the matrix to find the visible tiles.
+	 */
 	@SuppressWarnings("deprecation")
+	private void setPropertyMode(boolean propertyMode) {
+		if (propertyMode == mPropertyMode) {
+			return;
+		}
+		mPropertyMode = propertyMode;
+		if (propertyMode) {
+			mContentScale = 1f;
+			if (mImageView.getWidth() > 0 && mImageView.getHeight() > 0) {
+				mContentScale = Math.min(1f, Math.min((float) mImageView.getWidth() / mImageWidth,
+						(float) mImageView.getHeight() / mImageHeight));
+			}
+			mMatrix.reset();
+			mMatrix.postScale(mContentScale, mContentScale);
+			mImageView.setImageMatrix(mMatrix);
+			mImageView.setPivotX(mImageWidth * mContentScale / 2);
+			mImageView.setPivotY(mImageHeight * mContentScale / 2);
+			// the view alpha takes over from the image alpha
+			mImageView.setAlpha(255);
+		} else {
+			releaseLayer();
+			mImageView.setTranslationX(0f);
+			mImageView.setTranslationY(0f);
+			mImageView.setRotation(0f);
+			mImageView.setScaleX(1f);
+			mImageView.setScaleY(1f);
+			mImageView.setAlpha(1f);
+		}
+		applyMatrix();
+		applyAlpha();
+	}
+
+	/**
+	 * Drop the hardware layer once the image rests, so it is drawn sharp at
+	 * its scale again instead of as a scaled texture.
+	 */
+	private void releaseLayerIfIdle() {
+		if (mLayerActive && !mTouching && !mInertia.isRunning()) {
+			releaseLayer();
+		}
+	}
+
+	private void releaseLayer() {
+		if (mLayerActive) {
+			mImageView.setLayerType(View.LAYER_TYPE_NONE, null);
+			mLayerActive = false;
+		}
+	}
+
+	private boolean openTiles() {
+		try {
+			mTiledView.open(getResources().openRawResource(R.drawable.img), mImageWidth,
+					Runtime.getRuntime().maxMemory() / TILE_CACHE_DIVISOR);
+			return true;
+		} catch (IOException e) {
+			Log.w(TAG, "cannot decode tiles", e);
+			return false;
+		}
+	}
+
+	private void startTraceRecording() {
+		File file = new File(getFilesDir(), "touch-" + System.currentTimeMillis() + ".trace");
+		try {
+			mTraceRecorder = new TouchTraceRecorder(new FileOutputStream(file));
+			Log.i(TAG, "recording touch trace to " + file);
+		} catch (IOException e) {
+			Log.w(TAG, "cannot record touch trace", e);
+		}
+	}
+
+	private void stopTraceRecording() {
+		if (mTraceRecorder == null) {
+			return;
+		}
+		try {
+			mTraceRecorder.close();
+			Log.i(TAG, "recorded " + mTraceRecorder.getRecordedCount() + " touch events, dropped "
+					+ mTraceRecorder.getDroppedCount());
+		} catch (IOException e) {
+			Log.w(TAG, "cannot write touch trace", e);
+		}
+		mTraceRecorder = null;
+	}
+	
 	public boolean onTouch(View v, MotionEvent event) {
-        mScaleDetector.onTouchEvent(event);
-        mRotateDetector.onTouchEvent(event);
-        mMoveDetector.onTouchEvent(event);
-        mShoveDetector.onTouchEvent(event);
+        final int action = event.getActionMasked();
+        mTouching = action != MotionEvent.ACTION_UP && action != MotionEvent.ACTION_CANCEL;
+        if (action == MotionEvent.ACTION_DOWN && mPropertyMode && !mTiledMode && !mLayerActive) {
+        	mImageView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        	mLayerActive = true;
+        }
+        TouchSample sample = mTouchAdapter.toTouchSample(event);
+        if (mTraceRecorder != null) {
+        	mTraceRecorder.record(sample);
+        }
+        if (mPipeline != null) {
+        	mPipeline.enqueue(sample);
+        } else {
+        	recognize(sample);
+        	applyUpdate();
+        }
+        if (event.getActionMasked() == MotionEvent.ACTION_UP
+        		&& event.getEventTime() - mLastMetricsLogTime > METRICS_LOG_INTERVAL) {
+        	mLastMetricsLogTime = event.getEventTime();
+        	logMetrics();
+        }
 
-        float scaledImageCenterX = (mImageWidth*mScaleFactor)/2;
-        float scaledImageCenterY = (mImageHeight*mScaleFactor)/2;
+        mTransform.countTouchEvent();
+        scheduleFrame();
+        if (!mTouching && !mFrameScheduled) {
+        	releaseLayerIfIdle();
+        }
+		return true; 
+	}
+
+	/**
+	 * Feed a sample to the detectors, on the UI thread or on the worker of
+	 * the pipeline. The listeners collect their results in mUpdate.
+	 */
+	private void recognize(TouchSample sample) {
+		if (sample.getActionMasked() == TouchSample.ACTION_DOWN) {
+			// catch the gliding image
+			mUpdate.stopFling();
+		}
+		mGestureEngine.onTouchEvent(sample);
+	}
+
+	/**
+	 * Apply the listener results collected so far to the transform.
+	 */
+	private void applyUpdate() {
+		mUpdate.moveTo(mAppliedUpdate);
+		mAppliedUpdate.applyTo(mTransform, mInertia, System.nanoTime());
+	}
+
+	private void scheduleFrame() {
+        if ((mTransform.isDirty() || mInertia.isRunning()) && !mFrameScheduled) {
+        	mFrameScheduled = true;
+        	Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+	}
+
+	/**
+	 * Runs the detectors on the worker thread and posts their results to
+	 * the UI thread once the worker caught up with the touch events.
+	 */
+	private class PipelineHandler implements GesturePipeline.EventHandler {
+		public void onTouchEvent(TouchSample sample) {
+			recognize(sample);
+		}
+
+		public void onQueueDrained() {
+			if (!mUpdate.isEmpty() && mUpdatePosted.compareAndSet(false, true)) {
+				mImageView.post(mApplyUpdate);
+			}
+		}
+	}
+
+	/**
+	 * Apply the parts of the transform that changed since the last frame.
+	 */
+	private void applyTransform() {
+		if (mTransform.isMatrixDirty()) {
+			applyMatrix();
+		}
+		if (mTransform.isAlphaDirty()) {
+			applyAlpha();
+		}
+		mTransform.onApplied();
+	}
+
+	private void applyMatrix() {
+		if (mPropertyMode && !mTiledMode) {
+			applyProperties();
+			return;
+		}
+		final float scale = mTransform.getScale();
+        float scaledImageCenterX = (mImageWidth*scale)/2;
+        float scaledImageCenterY = (mImageHeight*scale)/2;
         
         mMatrix.reset();
-        mMatrix.postScale(mScaleFactor, mScaleFactor);
-        mMatrix.postRotate(mRotationDegrees,  scaledImageCenterX, scaledImageCenterY);
-        mMatrix.postTranslate(mFocusX - scaledImageCenterX, mFocusY - scaledImageCenterY);
-        
-		ImageView view = (ImageView) v;
-		view.setImageMatrix(mMatrix);
-		view.setAlpha(mAlpha);
+        mMatrix.postScale(scale, scale);
+        mMatrix.postRotate(mTransform.getRotationDegrees(),  scaledImageCenterX, scaledImageCenterY);
+        mMatrix.postTranslate(mTransform.getFocusX() - scaledImageCenterX, mTransform.getFocusY() - scaledImageCenterY);
+        if (mTiledMode) {
+        	mTiledView.setImageMatrix(mMatrix, mTransform);
+        } else {
+        	mImageView.setImageMatrix(mMatrix);
+        }
+	}
 
-		return true; 
+	/**
+	 * The transform as view properties; the view is pivoted on the centre
+	 * of the image, see setPropertyMode.
+	 */
+	private void applyProperties() {
+		final float contentScale = mContentScale;
+		mImageView.setTranslationX(mTransform.getFocusX() - mImageWidth * contentScale / 2);
+		mImageView.setTranslationY(mTransform.getFocusY() - mImageHeight * contentScale / 2);
+		mImageView.setRotation(mTransform.getRotationDegrees());
+		mImageView.setScaleX(mTransform.getScale() / contentScale);
+		mImageView.setScaleY(mTransform.getScale() / contentScale);
 	}
 
-	private class ScaleListener extends ScaleGestureDetector.SimpleOnScaleGestureListener {
-		@Override
-		public boolean onScale(ScaleGestureDetector detector) {
-			mScaleFactor *= detector.getScaleFactor();  
-			
-			mScaleFactor = Math.max(0.1f, Math.min(mScaleFactor, 10.0f)); 
+	@SuppressWarnings("deprecation")
+	private void applyAlpha() {
+		if (mTiledMode) {
+			mTiledView.setAlpha(mTransform.getAlpha() / 255f);
+		} else if (mPropertyMode) {
+			mImageView.setAlpha(mTransform.getAlpha() / 255f);
+		} else {
+			mImageView.setAlpha(mTransform.getAlpha());
+		}
+	}
 
-			return true;
+	/**
+	 * Applies the transform once per display frame, however many touch
+	 * events arrived since the last one, and advances the fling animation.
+	 */
+	private class FrameCallback implements Choreographer.FrameCallback {
+		public void doFrame(long frameTimeNanos) {
+			mFrameScheduled = false;
+			if (mInertia.step(frameTimeNanos)) {
+				mFrameScheduled = true;
+				Choreographer.getInstance().postFrameCallback(this);
+			}
+			applyTransform();
+			releaseLayerIfIdle();
 		}
 	}
-	
-	private class RotateListener extends RotateGestureDetector.SimpleOnRotateGestureListener {
+
+	/**
+	 * Records the time frames took to draw and render, for the render mode
+	 * they were drawn in.
+	 */
+	private class FrameCostListener implements Window.OnFrameMetricsAvailableListener {
+		public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics, int dropCount) {
+			if (frameMetrics.getMetric(FrameMetrics.FIRST_DRAW_FRAME) != 0) {
+				return;
+			}
+			final long nanos = frameMetrics.getMetric(FrameMetrics.DRAW_DURATION)
+					+ frameMetrics.getMetric(FrameMetrics.SYNC_DURATION)
+					+ frameMetrics.getMetric(FrameMetrics.COMMAND_ISSUE_DURATION);
+			if (mTiledMode) {
+				return;
+			}
+			if (mPropertyMode) {
+				mPropertyFrameCost.record(nanos);
+			} else {
+				mMatrixFrameCost.record(nanos);
+			}
+		}
+	}
+
+	/**
+	 * Moves, rotates and scales the image by one transform, so the image
+	 * stays under the fingers however many there are.
+	 */
+	private class TransformListener extends TransformGestureDetector.SimpleOnTransformGestureListener {
 		@Override
-		public boolean onRotate(RotateGestureDetector detector) {
-			mRotationDegrees -= detector.getRotationDegreesDelta();
-			System.err.println("lili mRotationDegrees===" + mRotationDegrees);
+		public boolean onTransform(TransformGestureDetector detector) {
+			addGesture(detector);
 			return true;
 		}
-	}	
-	
-	private class MoveListener extends MoveGestureDetector.SimpleOnMoveGestureListener {
+
 		@Override
-		public boolean onMove(MoveGestureDetector detector) {
-			PointF d = detector.getFocusDelta();
-			mFocusX += d.x;
-			mFocusY += d.y;		
+		public void onTransformEnd(TransformGestureDetector detector) {
+			addGesture(detector);
+			if (detector.isCancelled()) {
+				// the touch went elsewhere, for example to the shove
+				return;
+			}
+			mUpdate.flingTranslation(detector.getVelocityX(), detector.getVelocityY());
+			mUpdate.flingRotation(detector.getAngularVelocity());
+			mUpdate.flingScale(detector.getScaleVelocity());
+		}
 
-			// mFocusX = detector.getFocusX();
-			// mFocusY = detector.getFocusY();
-			return true;
+		private void addGesture(TransformGestureDetector detector) {
+			mUpdate.addTransform(detector.getDeltaA(), detector.getDeltaB(),
+					detector.getDeltaTx(), detector.getDeltaTy(),
+					detector.getRotationDegreesDelta(), detector.getScaleFactor());
 		}
-	}		
+	}
 	
+	/**
+	 * Shows the symbol a stroke matched. May run on the worker of the
+	 * pipeline, so the toast is posted to the UI thread.
+	 */
+	private class StrokeListener extends StrokeGestureDetector.SimpleOnStrokeGestureListener {
+		@Override
+		public void onStrokeEnd(StrokeGestureDetector detector) {
+			final String name = detector.getMatchName();
+			if (name == null) {
+				return;
+			}
+			final float score = detector.getMatchScore();
+			Log.d(TAG, "stroke " + name + " score " + score + ", compared "
+					+ detector.getMatch().getComparedCount() + " templates");
+			mImageView.post(new Runnable() {
+				public void run() {
+					Toast.makeText(MainActivity.this, name + " (" + Math.round(100 * score) + " %)",
+							Toast.LENGTH_SHORT).show();
+				}
+			});
+		}
+	}
+
 	private class ShoveListener extends ShoveGestureDetector.SimpleOnShoveGestureListener {
 		@Override
 		public boolean onShove(ShoveGestureDetector detector) {
-			mAlpha += detector.getShovePixelsDelta();
-			if (mAlpha > 255)
-				mAlpha = 255;
-			else if (mAlpha < 0)
-				mAlpha = 0;
-			
+			mUpdate.addAlpha(detector.getShovePixelsDelta());
 			return true;
 		}
+
+		@Override
+		public void onShoveEnd(ShoveGestureDetector detector) {
+			if (!detector.isCancelled()) {
+				mUpdate.flingAlpha(detector.getShoveVelocity());
+			}
+		}
 	}	
 
 }
\ No newline at end of file
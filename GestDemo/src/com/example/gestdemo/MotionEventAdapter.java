@@ -0,0 +1,59 @@
+package com.example.gestdemo;
+
+import android.content.Context;
+import android.util.DisplayMetrics;
+import android.view.MotionEvent;
+import android.view.ViewConfiguration;
+
+/**
+ * Thin Android layer on top of the platform independent detectors. Converts
+ * MotionEvents into a reused {@link TouchSample} and fills the
+ * {@link GestureGeometry} the detectors use to reject sloppy gestures.
+ */
+public class MotionEventAdapter {
+
+	private final TouchSample mSample = new TouchSample();
+
+	/**
+	 * Fill the adapter's sample with the given event. The returned sample is
+	 * reused by the next call.
+	 *
+	 * @param event
+	 * @return
+	 */
+	public TouchSample toTouchSample(MotionEvent event) {
+		final TouchSample sample = mSample;
+		final int count = event.getPointerCount();
+		sample.setAction(event.getAction() & MotionEvent.ACTION_MASK, event.getActionIndex(),
+				event.getEventTime(), count);
+		for (int i = 0; i < count; i++) {
+			sample.setPointer(i, event.getPointerId(i), event.getX(i), event.getY(i), event.getPressure(i));
+		}
+		final int historySize = event.getHistorySize();
+		sample.setHistorySize(historySize);
+		for (int h = 0; h < historySize; h++) {
+			sample.setHistoricalEventTime(h, event.getHistoricalEventTime(h));
+			for (int i = 0; i < count; i++) {
+				sample.setHistoricalPointer(h, i, event.getHistoricalX(i, h), event.getHistoricalY(i, h),
+						event.getHistoricalPressure(i, h));
+			}
+		}
+		// MotionEvent has no getRawX(int), all pointers share the offset of the first one
+		sample.setRawOffset(event.getRawX() - event.getX(), event.getRawY() - event.getY());
+		return sample;
+	}
+
+	/**
+	 * Set the screen size and edge slop of the given geometry from the
+	 * Context's display metrics and configuration. Call again when the
+	 * configuration changes.
+	 *
+	 * @param context
+	 * @param geometry
+	 */
+	public static void updateGeometry(Context context, GestureGeometry geometry) {
+		ViewConfiguration config = ViewConfiguration.get(context);
+		DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+		geometry.setScreen(metrics.widthPixels, metrics.heightPixels, config.getScaledEdgeSlop());
+	}
+}
@@ -1,9 +1,5 @@
 package com.example.gestdemo;
 
-import android.content.Context;
-import android.graphics.PointF;
-import android.view.MotionEvent;
-
 public class MoveGestureDetector extends BaseGestureDetector {
 	
  
@@ -28,106 +24,249 @@ public class MoveGestureDetector extends BaseGestureDetector {
 	    }
 	}
 
-    private static final PointF FOCUS_DELTA_ZERO = new PointF();
-    
     private final OnMoveGestureListener mListener;
     
-    private PointF mCurrFocusInternal;
-    private PointF mPrevFocusInternal;  
-    private PointF mFocusExternal = new PointF();
-    private PointF mFocusDeltaExternal = new PointF();
+    private float mCurrFocusInternalX;
+    private float mCurrFocusInternalY;
+    private float mPrevFocusInternalX;
+    private float mPrevFocusInternalY;
+    private float mFocusExternalX;
+    private float mFocusExternalY;
+    private float mFocusDeltaExternalX;
+    private float mFocusDeltaExternalY;
+    private float mHistoryFocusDeltaX;
+    private float mHistoryFocusDeltaY;
+
+    private final GestureVelocityTracker mVelocityTracker = new GestureVelocityTracker();
+    private int mTrackedPointerCount;
+    private TouchPredictor mPredictor;
+    private float mAppliedPredictionX;
+    private float mAppliedPredictionY;
+    private float mPredictedFocusDeltaX;
+    private float mPredictedFocusDeltaY;
     
 
-    public MoveGestureDetector(Context context, OnMoveGestureListener listener) {
-    	super(context);
+    public MoveGestureDetector(OnMoveGestureListener listener) {
         mListener = listener;
     }
 
     @Override
-    protected void handleStartProgressEvent(int actionCode, MotionEvent event){
+    protected void handleStartProgressEvent(int actionCode, GestureFrame frame){
         switch (actionCode) { 
-            case MotionEvent.ACTION_DOWN: 
+            case TouchSample.ACTION_DOWN: 
                 resetState(); 
                 
-                mPrevEvent = MotionEvent.obtain(event);
+                setPreviousState(frame);
                 mTimeDelta = 0;
+                mVelocityTracker.clear();
+                mTrackedPointerCount = 0;
+                resetPrediction();
 
-                updateStateByEvent(event);
+                updateStateByEvent(frame);
                 break;
             
-            case MotionEvent.ACTION_MOVE:
+            case TouchSample.ACTION_MOVE:
+                startCallback();
                 mGestureInProgress = mListener.onMoveBegin(this);
+                endCallback();
                 break;
         }
     }
     
     @Override
-    protected void handleInProgressEvent(int actionCode, MotionEvent event){ 	
+    protected void handleInProgressEvent(int actionCode, GestureFrame frame){ 	
         switch (actionCode) {
-        	case MotionEvent.ACTION_UP:
-            case MotionEvent.ACTION_CANCEL:
+        	case TouchSample.ACTION_UP:
+            case TouchSample.ACTION_CANCEL:
+                if (actionCode == TouchSample.ACTION_UP) {
+                	addTrackedSample(frame);
+                }
+                if (takeDecimatedUpdate()) {
+                    reportMove();
+                }
+                settlePrediction();
+                startCallback();
                 mListener.onMoveEnd(this);
+                endCallback();
                 resetState();
                 break;
 
-            case MotionEvent.ACTION_MOVE:
-                updateStateByEvent(event);
+            case TouchSample.ACTION_MOVE:
+                updateStateByEvent(frame);
 
 				 
-                if (mCurrPressure / mPrevPressure > PRESSURE_THRESHOLD) {
-                    final boolean updatePrevious = mListener.onMove(this);
-                    if (updatePrevious) {
-                        mPrevEvent.recycle();
-                        mPrevEvent = MotionEvent.obtain(event);
-                    }
+                if (isPressureSteady() && isUpdateDue()) {
+                    reportMove();
                 }
                 break;
         }
 	}
+
+    private void reportMove() {
+        startCallback();
+        final boolean updatePrevious = mListener.onMove(this);
+        endCallback();
+        if (updatePrevious) {
+            addGestureDelta(getFocusDeltaX(), getFocusDeltaY());
+            updatePreviousState();
+        }
+    }
     
-    protected void updateStateByEvent(MotionEvent curr) {
+    protected void updateStateByEvent(GestureFrame curr) {
     	super.updateStateByEvent(curr);
-
-    	final MotionEvent prev = mPrevEvent;
-    	
         
-        mCurrFocusInternal = determineFocalPoint(curr);
-        mPrevFocusInternal = determineFocalPoint(prev);
+        mCurrFocusInternalX = curr.getFocusX();
+        mCurrFocusInternalY = curr.getFocusY();
+        mPrevFocusInternalX = mPrevFrame.getFocusX();
+        mPrevFocusInternalY = mPrevFrame.getFocusY();
         
         
-        boolean mSkipNextMoveEvent = prev.getPointerCount() != curr.getPointerCount();
-        mFocusDeltaExternal = mSkipNextMoveEvent ? FOCUS_DELTA_ZERO : new PointF(mCurrFocusInternal.x - mPrevFocusInternal.x,  mCurrFocusInternal.y - mPrevFocusInternal.y);
+        boolean mSkipNextMoveEvent = mPrevFrame.getPointerCount() != curr.getPointerCount();
+        if (isCoalescingHistory()) {
+        	mFocusDeltaExternalX = mHistoryFocusDeltaX;
+        	mFocusDeltaExternalY = mHistoryFocusDeltaY;
+        } else if (mSkipNextMoveEvent) {
+        	mFocusDeltaExternalX = 0f;
+        	mFocusDeltaExternalY = 0f;
+        } else {
+        	mFocusDeltaExternalX = mCurrFocusInternalX - mPrevFocusInternalX;
+        	mFocusDeltaExternalY = mCurrFocusInternalY - mPrevFocusInternalY;
+        }
         
         
-        mFocusExternal.x += mFocusDeltaExternal.x;
-        mFocusExternal.y += mFocusDeltaExternal.y;        
-    }
+        mFocusExternalX += mFocusDeltaExternalX;
+        mFocusExternalY += mFocusDeltaExternalY;        
 
- 
-    private PointF determineFocalPoint(MotionEvent e){
-    	// Number of fingers on screen
-        final int pCount = e.getPointerCount(); 
-        float x = 0f;
-        float y = 0f;
-        
-        for(int i = 0; i < pCount; i++){
-        	x += e.getX(i);
-        	y += e.getY(i);
+        addTrackedSample(curr);
+        mPredictedFocusDeltaX = mFocusDeltaExternalX;
+        mPredictedFocusDeltaY = mFocusDeltaExternalY;
+        final TouchPredictor predictor = mPredictor;
+        if (predictor != null) {
+        	mPredictedFocusDeltaX += predictor.getOffsetX() - mAppliedPredictionX;
+        	mPredictedFocusDeltaY += predictor.getOffsetY() - mAppliedPredictionY;
         }
-        
-        return new PointF(x/pCount, y/pCount);
     }
 
+    @Override
+    protected void updatePreviousState() {
+    	super.updatePreviousState();
+    	if (mPredictor != null) {
+    		mAppliedPredictionX = mPredictor.getOffsetX();
+    		mAppliedPredictionY = mPredictor.getOffsetY();
+    	}
+    }
+
+    /**
+     * Feed the focus of the frame to the velocity tracker and the predictor.
+     */
+    private void addTrackedSample(GestureFrame frame) {
+    	final TouchPredictor predictor = mPredictor;
+    	// the focus jumps when pointers go down or up, start over
+    	if (frame.getPointerCount() != mTrackedPointerCount) {
+    		mVelocityTracker.clear();
+    		if (predictor != null) {
+    			predictor.reset();
+    		}
+    		mTrackedPointerCount = frame.getPointerCount();
+    	}
+    	mVelocityTracker.addSample(frame.getEventTime(), frame.getFocusX(), frame.getFocusY());
+    	if (predictor != null) {
+    		predictor.addSample(frame.getEventTime(), frame.getFocusX(), frame.getFocusY());
+    	}
+    }
+
+    private void resetPrediction() {
+    	if (mPredictor != null) {
+    		mPredictor.reset();
+    	}
+    	mAppliedPredictionX = 0f;
+    	mAppliedPredictionY = 0f;
+    }
+
+    /**
+     * Take back the prediction applied so far when the gesture ends.
+     */
+    private void settlePrediction() {
+    	mPredictedFocusDeltaX = -mAppliedPredictionX;
+    	mPredictedFocusDeltaY = -mAppliedPredictionY;
+    	resetPrediction();
+    }
+
+    @Override
+    protected void accumulateHistoryStep(GestureFrame from, GestureFrame to) {
+    	if (from.getPointerCount() == to.getPointerCount()) {
+    		mHistoryFocusDeltaX += to.getFocusX() - from.getFocusX();
+    		mHistoryFocusDeltaY += to.getFocusY() - from.getFocusY();
+    	}
+    	addTrackedSample(to);
+    }
+
+    @Override
+    protected void resetHistoryAccumulation() {
+    	mHistoryFocusDeltaX = 0f;
+    	mHistoryFocusDeltaY = 0f;
+    }
+
+ 
     public float getFocusX() {
-        return mFocusExternal.x;
+        return mFocusExternalX;
     }
 
     public float getFocusY() {
-        return mFocusExternal.y;
+        return mFocusExternalY;
+    }
+
+    public float getFocusDeltaX() {
+		return mFocusDeltaExternalX;
+    }
+
+    public float getFocusDeltaY() {
+		return mFocusDeltaExternalY;
+    }
+
+	/**
+	 * Velocity of the focus in pixels per second, fitted over the recent
+	 * samples. Still valid in onMoveEnd, for flinging.
+	 * 
+	 * @return
+	 */
+    public float getVelocityX() {
+    	return mVelocityTracker.getVelocityX();
+    }
+
+    public float getVelocityY() {
+    	return mVelocityTracker.getVelocityY();
+    }
+
+    /**
+     * Set the predictor that extrapolates the focus to the time the result
+     * is displayed, or null (default) for no prediction.
+     * 
+     * @param predictor
+     */
+    public void setPredictor(TouchPredictor predictor) {
+    	mPredictor = predictor;
+    	resetPrediction();
+    }
+
+    public TouchPredictor getPredictor() {
+    	return mPredictor;
+    }
+
+	/**
+	 * Same as {@link #getFocusDeltaX()}, but moving the predicted focus
+	 * instead of the measured one. Applying these deltas keeps an object
+	 * at the predicted focus; in onMoveEnd they take back the prediction
+	 * that is still applied. Without a predictor this is the focus delta.
+	 * 
+	 * @return
+	 */
+    public float getPredictedFocusDeltaX() {
+    	return mPredictedFocusDeltaX;
     }
 
-    public PointF getFocusDelta() {
-		return mFocusDeltaExternal;
+    public float getPredictedFocusDeltaY() {
+    	return mPredictedFocusDeltaY;
     }
 
 }
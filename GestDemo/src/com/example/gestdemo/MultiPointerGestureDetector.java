@@ -0,0 +1,318 @@
+package com.example.gestdemo;
+
+/**
+ * Base class of detectors that follow any number of pointers. Pointers are
+ * tracked by id from one sample to the next, so the order of the pointers
+ * in a sample does not matter and pointers going down or up do not make
+ * the deltas jump: every step is measured on the pointers that are down in
+ * both samples only.
+ *
+ * For each step the similarity transform (translation, rotation and
+ * uniform scale) that maps the previous onto the current pointer positions
+ * with the least squared error is solved in closed form, from sums
+ * gathered in one pass over the pointers. The steps are accumulated since
+ * the previous state, like the deltas of the other detectors, both as a
+ * composed transform and as the movement of the centroid, the rotation and
+ * the scale. Historical samples are stepped through in HISTORY_COALESCE
+ * and HISTORY_PER_SAMPLE mode.
+ */
+public abstract class MultiPointerGestureDetector extends BaseGestureDetector {
+
+    private GestureGeometry mGeometry;
+
+    /** Last tracked position of every pointer, indexed by pointer id. */
+    private float[] mLastX = new float[16];
+    private float[] mLastY = new float[16];
+    /** Stamp of the sample a pointer was last seen in, indexed by pointer id. */
+    private int[] mLastStamp = new int[16];
+    private int mStamp = 1;
+    private int mTrackedPointerCount;
+
+    private float mTrackedFocusDeltaX;
+    private float mTrackedFocusDeltaY;
+    private double mTrackedRotation;
+    private double mTrackedLogScale;
+    private double mTotalFocusDeltaX;
+    private double mTotalFocusDeltaY;
+    private double mTotalRotation;
+    private double mTotalLogScale;
+
+    /**
+     * Composed transform since the previous state, p' = A p + t with A as
+     * the complex number a + ib.
+     */
+    private double mMapA = 1;
+    private double mMapB;
+    private double mMapTx;
+    private double mMapTy;
+
+    /**
+     * Set the screen regions in which pointers make a gesture sloppy. The
+     * geometry is usually shared between all detectors. Without a geometry
+     * no gesture is considered sloppy.
+     *
+     * @param geometry
+     */
+    public void setGeometry(GestureGeometry geometry) {
+        mGeometry = geometry;
+    }
+
+	/**
+	 * Check if we have a sloppy gesture. Sloppy gestures can happen if the edge
+	 * of the user's hand is touching the screen, for example.
+	 *
+	 * @param event
+	 * @return
+	 */
+    protected boolean isSloppyGesture(TouchSample event){
+        final GestureGeometry geometry = mGeometry;
+        return geometry != null && geometry.isAnyPointerRejected(event);
+    }
+
+	/**
+	 * {@link #isSloppyGesture(TouchSample)}, counted in the metrics when the
+	 * gesture is sloppy.
+	 *
+	 * @param event
+	 * @return
+	 */
+    protected final boolean checkSloppyGesture(TouchSample event){
+    	final boolean sloppy = isSloppyGesture(event);
+    	if (sloppy) {
+    		getMetrics().increment(GestureMetrics.SLOPPY_REJECTIONS);
+    	}
+    	return sloppy;
+    }
+
+    @Override
+    protected void updateStateByEvent(GestureFrame curr) {
+    	super.updateStateByEvent(curr);
+    	trackPointers(curr, true);
+    }
+
+    @Override
+    protected void accumulateHistoryStep(GestureFrame from, GestureFrame to) {
+    	trackPointers(to, true);
+    }
+
+    /**
+     * Also starts tracking at the given frame, dropping the totals.
+     */
+    @Override
+    protected void setPreviousState(GestureFrame frame) {
+    	super.setPreviousState(frame);
+    	trackPointers(frame, false);
+    	resetTracked();
+    	mTotalFocusDeltaX = 0;
+    	mTotalFocusDeltaY = 0;
+    	mTotalRotation = 0;
+    	mTotalLogScale = 0;
+    }
+
+    @Override
+    protected void updatePreviousState() {
+    	super.updatePreviousState();
+    	resetTracked();
+    }
+
+    private void resetTracked() {
+    	mTrackedFocusDeltaX = 0f;
+    	mTrackedFocusDeltaY = 0f;
+    	mTrackedRotation = 0;
+    	mTrackedLogScale = 0;
+    	mMapA = 1;
+    	mMapB = 0;
+    	mMapTx = 0;
+    	mMapTy = 0;
+    }
+
+	/**
+	 * Step from the last tracked positions to the pointers of the frame and
+	 * remember these as the last positions.
+	 *
+	 * @param frame a frame with its sample attached
+	 * @param accumulate false to only remember the positions
+	 */
+    private void trackPointers(GestureFrame frame, boolean accumulate) {
+    	if (frame.getSample() == null) {
+    		return;
+    	}
+    	final int count = frame.getPointerCount();
+    	final int previousStamp = mStamp;
+    	final int stamp = ++mStamp;
+
+    	// sums over the pointers down in both samples, p previous, q current
+    	double spx = 0, spy = 0, sqx = 0, sqy = 0;
+    	double cross = 0, dot = 0, pp = 0;
+    	int n = 0;
+    	for (int i = 0; i < count; i++) {
+    		final int id = frame.getPointerId(i);
+    		if (id >= mLastStamp.length) {
+    			grow(id + 1);
+    		}
+    		final float x = frame.getX(i);
+    		final float y = frame.getY(i);
+    		if (accumulate && mLastStamp[id] == previousStamp) {
+    			final double px = mLastX[id];
+    			final double py = mLastY[id];
+    			final double qx = x;
+    			final double qy = y;
+    			spx += px;
+    			spy += py;
+    			sqx += qx;
+    			sqy += qy;
+    			cross += px * qy - py * qx;
+    			dot += px * qx + py * qy;
+    			pp += px * px + py * py;
+    			n++;
+    		}
+    		mLastX[id] = x;
+    		mLastY[id] = y;
+    		mLastStamp[id] = stamp;
+    	}
+    	mTrackedPointerCount = n;
+    	if (n == 0) {
+    		return;
+    	}
+
+    	final double focusDeltaX = (sqx - spx) / n;
+    	final double focusDeltaY = (sqy - spy) / n;
+    	mTrackedFocusDeltaX += (float) focusDeltaX;
+    	mTrackedFocusDeltaY += (float) focusDeltaY;
+    	mTotalFocusDeltaX += focusDeltaX;
+    	mTotalFocusDeltaY += focusDeltaY;
+
+    	// the same sums relative to the centroids of both samples
+    	final double centeredCross = cross - (spx * sqy - spy * sqx) / n;
+    	final double centeredDot = dot - (spx * sqx + spy * sqy) / n;
+    	final double centeredPP = pp - (spx * spx + spy * spy) / n;
+    	double a = 1;
+    	double b = 0;
+    	if (n >= 2 && centeredPP > 0 && (centeredCross != 0 || centeredDot != 0)) {
+    		// least squares: a + ib = sum(conj(p) q) / sum(|p|^2), centered
+    		a = centeredDot / centeredPP;
+    		b = centeredCross / centeredPP;
+    		final double rotation = Math.atan2(centeredCross, centeredDot);
+    		final double logScale = 0.5 * Math.log(a * a + b * b);
+    		mTrackedRotation += rotation;
+    		mTrackedLogScale += logScale;
+    		mTotalRotation += rotation;
+    		mTotalLogScale += logScale;
+    	}
+    	// the step maps the previous centroid onto the current one
+    	final double tx = (sqx - (a * spx - b * spy)) / n;
+    	final double ty = (sqy - (b * spx + a * spy)) / n;
+    	final double mapA = a * mMapA - b * mMapB;
+    	final double mapB = a * mMapB + b * mMapA;
+    	final double mapTx = a * mMapTx - b * mMapTy + tx;
+    	mMapTy = b * mMapTx + a * mMapTy + ty;
+    	mMapTx = mapTx;
+    	mMapA = mapA;
+    	mMapB = mapB;
+    }
+
+    private void grow(int size) {
+    	size = Math.max(size, 2 * mLastStamp.length);
+    	float[] x = new float[size];
+    	float[] y = new float[size];
+    	int[] stamp = new int[size];
+    	System.arraycopy(mLastX, 0, x, 0, mLastX.length);
+    	System.arraycopy(mLastY, 0, y, 0, mLastY.length);
+    	System.arraycopy(mLastStamp, 0, stamp, 0, mLastStamp.length);
+    	mLastX = x;
+    	mLastY = y;
+    	mLastStamp = stamp;
+    }
+
+	/**
+	 * Number of pointers the last step was measured on.
+	 */
+    public int getTrackedPointerCount() {
+    	return mTrackedPointerCount;
+    }
+
+	/**
+	 * Movement of the centroid of the tracked pointers since the previous
+	 * state, in pixels.
+	 */
+    public float getTrackedFocusDeltaX() {
+    	return mTrackedFocusDeltaX;
+    }
+
+    public float getTrackedFocusDeltaY() {
+    	return mTrackedFocusDeltaY;
+    }
+
+	/**
+	 * Rotation of the tracked pointers around their centroid since the
+	 * previous state, in radians, positive from the x towards the y axis.
+	 */
+    public double getTrackedRotation() {
+    	return mTrackedRotation;
+    }
+
+	/**
+	 * Factor by which the tracked pointers spread out since the previous
+	 * state.
+	 */
+    public float getTrackedScaleFactor() {
+    	return (float) Math.exp(mTrackedLogScale);
+    }
+
+	/**
+	 * Map a point by the transform of the tracked pointers since the previous
+	 * state. A point that moved with the pointers ends up at the result.
+	 */
+    public float mapX(float x, float y) {
+    	return (float) (mMapA * x - mMapB * y + mMapTx);
+    }
+
+    public float mapY(float x, float y) {
+    	return (float) (mMapB * x + mMapA * y + mMapTy);
+    }
+
+	/**
+	 * The transform since the previous state, p' = (a + ib) p + t, see
+	 * {@link #mapX(float, float)}.
+	 */
+    protected double getMapA() {
+    	return mMapA;
+    }
+
+    protected double getMapB() {
+    	return mMapB;
+    }
+
+    protected double getMapTx() {
+    	return mMapTx;
+    }
+
+    protected double getMapTy() {
+    	return mMapTy;
+    }
+
+	/**
+	 * Movement of the centroid since the gesture started.
+	 */
+    protected double getTotalFocusDeltaX() {
+    	return mTotalFocusDeltaX;
+    }
+
+    protected double getTotalFocusDeltaY() {
+    	return mTotalFocusDeltaY;
+    }
+
+	/**
+	 * Rotation since the gesture started, in radians.
+	 */
+    protected double getTotalRotation() {
+    	return mTotalRotation;
+    }
+
+	/**
+	 * Natural logarithm of the scale since the gesture started.
+	 */
+    protected double getTotalLogScale() {
+    	return mTotalLogScale;
+    }
+}
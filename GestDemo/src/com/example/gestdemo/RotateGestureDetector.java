@@ -1,8 +1,5 @@
 package com.example.gestdemo;
 
-import android.content.Context;
-import android.view.MotionEvent;
-
  
 public class RotateGestureDetector extends TwoFingerGestureDetector {
 
@@ -32,43 +29,58 @@ public class RotateGestureDetector extends TwoFingerGestureDetector {
     private final OnRotateGestureListener mListener;
     private boolean mSloppyGesture;
 
-    public RotateGestureDetector(Context context, OnRotateGestureListener listener) {
-    	super(context);
+    private final GestureVelocityTracker mVelocityTracker = new GestureVelocityTracker();
+    private TouchPredictor mPredictor;
+    private float mAppliedPrediction;
+    private float mPredictedRotationDelta;
+
+    public RotateGestureDetector(OnRotateGestureListener listener) {
         mListener = listener;
     }
 
     @Override
-    protected void handleStartProgressEvent(int actionCode, MotionEvent event){
+    protected void handleStartProgressEvent(int actionCode, GestureFrame frame){
         switch (actionCode) {
-            case MotionEvent.ACTION_POINTER_DOWN:
+            case TouchSample.ACTION_POINTER_DOWN:
             	
                 resetState();  
-                mPrevEvent = MotionEvent.obtain(event);
+                setPreviousState(frame);
                 mTimeDelta = 0;
+                mVelocityTracker.clear();
+                resetPrediction();
                 
-                updateStateByEvent(event);
+                updateStateByEvent(frame);
                 
                 
-                mSloppyGesture = isSloppyGesture(event);
+                mSloppyGesture = checkSloppyGesture(frame.getSample());
                 if(!mSloppyGesture){
                 	 
+                    startCallback();
                     mGestureInProgress = mListener.onRotateBegin(this);
+                    endCallback();
                 } 
             	break;
             
-            case MotionEvent.ACTION_MOVE:
-                if (!mSloppyGesture) {
+            case TouchSample.ACTION_DOWN:
+            	// a sloppy pair of the previous touch is gone
+            	mSloppyGesture = false;
+            	break;
+
+            case TouchSample.ACTION_MOVE:
+                if (!mSloppyGesture || frame.getPointerCount() < 2) {
                 	break;
                 }
                 
-                mSloppyGesture = isSloppyGesture(event);
+                mSloppyGesture = checkSloppyGesture(frame.getSample());
                 if(!mSloppyGesture){
+                    startCallback();
                     mGestureInProgress = mListener.onRotateBegin(this);
+                    endCallback();
                 }
     
                 break;
                 
-            case MotionEvent.ACTION_POINTER_UP:
+            case TouchSample.ACTION_POINTER_UP:
                 if (!mSloppyGesture) {
                 	break;
                 }
@@ -79,40 +91,111 @@ public class RotateGestureDetector extends TwoFingerGestureDetector {
 
     
     @Override
-    protected void handleInProgressEvent(int actionCode, MotionEvent event){ 	
+    protected void handleInProgressEvent(int actionCode, GestureFrame frame){ 	
         switch (actionCode) {
-            case MotionEvent.ACTION_POINTER_UP:
-                updateStateByEvent(event);
+            case TouchSample.ACTION_POINTER_UP:
+                updateStateByEvent(frame);
+                if (frame.getPointerCount() > 2) {
+                	// enough pointers left to go on rotating
+                	break;
+                }
+                if (takeDecimatedUpdate()) {
+                    reportRotation();
+                }
+                settlePrediction();
 
                 if (!mSloppyGesture) {
+                    startCallback();
                     mListener.onRotateEnd(this);
+                    endCallback();
                 }
 
                 resetState();
                 break;
 
-            case MotionEvent.ACTION_CANCEL:
+            case TouchSample.ACTION_CANCEL:
+                if (takeDecimatedUpdate()) {
+                    reportRotation();
+                }
+                settlePrediction();
                 if (!mSloppyGesture) {
+                    startCallback();
                     mListener.onRotateEnd(this);
+                    endCallback();
                 }
 
                 resetState();
                 break;
 
-            case MotionEvent.ACTION_MOVE:
-                updateStateByEvent(event);
+            case TouchSample.ACTION_MOVE:
+                updateStateByEvent(frame);
  
-                if (mCurrPressure / mPrevPressure > PRESSURE_THRESHOLD) {
-                    final boolean updatePrevious = mListener.onRotate(this);
-                    if (updatePrevious) {
-                        mPrevEvent.recycle();
-                        mPrevEvent = MotionEvent.obtain(event);
-                    }
+                if (isPressureSteady() && isUpdateDue()) {
+                    reportRotation();
                 }
                 break;
         }
     }
 
+    private void reportRotation() {
+        startCallback();
+        final boolean updatePrevious = mListener.onRotate(this);
+        endCallback();
+        if (updatePrevious) {
+            addGestureDelta(getRotationDegreesDelta(), 0f);
+            updatePreviousState();
+        }
+    }
+
+    @Override
+    protected void updateStateByEvent(GestureFrame curr) {
+    	super.updateStateByEvent(curr);
+
+    	addTrackedSample(curr);
+    	mPredictedRotationDelta = getRotationDegreesDelta();
+    	if (mPredictor != null) {
+    		mPredictedRotationDelta += mPredictor.getOffsetX() - mAppliedPrediction;
+    	}
+    }
+
+    @Override
+    protected void updatePreviousState() {
+    	super.updatePreviousState();
+    	if (mPredictor != null) {
+    		mAppliedPrediction = mPredictor.getOffsetX();
+    	}
+    }
+
+    /**
+     * Feed the rotation since the start of the gesture, in degrees, to the
+     * velocity tracker and the predictor.
+     */
+    private void addTrackedSample(GestureFrame frame) {
+    	final float degrees = (float) (-getTotalRotation() * 180 / Math.PI);
+    	mVelocityTracker.addSample(frame.getEventTime(), degrees, 0f);
+    	if (mPredictor != null) {
+    		mPredictor.addSample(frame.getEventTime(), degrees, 0f);
+    	}
+    }
+
+    private void resetPrediction() {
+    	if (mPredictor != null) {
+    		mPredictor.reset();
+    	}
+    	mAppliedPrediction = 0f;
+    }
+
+    /**
+     * Take back the prediction applied so far when the gesture ends.
+     */
+    private void settlePrediction() {
+    	mPredictedRotationDelta = -mAppliedPrediction;
+    	mAppliedPrediction = 0f;
+    	if (mPredictor != null) {
+    		mPredictor.reset();
+    	}
+    }
+
     @Override
     protected void resetState() {
         super.resetState();
@@ -121,9 +204,59 @@ public class RotateGestureDetector extends TwoFingerGestureDetector {
 
 
     
+    @Override
+    protected void accumulateHistoryStep(GestureFrame from, GestureFrame to) {
+    	super.accumulateHistoryStep(from, to);
+    	addTrackedSample(to);
+    }
+
+	/**
+	 * Return the rotation in degrees since the previous rotate event, of all
+	 * pointers around their centroid. Positive values turn from the y
+	 * towards the x axis.
+	 * 
+	 * @return
+	 */
 	public float getRotationDegreesDelta() {
-		double diffRadians = Math.atan2(mPrevFingerDiffY, mPrevFingerDiffX) - Math.atan2(mCurrFingerDiffY, mCurrFingerDiffX);
-	
-		return (float) (diffRadians * 180 / Math.PI);
+		return (float) (-getTrackedRotation() * 180 / Math.PI);
+	}
+
+	/**
+	 * Angular velocity in degrees per second, fitted over the recent
+	 * samples, with the sign of {@link #getRotationDegreesDelta()}. Still
+	 * valid in onRotateEnd, for flinging.
+	 * 
+	 * @return
+	 */
+	public float getAngularVelocity() {
+		return mVelocityTracker.getVelocityX();
+	}
+
+    /**
+     * Set the predictor that extrapolates the rotation to the time the
+     * result is displayed, or null (default) for no prediction. The
+     * predictor works in degrees.
+     * 
+     * @param predictor
+     */
+    public void setPredictor(TouchPredictor predictor) {
+    	mPredictor = predictor;
+    	mAppliedPrediction = 0f;
+    }
+
+    public TouchPredictor getPredictor() {
+    	return mPredictor;
+    }
+
+	/**
+	 * Same as {@link #getRotationDegreesDelta()}, but rotating to the
+	 * predicted angle instead of the measured one. In onRotateEnd it takes
+	 * back the prediction that is still applied. Without a predictor this is
+	 * the rotation delta.
+	 * 
+	 * @return
+	 */
+	public float getPredictedRotationDegreesDelta() {
+		return mPredictedRotationDelta;
 	}
 }
@@ -0,0 +1,414 @@
+package com.example.gestdemo;
+
+import java.util.ArrayList;
+
+/**
+ * Many transformable {@link SceneItem}s and the index that finds the one
+ * under a finger without looking at all of them.
+ *
+ * The index is a uniform grid of square cells, hashed into buckets so the
+ * scene needs no bounds; the buckets double when they hold more than two
+ * entries each on average. Every item is entered in the
+ * buckets of the cells its bounding box covers; a hit test only looks at
+ * the items of one bucket. Items that cover more than MAX_ITEM_CELLS cells
+ * are kept in a list that every hit test walks, so one item zoomed far in
+ * does not fill the grid. {@link #update(SceneItem)} moves an item in the
+ * index only when the cells it covers changed, which for the small moves
+ * of a gesture is seldom.
+ *
+ * A gesture grabs the top-most item under its first pointer, see
+ * {@link #onTouchEvent(TouchSample)}, and {@link #apply(TransformUpdate, long)}
+ * applies the detector results to that item only. Flung items keep
+ * moving in {@link #step(long)}.
+ *
+ * Not thread safe; use it from the UI thread.
+ */
+public class Scene {
+
+	public static final float DEFAULT_CELL_SIZE = 128f;
+	private static final int MAX_ITEM_CELLS = 16;
+	private static final int INITIAL_BUCKETS = 1024;
+	private static final int MAX_CELL = 1 << 30;
+
+	private final float mCellSize;
+	private int mBucketMask;
+	private SceneItem[][] mBuckets;
+	private int[] mBucketCounts;
+	/** Items entered in the buckets, counted once per bucket. */
+	private int mEntryCount;
+
+	private final ArrayList<SceneItem> mItems = new ArrayList<SceneItem>();
+	private final ArrayList<SceneItem> mLargeItems = new ArrayList<SceneItem>();
+	private final ArrayList<SceneItem> mAnimatingItems = new ArrayList<SceneItem>();
+	private final float[] mExtents = new float[2];
+	/** Cells computed for an item, left, top, right and bottom. */
+	private final int[] mCells = new int[4];
+	private int mTopZ;
+
+	private SceneItem mGrabbed;
+	private float mMinFlingScale = ImageTransform.MIN_SCALE;
+	private float mMaxFlingScale = ImageTransform.MAX_SCALE;
+
+	private long mHitTestCount;
+	private long mHitTestCandidates;
+	private long mIndexMoveCount;
+
+	public Scene() {
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	/**
+	 * @param cellSize side of the grid cells in pixels, about the size of
+	 *            a typical item
+	 */
+	public Scene(float cellSize) {
+		mCellSize = cellSize;
+		mBucketMask = INITIAL_BUCKETS - 1;
+		mBuckets = new SceneItem[INITIAL_BUCKETS][];
+		mBucketCounts = new int[INITIAL_BUCKETS];
+	}
+
+	/**
+	 * Add an item on top of the others and enter it in the index.
+	 *
+	 * @param item an item that is not part of a scene
+	 */
+	public void addItem(SceneItem item) {
+		if (item.isAttached()) {
+			throw new IllegalArgumentException("item is in a scene already");
+		}
+		item.mIndex = mItems.size();
+		item.mZ = ++mTopZ;
+		mItems.add(item);
+		insert(item);
+	}
+
+	public void removeItem(SceneItem item) {
+		if (item.mIndex < 0 || item.mIndex >= mItems.size() || mItems.get(item.mIndex) != item) {
+			return;
+		}
+		remove(item);
+		// the last item takes the place of the removed one
+		final SceneItem last = mItems.remove(mItems.size() - 1);
+		if (last != item) {
+			mItems.set(item.mIndex, last);
+			last.mIndex = item.mIndex;
+		}
+		item.mIndex = -1;
+		if (item.mAnimating) {
+			item.mInertia.cancel();
+			item.mAnimating = false;
+			mAnimatingItems.remove(item);
+		}
+		if (mGrabbed == item) {
+			mGrabbed = null;
+		}
+	}
+
+	public int getItemCount() {
+		return mItems.size();
+	}
+
+	/**
+	 * The items in no particular order; see {@link #getZ(SceneItem)} for
+	 * the stacking order.
+	 */
+	public SceneItem getItem(int index) {
+		return mItems.get(index);
+	}
+
+	/**
+	 * The stacking order of an item, the highest is drawn last.
+	 */
+	public int getZ(SceneItem item) {
+		return item.mZ;
+	}
+
+	public void bringToFront(SceneItem item) {
+		if (item.mZ != mTopZ) {
+			item.mZ = ++mTopZ;
+		}
+	}
+
+	/**
+	 * Refresh the index after the transform of an item changed.
+	 */
+	public void update(SceneItem item) {
+		final boolean large = computeCells(item);
+		final int[] cells = mCells;
+		if (cells[0] == item.mCellLeft && cells[1] == item.mCellTop && cells[2] == item.mCellRight
+				&& cells[3] == item.mCellBottom && large == item.mLarge) {
+			return;
+		}
+		remove(item);
+		setCells(item, large);
+		enter(item);
+		mIndexMoveCount++;
+	}
+
+	/**
+	 * The top-most item under the point, or null.
+	 */
+	public SceneItem hitTest(float x, float y) {
+		mHitTestCount++;
+		final int cellX = cell(x);
+		final int cellY = cell(y);
+		final int bucket = bucket(cellX, cellY);
+		SceneItem hit = null;
+		final SceneItem[] items = mBuckets[bucket];
+		final int count = mBucketCounts[bucket];
+		mHitTestCandidates += count + mLargeItems.size();
+		for (int i = 0; i < count; i++) {
+			final SceneItem item = items[i];
+			// other cells hash to the same bucket
+			if ((hit == null || item.mZ > hit.mZ) && item.coversCell(cellX, cellY) && item.contains(x, y)) {
+				hit = item;
+			}
+		}
+		final ArrayList<SceneItem> large = mLargeItems;
+		for (int i = 0, n = large.size(); i < n; i++) {
+			final SceneItem item = large.get(i);
+			if ((hit == null || item.mZ > hit.mZ) && item.contains(x, y)) {
+				hit = item;
+			}
+		}
+		return hit;
+	}
+
+	/**
+	 * On ACTION_DOWN grab the top-most item under the pointer and bring it
+	 * to the front; the gesture that follows moves that item. The grab lasts
+	 * until the next ACTION_DOWN, so the fling of the gesture still reaches
+	 * the item. Call before the detectors see the event.
+	 *
+	 * @return the grabbed item, or null if the pointer hit nothing
+	 */
+	public SceneItem onTouchEvent(TouchSample sample) {
+		if (sample.getActionMasked() == TouchSample.ACTION_DOWN) {
+			mGrabbed = hitTest(sample.getX(0), sample.getY(0));
+			if (mGrabbed != null) {
+				bringToFront(mGrabbed);
+			}
+		}
+		return mGrabbed;
+	}
+
+	public SceneItem getGrabbedItem() {
+		return mGrabbed;
+	}
+
+	/**
+	 * Apply detector results to the grabbed item and update the index. The
+	 * update is dropped if no item is grabbed.
+	 *
+	 * @param update
+	 * @param timeNanos time for the flings, see
+	 *            {@link TransformUpdate#applyTo(ImageTransform, InertiaAnimator, long)}
+	 */
+	public void apply(TransformUpdate update, long timeNanos) {
+		final SceneItem item = mGrabbed;
+		if (item == null || update.isEmpty()) {
+			return;
+		}
+		if (item.mInertia == null) {
+			item.mInertia = new InertiaAnimator(item.getTransform());
+			item.mInertia.setScaleBounds(mMinFlingScale, mMaxFlingScale);
+		}
+		update.applyTo(item.getTransform(), item.mInertia, timeNanos);
+		update(item);
+		if (item.mInertia.isRunning() && !item.mAnimating) {
+			item.mAnimating = true;
+			mAnimatingItems.add(item);
+		}
+	}
+
+	/**
+	 * Scale range flung items spring back into.
+	 */
+	public void setFlingScaleBounds(float minScale, float maxScale) {
+		mMinFlingScale = minScale;
+		mMaxFlingScale = maxScale;
+	}
+
+	/**
+	 * Advance the flung items and update the index.
+	 *
+	 * @param frameTimeNanos
+	 * @return true while any item is still moving
+	 */
+	public boolean step(long frameTimeNanos) {
+		final ArrayList<SceneItem> animating = mAnimatingItems;
+		for (int i = animating.size() - 1; i >= 0; i--) {
+			final SceneItem item = animating.get(i);
+			final boolean running = item.mInertia.step(frameTimeNanos);
+			update(item);
+			if (!running) {
+				item.mAnimating = false;
+				// order does not matter, the last one takes the place
+				final SceneItem last = animating.remove(animating.size() - 1);
+				if (last != item) {
+					animating.set(i, last);
+				}
+			}
+		}
+		return !animating.isEmpty();
+	}
+
+	public boolean isAnimating() {
+		return !mAnimatingItems.isEmpty();
+	}
+
+	/**
+	 * Number of hit tests so far.
+	 */
+	public long getHitTestCount() {
+		return mHitTestCount;
+	}
+
+	/**
+	 * Number of items the hit tests so far looked at, the bucket and the
+	 * large items.
+	 */
+	public long getHitTestCandidates() {
+		return mHitTestCandidates;
+	}
+
+	/**
+	 * Number of updates that moved an item to other cells.
+	 */
+	public long getIndexMoveCount() {
+		return mIndexMoveCount;
+	}
+
+	/**
+	 * The cell of a coordinate, kept well inside the int range so loops over
+	 * cells cannot overflow however far an item was flung.
+	 */
+	private int cell(float coordinate) {
+		return (int) Math.max(-MAX_CELL, Math.min(Math.floor(coordinate / mCellSize), MAX_CELL));
+	}
+
+	private int bucket(int cellX, int cellY) {
+		return (cellX * 73856093 ^ cellY * 19349663) & mBucketMask;
+	}
+
+	/**
+	 * Refresh the geometry of the item and compute the cells it covers into
+	 * mCells.
+	 *
+	 * @return whether the item covers too many cells for the grid
+	 */
+	private boolean computeCells(SceneItem item) {
+		final float[] extents = mExtents;
+		item.updateGeometry(extents);
+		final ImageTransform transform = item.getTransform();
+		final float x = transform.getFocusX();
+		final float y = transform.getFocusY();
+		final int[] cells = mCells;
+		cells[0] = cell(x - extents[0]);
+		cells[1] = cell(y - extents[1]);
+		cells[2] = cell(x + extents[0]);
+		cells[3] = cell(y + extents[1]);
+		return ((long) cells[2] - cells[0] + 1) * ((long) cells[3] - cells[1] + 1) > MAX_ITEM_CELLS;
+	}
+
+	private void setCells(SceneItem item, boolean large) {
+		final int[] cells = mCells;
+		item.mCellLeft = cells[0];
+		item.mCellTop = cells[1];
+		item.mCellRight = cells[2];
+		item.mCellBottom = cells[3];
+		item.mLarge = large;
+	}
+
+	private void insert(SceneItem item) {
+		setCells(item, computeCells(item));
+		enter(item);
+	}
+
+	/**
+	 * Enter the item in the buckets of its cells, or the large items.
+	 */
+	private void enter(SceneItem item) {
+		if (item.mLarge) {
+			mLargeItems.add(item);
+			return;
+		}
+		for (int cellY = item.mCellTop; cellY <= item.mCellBottom; cellY++) {
+			for (int cellX = item.mCellLeft; cellX <= item.mCellRight; cellX++) {
+				final int bucket = bucket(cellX, cellY);
+				SceneItem[] items = mBuckets[bucket];
+				final int count = mBucketCounts[bucket];
+				if (items == null) {
+					items = mBuckets[bucket] = new SceneItem[4];
+				} else if (contains(items, count, item)) {
+					// two cells of the item share the bucket
+					continue;
+				} else if (count == items.length) {
+					SceneItem[] grown = new SceneItem[2 * count];
+					System.arraycopy(items, 0, grown, 0, count);
+					items = mBuckets[bucket] = grown;
+				}
+				items[count] = item;
+				mBucketCounts[bucket] = count + 1;
+				mEntryCount++;
+			}
+		}
+		if (mEntryCount > 2 * mBuckets.length) {
+			growBuckets();
+		}
+	}
+
+	/**
+	 * Double the buckets and enter the items again.
+	 */
+	private void growBuckets() {
+		final int buckets = 2 * mBuckets.length;
+		mBuckets = new SceneItem[buckets][];
+		mBucketCounts = new int[buckets];
+		mBucketMask = buckets - 1;
+		mEntryCount = 0;
+		final ArrayList<SceneItem> items = mItems;
+		for (int i = 0, n = items.size(); i < n; i++) {
+			final SceneItem item = items.get(i);
+			if (!item.mLarge) {
+				enter(item);
+			}
+		}
+	}
+
+	/**
+	 * Remove the item from the buckets of its cells, or the large items.
+	 */
+	private void remove(SceneItem item) {
+		if (item.mLarge) {
+			mLargeItems.remove(item);
+			return;
+		}
+		for (int cellY = item.mCellTop; cellY <= item.mCellBottom; cellY++) {
+			for (int cellX = item.mCellLeft; cellX <= item.mCellRight; cellX++) {
+				final int bucket = bucket(cellX, cellY);
+				final SceneItem[] items = mBuckets[bucket];
+				final int count = mBucketCounts[bucket];
+				for (int i = 0; i < count; i++) {
+					if (items[i] == item) {
+						items[i] = items[count - 1];
+						items[count - 1] = null;
+						mBucketCounts[bucket] = count - 1;
+						mEntryCount--;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	private static boolean contains(SceneItem[] items, int count, SceneItem item) {
+		for (int i = 0; i < count; i++) {
+			if (items[i] == item) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,100 @@
+package com.example.gestdemo;
+
+/**
+ * A rectangle on a {@link Scene}, centred on the focus of its
+ * {@link ImageTransform}, rotated and scaled by it.
+ *
+ * The item caches what hit testing needs: the inverse of the transform and
+ * the grid cells its bounding box covers. Both are refreshed by
+ * {@link Scene#update(SceneItem)}, which has to be called after the
+ * transform changed.
+ */
+public class SceneItem {
+
+	private final ImageTransform mTransform = new ImageTransform();
+	private final float mWidth;
+	private final float mHeight;
+	/** Created when the item is first flung. */
+	InertiaAnimator mInertia;
+
+	/** Stacking order, the highest is on top. */
+	int mZ;
+	/** Position in the item list of the scene, -1 once removed. */
+	int mIndex = -1;
+	boolean mAnimating;
+
+	/** Inverse rotation and scale, cos and sin of the rotation over the scale. */
+	private float mInverseCos = 1f;
+	private float mInverseSin;
+	private float mFocusX;
+	private float mFocusY;
+
+	/** Grid cells of the bounding box, inclusive; see Scene. */
+	int mCellLeft;
+	int mCellTop;
+	int mCellRight;
+	int mCellBottom;
+	/** Covers too many cells for the grid, kept in a list of its own. */
+	boolean mLarge;
+
+	public SceneItem(float width, float height) {
+		mWidth = width;
+		mHeight = height;
+	}
+
+	public ImageTransform getTransform() {
+		return mTransform;
+	}
+
+	public float getWidth() {
+		return mWidth;
+	}
+
+	public float getHeight() {
+		return mHeight;
+	}
+
+	/**
+	 * Whether the item is part of a scene.
+	 */
+	public boolean isAttached() {
+		return mIndex >= 0;
+	}
+
+	/**
+	 * Whether the point lies on the item, as of the last
+	 * {@link Scene#update(SceneItem)}.
+	 */
+	public boolean contains(float x, float y) {
+		final float dx = x - mFocusX;
+		final float dy = y - mFocusY;
+		final float localX = mInverseCos * dx + mInverseSin * dy;
+		final float localY = mInverseCos * dy - mInverseSin * dx;
+		return Math.abs(localX) <= mWidth / 2 && Math.abs(localY) <= mHeight / 2;
+	}
+
+	/**
+	 * Whether the cached bounding box covers the grid cell.
+	 */
+	boolean coversCell(int cellX, int cellY) {
+		return cellX >= mCellLeft && cellX <= mCellRight && cellY >= mCellTop && cellY <= mCellBottom;
+	}
+
+	/**
+	 * Refresh the inverse transform from the transform and return the half
+	 * extents of the bounding box in x and y, in that order, in out.
+	 */
+	void updateGeometry(float[] out) {
+		final ImageTransform transform = mTransform;
+		final double radians = Math.toRadians(transform.getRotationDegrees());
+		final float cos = (float) Math.cos(radians);
+		final float sin = (float) Math.sin(radians);
+		final float scale = transform.getScale();
+		mInverseCos = cos / scale;
+		mInverseSin = sin / scale;
+		mFocusX = transform.getFocusX();
+		mFocusY = transform.getFocusY();
+		out[0] = scale * (Math.abs(cos) * mWidth + Math.abs(sin) * mHeight) / 2;
+		out[1] = scale * (Math.abs(sin) * mWidth + Math.abs(cos) * mHeight) / 2;
+	}
+}
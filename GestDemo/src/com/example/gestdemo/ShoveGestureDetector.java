@@ -1,7 +1,5 @@
 package com.example.gestdemo;
 
-import android.content.Context;
-import android.view.MotionEvent;
  
 public class ShoveGestureDetector extends TwoFingerGestureDetector {
 
@@ -33,48 +31,62 @@ public class ShoveGestureDetector extends TwoFingerGestureDetector {
 
 	private float mPrevAverageY;
 	private float mCurrAverageY;
+	private float mHistoryAverageYDelta;
 	
     private final OnShoveGestureListener mListener;
     private boolean mSloppyGesture;
+    private final GestureVelocityTracker mVelocityTracker = new GestureVelocityTracker();
+    private boolean mFastAngle;
 
-    public ShoveGestureDetector(Context context, OnShoveGestureListener listener) {
-    	super(context);
+    public ShoveGestureDetector(OnShoveGestureListener listener) {
         mListener = listener;
     }
 
     @Override
-    protected void handleStartProgressEvent(int actionCode, MotionEvent event){
+    protected void handleStartProgressEvent(int actionCode, GestureFrame frame){
         switch (actionCode) {
-            case MotionEvent.ACTION_POINTER_DOWN:
+            case TouchSample.ACTION_POINTER_DOWN:
             	
                 resetState();  
-                mPrevEvent = MotionEvent.obtain(event);
+                setPreviousState(frame);
                 mTimeDelta = 0;
+                mVelocityTracker.clear();
                 
-                updateStateByEvent(event);
+                updateStateByEvent(frame);
                 
                 
-                mSloppyGesture = isSloppyGesture(event);
+                mSloppyGesture = checkSloppyGesture(frame.getSample());
                 if(!mSloppyGesture){
                 	 
+                    startCallback();
                     mGestureInProgress = mListener.onShoveBegin(this);
+                    endCallback();
                 } 
             	break;
             
-            case MotionEvent.ACTION_MOVE:
-                if (!mSloppyGesture) {
+            case TouchSample.ACTION_DOWN:
+            	// a sloppy pair of the previous touch is gone
+            	mSloppyGesture = false;
+            	break;
+
+            case TouchSample.ACTION_MOVE:
+                if (!mSloppyGesture || frame.getPointerCount() < 2) {
                 	break;
                 }
-                
-                mSloppyGesture = isSloppyGesture(event);
+
+                // the angle check reads the finger distance of this frame
+                updateStateByEvent(frame);
+                mSloppyGesture = checkSloppyGesture(frame.getSample());
                 if(!mSloppyGesture){
                 	 
+                    startCallback();
                     mGestureInProgress = mListener.onShoveBegin(this);
+                    endCallback();
                 }
     
                 break;
                 
-            case MotionEvent.ACTION_POINTER_UP:
+            case TouchSample.ACTION_POINTER_UP:
                 if (!mSloppyGesture) {
                 	break;
                 }
@@ -85,42 +97,58 @@ public class ShoveGestureDetector extends TwoFingerGestureDetector {
 
     
     @Override
-    protected void handleInProgressEvent(int actionCode, MotionEvent event){ 	
+    protected void handleInProgressEvent(int actionCode, GestureFrame frame){ 	
         switch (actionCode) {
-            case MotionEvent.ACTION_POINTER_UP:
+            case TouchSample.ACTION_POINTER_UP:
                
-                updateStateByEvent(event);
+                updateStateByEvent(frame);
+                if (takeDecimatedUpdate()) {
+                    reportShove();
+                }
 
                 if (!mSloppyGesture) {
+                    startCallback();
                     mListener.onShoveEnd(this);
+                    endCallback();
                 }
 
                 resetState();
                 break;
 
-            case MotionEvent.ACTION_CANCEL:
+            case TouchSample.ACTION_CANCEL:
+                if (takeDecimatedUpdate()) {
+                    reportShove();
+                }
                 if (!mSloppyGesture) {
+                    startCallback();
                     mListener.onShoveEnd(this);
+                    endCallback();
                 }
 
                 resetState();
                 break;
 
-            case MotionEvent.ACTION_MOVE:
-                updateStateByEvent(event);
+            case TouchSample.ACTION_MOVE:
+                updateStateByEvent(frame);
 
-                if (mCurrPressure / mPrevPressure > PRESSURE_THRESHOLD
-                		&& Math.abs(getShovePixelsDelta()) > 0.5f) {
-                    final boolean updatePrevious = mListener.onShove(this);
-                    if (updatePrevious) {
-                        mPrevEvent.recycle();
-                        mPrevEvent = MotionEvent.obtain(event);
-                    }
+                if (isPressureSteady()
+                		&& Math.abs(getShovePixelsDelta()) > 0.5f && isUpdateDue()) {
+                    reportShove();
                 }
                 break;
         }
     }
 
+    private void reportShove() {
+        startCallback();
+        final boolean updatePrevious = mListener.onShove(this);
+        endCallback();
+        if (updatePrevious) {
+            addGestureDelta(getShovePixelsDelta(), 0f);
+            updatePreviousState();
+        }
+    }
+
     @Override
     protected void resetState() {
         super.resetState();
@@ -130,32 +158,62 @@ public class ShoveGestureDetector extends TwoFingerGestureDetector {
     }
     
     @Override
-    protected void updateStateByEvent(MotionEvent curr){
+    protected void updateStateByEvent(GestureFrame curr){
+		if (!mPrevFrame.isSamePair(curr)) {
+			// a new pair, its average y is not a continuation of the old one
+			mVelocityTracker.clear();
+		}
 		super.updateStateByEvent(curr);
 		
-		final MotionEvent prev = mPrevEvent;
-		float py0 = prev.getY(0);
-		float py1 = prev.getY(1);
-		mPrevAverageY = (py0 + py1) / 2.0f;
-		
-		float cy0 = curr.getY(0);
-		float cy1 = curr.getY(1);
-		mCurrAverageY = (cy0 + cy1) / 2.0f;
+		mPrevAverageY = mPrevFrame.getPairFocusY();
+		mCurrAverageY = curr.getPairFocusY();
+		mVelocityTracker.addSample(curr.getEventTime(), mCurrAverageY, 0f);
 	}
+
+    @Override
+    protected void accumulateHistoryStep(GestureFrame from, GestureFrame to) {
+    	super.accumulateHistoryStep(from, to);
+    	if (from.isSamePair(to)) {
+    		mHistoryAverageYDelta += to.getPairFocusY() - from.getPairFocusY();
+    	} else {
+    		mVelocityTracker.clear();
+    	}
+    	mVelocityTracker.addSample(to.getEventTime(), to.getPairFocusY(), 0f);
+    }
+
+    @Override
+    protected void resetHistoryAccumulation() {
+    	mHistoryAverageYDelta = 0f;
+    }
     
     @Override
-    protected boolean isSloppyGesture(MotionEvent event){
+    protected boolean isSloppyGesture(TouchSample event){
     	boolean sloppy = super.isSloppyGesture(event);
     	if (sloppy)
     		return true;
     	
-    	double angle = Math.abs(Math.atan2(mCurrFingerDiffY, mCurrFingerDiffX));
+    	final float dy = mCurrFingerDiffY;
+    	final float dx = mCurrFingerDiffX;
+    	double angle = Math.abs(mFastAngle ? FastAngle.atan2(dy, dx) : Math.atan2(dy, dx));
     	//about 20 degrees, left or right
     	return !(( 0.0f < angle && angle < 0.35f)
     			|| 2.79f < angle && angle < Math.PI); 
     }
 
 
+    /**
+     * Classify the angle between the fingers with {@link FastAngle#atan2}
+     * instead of Math.atan2. The check runs on every move while the gesture
+     * is sloppy; the approximation is off by about 1e-5 radians, so only
+     * angles that close to the 20 degree bounds can come out differently.
+     * Off by default.
+     * 
+     * @param fastAngle
+     */
+    public void setFastAngle(boolean fastAngle) {
+    	mFastAngle = fastAngle;
+    }
+
     /**
      * Return the distance in pixels from the previous shove event to the current
      * event. 
@@ -163,6 +221,19 @@ public class ShoveGestureDetector extends TwoFingerGestureDetector {
      * @return The current distance in pixels.
      */
 	public float getShovePixelsDelta() {
+		if (isCoalescingHistory()) {
+			return mHistoryAverageYDelta;
+		}
 		return mCurrAverageY - mPrevAverageY;
 	}
+
+    /**
+     * Return the velocity of the shove in pixels per second, fitted over the
+     * recent samples. Still valid in onShoveEnd, for flinging.
+     * 
+     * @return
+     */
+	public float getShoveVelocity() {
+		return mVelocityTracker.getVelocityX();
+	}
 }
@@ -0,0 +1,198 @@
+package com.example.gestdemo;
+
+/**
+ * Recognizes symbols drawn with one finger, such as a check mark, an X or a
+ * circle. The stroke is collected from every sample, historical ones
+ * included, and when the finger goes up it is normalized into a fixed
+ * array and matched against a {@link StrokeTemplateLibrary}. A second
+ * finger going down cancels the stroke, so pinches are no symbols.
+ *
+ * Nothing is allocated per stroke once the point buffers have grown to the
+ * longest stroke.
+ */
+public class StrokeGestureDetector extends BaseGestureDetector {
+
+	public interface OnStrokeGestureListener {
+		/** A point was added to the stroke, for drawing the ink. */
+		public boolean onStroke(StrokeGestureDetector detector);
+		public boolean onStrokeBegin(StrokeGestureDetector detector);
+		/** The stroke ended; see {@link StrokeGestureDetector#getMatchName()}. */
+		public void onStrokeEnd(StrokeGestureDetector detector);
+	}
+
+	public static class SimpleOnStrokeGestureListener implements OnStrokeGestureListener {
+	    public boolean onStroke(StrokeGestureDetector detector) {
+	        return false;
+	    }
+
+	    public boolean onStrokeBegin(StrokeGestureDetector detector) {
+	        return true;
+	    }
+
+	    public void onStrokeEnd(StrokeGestureDetector detector) {
+	    	// Do nothing
+	    }
+	}
+
+	private static final float DEFAULT_MIN_SCORE = 0.8f;
+	private static final float DEFAULT_MIN_LENGTH = 60f;
+
+    private final OnStrokeGestureListener mListener;
+    private final StrokeTemplateLibrary mLibrary;
+    private final StrokeTemplateLibrary.Match mMatch = new StrokeTemplateLibrary.Match();
+    private final float[] mNormalized = new float[2 * StrokeTemplateLibrary.POINTS];
+
+    private float[] mX = new float[128];
+    private float[] mY = new float[128];
+    private int mCount;
+    private float mLength;
+    private float mMinScore = DEFAULT_MIN_SCORE;
+    private float mMinLength = DEFAULT_MIN_LENGTH;
+
+    public StrokeGestureDetector(OnStrokeGestureListener listener, StrokeTemplateLibrary library) {
+        mListener = listener;
+        mLibrary = library;
+        // the shape of a stroke is in the samples between the events
+        setHistoryMode(HISTORY_PER_SAMPLE);
+    }
+
+    @Override
+    protected void handleStartProgressEvent(int actionCode, GestureFrame frame){
+        if (actionCode == TouchSample.ACTION_DOWN) {
+        	resetState();
+        	setPreviousState(frame);
+        	updateStateByEvent(frame);
+        	addPoint(frame);
+        	startCallback();
+        	mGestureInProgress = mListener.onStrokeBegin(this);
+        	endCallback();
+        }
+    }
+
+    @Override
+    protected void handleInProgressEvent(int actionCode, GestureFrame frame){
+        switch (actionCode) {
+            case TouchSample.ACTION_UP:
+            	updateStateByEvent(frame);
+            	addPoint(frame);
+            	recognize();
+            	startCallback();
+            	mListener.onStrokeEnd(this);
+            	endCallback();
+            	resetState();
+            	break;
+
+            case TouchSample.ACTION_POINTER_DOWN:
+            case TouchSample.ACTION_CANCEL:
+            	mMatch.clear();
+            	startCallback();
+            	mListener.onStrokeEnd(this);
+            	endCallback();
+            	resetState();
+            	break;
+
+            case TouchSample.ACTION_MOVE:
+            	updateStateByEvent(frame);
+            	addPoint(frame);
+            	startCallback();
+            	final boolean updatePrevious = mListener.onStroke(this);
+            	endCallback();
+            	if (updatePrevious) {
+            		updatePreviousState();
+            	}
+            	break;
+        }
+    }
+
+    @Override
+    protected void resetState() {
+    	super.resetState();
+    	mCount = 0;
+    	mLength = 0f;
+    }
+
+    private void addPoint(GestureFrame frame) {
+    	final float x = frame.getX(0);
+    	final float y = frame.getY(0);
+    	final int count = mCount;
+    	if (count > 0) {
+    		final float dx = x - mX[count - 1];
+    		final float dy = y - mY[count - 1];
+    		if (dx == 0f && dy == 0f) {
+    			return;
+    		}
+    		mLength += (float) Math.sqrt(dx * dx + dy * dy);
+    	}
+    	if (count == mX.length) {
+    		float[] xs = new float[2 * count];
+    		float[] ys = new float[2 * count];
+    		System.arraycopy(mX, 0, xs, 0, count);
+    		System.arraycopy(mY, 0, ys, 0, count);
+    		mX = xs;
+    		mY = ys;
+    	}
+    	mX[count] = x;
+    	mY[count] = y;
+    	mCount = count + 1;
+    }
+
+    private void recognize() {
+    	if (mLength < mMinLength
+    			|| !StrokeTemplateLibrary.normalize(mX, mY, mCount, mNormalized)) {
+    		mMatch.clear();
+    		return;
+    	}
+    	mLibrary.match(mNormalized, mMinScore, mMatch);
+    }
+
+    /**
+     * Set the score a stroke needs to match a template, see
+     * {@link StrokeTemplateLibrary.Match#getScore()}. Default 0.8.
+     *
+     * @param minScore
+     */
+    public void setMinScore(float minScore) {
+    	mMinScore = minScore;
+    }
+
+    /**
+     * Set the path length in pixels below which a stroke is no symbol but a
+     * tap or a jitter. Default 60.
+     *
+     * @param minLength
+     */
+    public void setMinLength(float minLength) {
+    	mMinLength = minLength;
+    }
+
+    /**
+     * The name of the template the stroke matched in onStrokeEnd, or null if
+     * it matched none or was cancelled.
+     */
+    public String getMatchName() {
+    	return mMatch.getName();
+    }
+
+    public float getMatchScore() {
+    	return mMatch.getScore();
+    }
+
+    /**
+     * The result of the last match, with its statistics.
+     */
+    public StrokeTemplateLibrary.Match getMatch() {
+    	return mMatch;
+    }
+
+    public int getStrokePointCount() {
+    	return mCount;
+    }
+
+    public float getStrokeX(int point) {
+    	return mX[point];
+    }
+
+    public float getStrokeY(int point) {
+    	return mY[point];
+    }
+}
@@ -0,0 +1,450 @@
+package com.example.gestdemo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+/**
+ * Templates of single-stroke symbols and the matcher that finds the one a
+ * drawn stroke is closest to, in the manner of the $1 unistroke recognizer.
+ *
+ * Strokes and templates are normalized the same way: resampled to POINTS
+ * points evenly spaced along the path, moved so the centroid is at the
+ * origin and scaled uniformly so the larger side of the bounding box is 1.
+ * Uniform scaling keeps flat symbols such as lines recognizable. The
+ * orientation is kept, so a check mark and a V stay apart, as does the
+ * direction the stroke was drawn in; add templates for every direction
+ * a symbol may be drawn in.
+ *
+ * The distance between a stroke and a template is the mean distance of
+ * their corresponding points. Matching is exact but avoids most of the
+ * work: the mean of every run of SEGMENT_POINTS points is indexed per
+ * template, and the distance of these means is a lower bound of the full
+ * distance. Templates are compared in the order of their bound and the
+ * search stops at the first bound that is not below the best distance so
+ * far; the full distance is abandoned as soon as it exceeds the best.
+ *
+ * Binary format, see {@link #write(OutputStream)}: the magic number, the
+ * version, POINTS and the template count, followed per template by its
+ * name (modified UTF-8) and the normalized points as 16 bit fixed point.
+ */
+public class StrokeTemplateLibrary {
+
+	/** Points every stroke is resampled to. */
+	public static final int POINTS = 64;
+	private static final int SEGMENT_POINTS = 8;
+	private static final int SEGMENTS = POINTS / SEGMENT_POINTS;
+
+	static final int MAGIC = 0x4753544b; // "GSTK"
+	static final int VERSION = 1;
+	private static final float POINT_SCALE = 16384f;
+
+	/** Mean point distance of a stroke to a template with score 0. */
+	private static final float HALF_DIAGONAL = (float) (0.5 * Math.sqrt(2));
+
+	/**
+	 * A normalized symbol.
+	 */
+	public static class Template {
+		private final String mName;
+		/** POINTS points, x and y interleaved. */
+		final float[] mPoints;
+		/** Means of the segments, x and y interleaved. */
+		final float[] mSegments = new float[2 * SEGMENTS];
+
+		Template(String name, float[] points) {
+			mName = name;
+			mPoints = points;
+			segmentMeans(points, mSegments);
+		}
+
+		public String getName() {
+			return mName;
+		}
+
+		public float getX(int point) {
+			return mPoints[2 * point];
+		}
+
+		public float getY(int point) {
+			return mPoints[2 * point + 1];
+		}
+	}
+
+	/**
+	 * The result of a match and the scratch space of the search, so matching
+	 * does not allocate. One per thread.
+	 */
+	public static class Match {
+		private Template mTemplate;
+		private float mDistance;
+		private int mComparedCount;
+		private float[] mBounds = new float[0];
+		private final float[] mSegments = new float[2 * SEGMENTS];
+
+		/**
+		 * The closest template, or null if none was close enough.
+		 */
+		public Template getTemplate() {
+			return mTemplate;
+		}
+
+		public String getName() {
+			return mTemplate != null ? mTemplate.getName() : null;
+		}
+
+		/**
+		 * Mean point distance to the template, in units of the larger side of
+		 * the stroke.
+		 */
+		public float getDistance() {
+			return mDistance;
+		}
+
+		/**
+		 * 1 for a perfect match, 0 at half the diagonal of the unit square.
+		 */
+		public float getScore() {
+			return mTemplate != null ? 1f - mDistance / HALF_DIAGONAL : 0f;
+		}
+
+		/**
+		 * Number of templates the last search computed the full distance for,
+		 * completed or abandoned.
+		 */
+		public int getComparedCount() {
+			return mComparedCount;
+		}
+
+		void clear() {
+			mTemplate = null;
+			mDistance = Float.POSITIVE_INFINITY;
+			mComparedCount = 0;
+		}
+	}
+
+	private final ArrayList<Template> mTemplates = new ArrayList<Template>();
+
+	/**
+	 * Add a template drawn as a polyline.
+	 *
+	 * @param name
+	 * @param xs
+	 * @param ys
+	 * @param count number of points
+	 * @return false if the polyline has no length
+	 */
+	public boolean add(String name, float[] xs, float[] ys, int count) {
+		float[] points = new float[2 * POINTS];
+		if (!normalize(xs, ys, count, points)) {
+			return false;
+		}
+		mTemplates.add(new Template(name, points));
+		return true;
+	}
+
+	/**
+	 * Add a template from points that are normalized already.
+	 */
+	void addNormalized(String name, float[] points) {
+		mTemplates.add(new Template(name, points));
+	}
+
+	public int getTemplateCount() {
+		return mTemplates.size();
+	}
+
+	public Template getTemplate(int index) {
+		return mTemplates.get(index);
+	}
+
+	/**
+	 * Find the template closest to a normalized stroke.
+	 *
+	 * @param stroke POINTS points from {@link #normalize}
+	 * @param minScore scores below this do not match, see
+	 *            {@link Match#getScore()}
+	 * @param match receives the result
+	 * @return match
+	 */
+	public Match match(float[] stroke, float minScore, Match match) {
+		match.clear();
+		final int count = mTemplates.size();
+		if (match.mBounds.length < count) {
+			match.mBounds = new float[Math.max(count, 2 * match.mBounds.length)];
+		}
+		final float[] bounds = match.mBounds;
+		final float[] segments = match.mSegments;
+		segmentMeans(stroke, segments);
+		for (int t = 0; t < count; t++) {
+			bounds[t] = lowerBound(segments, mTemplates.get(t).mSegments);
+		}
+
+		// distances are compared as sums over the points
+		float best = (1f - minScore) * HALF_DIAGONAL * POINTS;
+		Template bestTemplate = null;
+		while (true) {
+			// the template with the lowest bound not compared yet
+			int next = -1;
+			float nextBound = best;
+			for (int t = 0; t < count; t++) {
+				if (bounds[t] < nextBound) {
+					nextBound = bounds[t];
+					next = t;
+				}
+			}
+			if (next < 0) {
+				break;
+			}
+			bounds[next] = Float.POSITIVE_INFINITY;
+			final Template template = mTemplates.get(next);
+			final float distance = distance(stroke, template.mPoints, best);
+			match.mComparedCount++;
+			if (distance < best) {
+				best = distance;
+				bestTemplate = template;
+			}
+		}
+		if (bestTemplate != null) {
+			match.mTemplate = bestTemplate;
+			match.mDistance = best / POINTS;
+		}
+		return match;
+	}
+
+	/**
+	 * Sum of the point distances, or a value of at least limit as soon as
+	 * the sum reaches it.
+	 */
+	static float distance(float[] a, float[] b, float limit) {
+		float sum = 0f;
+		for (int i = 0; i < 2 * POINTS; i += 2) {
+			final float dx = a[i] - b[i];
+			final float dy = a[i + 1] - b[i + 1];
+			sum += (float) Math.sqrt(dx * dx + dy * dy);
+			if (sum >= limit) {
+				return sum;
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * The sum of the distances over a segment is at least the length of the
+	 * summed difference, SEGMENT_POINTS times the distance of the means.
+	 */
+	private static float lowerBound(float[] a, float[] b) {
+		float sum = 0f;
+		for (int i = 0; i < 2 * SEGMENTS; i += 2) {
+			final float dx = a[i] - b[i];
+			final float dy = a[i + 1] - b[i + 1];
+			sum += (float) Math.sqrt(dx * dx + dy * dy);
+		}
+		// a little below, so float rounding cannot prune the best template
+		return sum * SEGMENT_POINTS * 0.999f;
+	}
+
+	private static void segmentMeans(float[] points, float[] segments) {
+		for (int s = 0; s < SEGMENTS; s++) {
+			float x = 0f;
+			float y = 0f;
+			for (int i = s * SEGMENT_POINTS; i < (s + 1) * SEGMENT_POINTS; i++) {
+				x += points[2 * i];
+				y += points[2 * i + 1];
+			}
+			segments[2 * s] = x / SEGMENT_POINTS;
+			segments[2 * s + 1] = y / SEGMENT_POINTS;
+		}
+	}
+
+	/**
+	 * Resample a polyline to POINTS points evenly spaced along its path, move
+	 * its centroid to the origin and scale it so the larger side of its
+	 * bounding box is 1.
+	 *
+	 * @param xs
+	 * @param ys
+	 * @param count number of points of the polyline
+	 * @param out receives POINTS points, x and y interleaved
+	 * @return false if the polyline has no length
+	 */
+	public static boolean normalize(float[] xs, float[] ys, int count, float[] out) {
+		if (count < 2) {
+			return false;
+		}
+		float length = 0f;
+		for (int i = 1; i < count; i++) {
+			final float dx = xs[i] - xs[i - 1];
+			final float dy = ys[i] - ys[i - 1];
+			length += (float) Math.sqrt(dx * dx + dy * dy);
+		}
+		if (length <= 0f) {
+			return false;
+		}
+
+		final float interval = length / (POINTS - 1);
+		float px = xs[0];
+		float py = ys[0];
+		out[0] = px;
+		out[1] = py;
+		int n = 1;
+		float walked = 0f;
+		int i = 1;
+		while (i < count && n < POINTS) {
+			final float dx = xs[i] - px;
+			final float dy = ys[i] - py;
+			final float d = (float) Math.sqrt(dx * dx + dy * dy);
+			if (d > 0f && walked + d >= interval) {
+				// the next point lies on this segment, continue from it
+				final float t = (interval - walked) / d;
+				px += t * dx;
+				py += t * dy;
+				out[2 * n] = px;
+				out[2 * n + 1] = py;
+				n++;
+				walked = 0f;
+			} else {
+				walked += d;
+				px = xs[i];
+				py = ys[i];
+				i++;
+			}
+		}
+		// rounding can leave the last point out
+		for (; n < POINTS; n++) {
+			out[2 * n] = xs[count - 1];
+			out[2 * n + 1] = ys[count - 1];
+		}
+
+		float cx = 0f;
+		float cy = 0f;
+		float minX = Float.POSITIVE_INFINITY;
+		float minY = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY;
+		float maxY = Float.NEGATIVE_INFINITY;
+		for (int p = 0; p < 2 * POINTS; p += 2) {
+			final float x = out[p];
+			final float y = out[p + 1];
+			cx += x;
+			cy += y;
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			minY = Math.min(minY, y);
+			maxY = Math.max(maxY, y);
+		}
+		cx /= POINTS;
+		cy /= POINTS;
+		final float size = Math.max(maxX - minX, maxY - minY);
+		for (int p = 0; p < 2 * POINTS; p += 2) {
+			out[p] = (out[p] - cx) / size;
+			out[p + 1] = (out[p + 1] - cy) / size;
+		}
+		return true;
+	}
+
+	/**
+	 * Write the templates in the binary format. Does not close the stream.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		data.writeInt(MAGIC);
+		data.writeByte(VERSION);
+		data.writeShort(POINTS);
+		data.writeInt(mTemplates.size());
+		for (int t = 0; t < mTemplates.size(); t++) {
+			final Template template = mTemplates.get(t);
+			data.writeUTF(template.getName());
+			final float[] points = template.mPoints;
+			for (int i = 0; i < 2 * POINTS; i++) {
+				data.writeShort(Math.round(points[i] * POINT_SCALE));
+			}
+		}
+		data.flush();
+	}
+
+	/**
+	 * Read templates written by {@link #write(OutputStream)}. Does not close
+	 * the stream.
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException if the stream is not a template library of this
+	 *             version
+	 */
+	public static StrokeTemplateLibrary read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+		if (data.readInt() != MAGIC) {
+			throw new IOException("not a stroke template library");
+		}
+		final int version = data.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("unsupported stroke template library version " + version);
+		}
+		final int points = data.readUnsignedShort();
+		if (points != POINTS) {
+			throw new IOException("templates have " + points + " points, expected " + POINTS);
+		}
+		final int count = data.readInt();
+		StrokeTemplateLibrary library = new StrokeTemplateLibrary();
+		library.mTemplates.ensureCapacity(count);
+		final byte[] buffer = new byte[4 * POINTS];
+		for (int t = 0; t < count; t++) {
+			final String name = data.readUTF();
+			// one read per template, the points are decoded from the buffer
+			data.readFully(buffer);
+			final float[] normalized = new float[2 * POINTS];
+			for (int i = 0; i < 2 * POINTS; i++) {
+				normalized[i] = (short) ((buffer[2 * i] << 8) | (buffer[2 * i + 1] & 0xff)) / POINT_SCALE;
+			}
+			library.addNormalized(name, normalized);
+		}
+		return library;
+	}
+
+	/**
+	 * A library of common symbols: check mark, X, circle (both directions),
+	 * caret, V, triangle and rectangle, drawn with y pointing down.
+	 */
+	public static StrokeTemplateLibrary createDefault() {
+		StrokeTemplateLibrary library = new StrokeTemplateLibrary();
+		library.addPolyline("check", 0f, 0.6f, 0.35f, 1f, 1f, 0f);
+		library.addPolyline("x", 0f, 0f, 1f, 1f, 1f, 0f, 0f, 1f);
+		library.addPolyline("caret", 0f, 1f, 0.5f, 0f, 1f, 1f);
+		library.addPolyline("v", 0f, 0f, 0.5f, 1f, 1f, 0f);
+		library.addPolyline("triangle", 0.5f, 0f, 0f, 1f, 1f, 1f, 0.5f, 0f);
+		library.addPolyline("rectangle", 0f, 0f, 0f, 1f, 1f, 1f, 1f, 0f, 0f, 0f);
+
+		final int circlePoints = 33;
+		float[] xs = new float[circlePoints];
+		float[] ys = new float[circlePoints];
+		for (int direction = -1; direction <= 1; direction += 2) {
+			for (int i = 0; i < circlePoints; i++) {
+				// from the top, counterclockwise on screen for direction -1
+				final double angle = -Math.PI / 2 + direction * 2 * Math.PI * i / (circlePoints - 1);
+				xs[i] = (float) Math.cos(angle);
+				ys[i] = (float) Math.sin(angle);
+			}
+			library.add("circle", xs, ys, circlePoints);
+		}
+		return library;
+	}
+
+	private void addPolyline(String name, float... xy) {
+		final int count = xy.length / 2;
+		float[] xs = new float[count];
+		float[] ys = new float[count];
+		for (int i = 0; i < count; i++) {
+			xs[i] = xy[2 * i];
+			ys[i] = xy[2 * i + 1];
+		}
+		add(name, xs, ys, count);
+	}
+}
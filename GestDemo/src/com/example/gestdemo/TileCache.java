@@ -0,0 +1,124 @@
+package com.example.gestdemo;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of decoded tiles, bounded by bytes rather than
+ * by count, so tiles of any size share one memory budget. Evicted values
+ * are handed to {@link #onEvicted(long, Object)}, where bitmaps can be kept
+ * for decoding the next tiles into.
+ *
+ * Not thread safe.
+ *
+ * @param <T> the tile, for example a bitmap
+ */
+public abstract class TileCache<T> {
+
+	private final LinkedHashMap<Long, T> mTiles = new LinkedHashMap<Long, T>(64, 0.75f, true);
+	private final long mMaxBytes;
+	private long mBytes;
+
+	private long mHitCount;
+	private long mMissCount;
+	private long mEvictionCount;
+
+	/**
+	 * @param maxBytes budget of the cache; it should hold the tiles of a
+	 *            few screens, or tiles in view evict each other
+	 */
+	public TileCache(long maxBytes) {
+		mMaxBytes = maxBytes;
+	}
+
+	/**
+	 * Size of a tile in bytes.
+	 */
+	protected abstract int sizeOf(T tile);
+
+	/**
+	 * Called when a tile leaves the cache, evicted or replaced.
+	 */
+	protected void onEvicted(long key, T tile) {
+		// Do nothing
+	}
+
+	/**
+	 * The tile, which becomes the most recently used, or null.
+	 */
+	public T get(long key) {
+		final T tile = mTiles.get(key);
+		if (tile != null) {
+			mHitCount++;
+		} else {
+			mMissCount++;
+		}
+		return tile;
+	}
+
+	/**
+	 * Whether the tile is cached, without using it.
+	 */
+	public boolean contains(long key) {
+		return mTiles.containsKey(key);
+	}
+
+	/**
+	 * Add a tile and evict the least recently used ones over the budget.
+	 */
+	public void put(long key, T tile) {
+		final T previous = mTiles.put(key, tile);
+		mBytes += sizeOf(tile);
+		if (previous != null) {
+			mBytes -= sizeOf(previous);
+			onEvicted(key, previous);
+		}
+		trimTo(mMaxBytes);
+	}
+
+	/**
+	 * Evict the least recently used tiles until at most maxBytes remain.
+	 */
+	public void trimTo(long maxBytes) {
+		final Iterator<Map.Entry<Long, T>> tiles = mTiles.entrySet().iterator();
+		while ((mBytes > maxBytes || maxBytes < 0) && tiles.hasNext()) {
+			final Map.Entry<Long, T> eldest = tiles.next();
+			tiles.remove();
+			mBytes -= sizeOf(eldest.getValue());
+			mEvictionCount++;
+			onEvicted(eldest.getKey(), eldest.getValue());
+		}
+	}
+
+	/**
+	 * Evict every tile.
+	 */
+	public void clear() {
+		trimTo(-1);
+	}
+
+	public int getCount() {
+		return mTiles.size();
+	}
+
+	public long getBytes() {
+		return mBytes;
+	}
+
+	public long getMaxBytes() {
+		return mMaxBytes;
+	}
+
+	public long getHitCount() {
+		return mHitCount;
+	}
+
+	public long getMissCount() {
+		return mMissCount;
+	}
+
+	public long getEvictionCount() {
+		return mEvictionCount;
+	}
+}
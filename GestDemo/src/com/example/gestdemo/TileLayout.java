@@ -0,0 +1,170 @@
+package com.example.gestdemo;
+
+/**
+ * Splits an image into square tiles at power-of-two sample sizes and finds
+ * the tiles a view shows. A tile is TILE_SIZE pixels square after
+ * subsampling, so it covers TILE_SIZE * sample image pixels; the sample
+ * size follows the scale, so the image is never decoded at more pixels
+ * than the screen shows.
+ *
+ * Tiles are identified by a long key holding the sample size, column and
+ * row, see {@link #key(int, int, int)}.
+ */
+public class TileLayout {
+
+	public static final int TILE_SIZE = 256;
+	public static final int MAX_SAMPLE_SIZE = 64;
+
+	private final int mImageWidth;
+	private final int mImageHeight;
+
+	/**
+	 * @param imageWidth width in image pixels
+	 * @param imageHeight height in image pixels
+	 */
+	public TileLayout(int imageWidth, int imageHeight) {
+		mImageWidth = imageWidth;
+		mImageHeight = imageHeight;
+	}
+
+	public int getImageWidth() {
+		return mImageWidth;
+	}
+
+	public int getImageHeight() {
+		return mImageHeight;
+	}
+
+	/**
+	 * The largest sample size that still decodes at least one pixel per
+	 * screen pixel.
+	 *
+	 * @param scale screen pixels per image pixel
+	 */
+	public static int sampleSizeFor(float scale) {
+		int sample = 1;
+		while (sample < MAX_SAMPLE_SIZE && 2 * sample * scale <= 1f) {
+			sample *= 2;
+		}
+		return sample;
+	}
+
+	public int getColumnCount(int sample) {
+		final int span = TILE_SIZE * sample;
+		return (mImageWidth + span - 1) / span;
+	}
+
+	public int getRowCount(int sample) {
+		final int span = TILE_SIZE * sample;
+		return (mImageHeight + span - 1) / span;
+	}
+
+	/**
+	 * @param sample a power of two
+	 * @param column
+	 * @param row
+	 */
+	public static long key(int sample, int column, int row) {
+		return ((long) Integer.numberOfTrailingZeros(sample) << 48) | ((long) column << 24) | row;
+	}
+
+	public static int getSampleSize(long key) {
+		return 1 << (int) (key >>> 48);
+	}
+
+	public static int getColumn(long key) {
+		return (int) (key >>> 24) & 0xffffff;
+	}
+
+	public static int getRow(long key) {
+		return (int) key & 0xffffff;
+	}
+
+	/**
+	 * The image pixels of a tile, clipped to the image.
+	 *
+	 * @param key
+	 * @param region receives left, top, right and bottom
+	 */
+	public void getRegion(long key, int[] region) {
+		final int span = TILE_SIZE * getSampleSize(key);
+		region[0] = getColumn(key) * span;
+		region[1] = getRow(key) * span;
+		region[2] = Math.min(region[0] + span, mImageWidth);
+		region[3] = Math.min(region[1] + span, mImageHeight);
+	}
+
+	/**
+	 * The bounding box in image pixels of what a view shows when the image
+	 * is drawn as MainActivity does: scaled, rotated about its centre and
+	 * moved so the centre is at the focus.
+	 *
+	 * @param focusX
+	 * @param focusY
+	 * @param degrees
+	 * @param scale screen pixels per image pixel
+	 * @param viewWidth
+	 * @param viewHeight
+	 * @param bounds receives left, top, right and bottom
+	 */
+	public void getVisibleBounds(float focusX, float focusY, float degrees, float scale, int viewWidth,
+			int viewHeight, float[] bounds) {
+		final double radians = Math.toRadians(degrees);
+		// the inverse rotation and scale
+		final float cos = (float) Math.cos(radians) / scale;
+		final float sin = (float) Math.sin(radians) / scale;
+		final float left = -focusX;
+		final float top = -focusY;
+		final float right = viewWidth - focusX;
+		final float bottom = viewHeight - focusY;
+		// the corners are extreme in x and y in pairs, so the box of the
+		// rotated view follows from the signs
+		final float halfWidth = (right - left) / 2;
+		final float halfHeight = (bottom - top) / 2;
+		final float centerX = (left + right) / 2;
+		final float centerY = (top + bottom) / 2;
+		final float x = cos * centerX + sin * centerY + mImageWidth / 2f;
+		final float y = cos * centerY - sin * centerX + mImageHeight / 2f;
+		final float extentX = Math.abs(cos) * halfWidth + Math.abs(sin) * halfHeight;
+		final float extentY = Math.abs(sin) * halfWidth + Math.abs(cos) * halfHeight;
+		bounds[0] = x - extentX;
+		bounds[1] = y - extentY;
+		bounds[2] = x + extentX;
+		bounds[3] = y + extentY;
+	}
+
+	/**
+	 * The tiles that cover a box.
+	 *
+	 * @param bounds left, top, right and bottom in image pixels
+	 * @param sample
+	 * @param range receives the first column, first row, last column and
+	 *            last row, inclusive
+	 * @return false if the box does not overlap the image
+	 */
+	public boolean getTileRange(float[] bounds, int sample, int[] range) {
+		final float span = TILE_SIZE * sample;
+		range[0] = Math.max(0, (int) Math.floor(bounds[0] / span));
+		range[1] = Math.max(0, (int) Math.floor(bounds[1] / span));
+		range[2] = Math.min(getColumnCount(sample) - 1, (int) Math.floor(bounds[2] / span));
+		range[3] = Math.min(getRowCount(sample) - 1, (int) Math.floor(bounds[3] / span));
+		return range[0] <= range[2] && range[1] <= range[3];
+	}
+
+	/**
+	 * Widen a tile range by one tile on the sides the view moves towards,
+	 * for the tiles to decode before they come into view.
+	 *
+	 * @param range from {@link #getTileRange(float[], int, int[])}
+	 * @param dx motion of the view over the image in image pixels
+	 * @param dy
+	 * @param sample
+	 * @param prefetch receives the widened range
+	 */
+	public void getPrefetchRange(int[] range, float dx, float dy, int sample, int[] prefetch) {
+		prefetch[0] = dx < 0 ? Math.max(0, range[0] - 1) : range[0];
+		prefetch[1] = dy < 0 ? Math.max(0, range[1] - 1) : range[1];
+		prefetch[2] = dx > 0 ? Math.min(getColumnCount(sample) - 1, range[2] + 1) : range[2];
+		prefetch[3] = dy > 0 ? Math.min(getRowCount(sample) - 1, range[3] + 1) : range[3];
+	}
+}
@@ -0,0 +1,432 @@
+package com.example.gestdemo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.View;
+
+/**
+ * Draws a large image from tiles decoded at the sample size of the current
+ * scale, see {@link TileLayout}, instead of one bitmap at full resolution:
+ * zoomed out, few pixels are decoded; zoomed in, only the visible part is.
+ *
+ * A worker thread decodes the tiles with a BitmapRegionDecoder. Tiles in
+ * view come first, then the row or column the view moves towards, so
+ * panning seldom shows missing tiles. Until a tile arrives, a base layer
+ * of the whole image at low resolution shows through. Decoded tiles are
+ * kept in a {@link TileCache} of a fixed number of bytes; evicted bitmaps
+ * are decoded into again.
+ */
+public class TiledImageView extends View {
+	private static final String TAG = "TiledImageView";
+	/** Largest side of the base layer. */
+	private static final int BASE_SIZE = 1024;
+	private static final int POOL_SIZE = 8;
+
+	private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	private final Matrix mMatrix = new Matrix();
+	private final Rect mSource = new Rect();
+	private final RectF mDestination = new RectF();
+	private final float[] mBounds = new float[4];
+	private final int[] mRange = new int[4];
+	private final int[] mPrefetch = new int[4];
+	private final int[] mRegion = new int[4];
+
+	private float mFocusX;
+	private float mFocusY;
+	private float mDegrees;
+	private float mScale = 1f;
+	/** Centre of the view over the image at the last draw, in image pixels. */
+	private float mLastCenterX = Float.NaN;
+	private float mLastCenterY;
+
+	private TileLayout mLayout;
+	private TileCache<Bitmap> mCache;
+	/** Drawn size of one image pixel at scale 1. */
+	private float mDensity = 1f;
+	private Bitmap mBase;
+	private int mBaseSample;
+	private TileDecoder mDecoder;
+	private long[] mWanted = new long[64];
+	/** Evicted tiles to decode into. */
+	private final ArrayList<Bitmap> mPool = new ArrayList<Bitmap>();
+
+	public TiledImageView(Context context) {
+		super(context);
+	}
+
+	public TiledImageView(Context context, AttributeSet attrs) {
+		super(context, attrs);
+	}
+
+	/**
+	 * Start decoding an image. Tiles and the base layer arrive later.
+	 *
+	 * @param in the encoded image, closed when done
+	 * @param drawnWidth width of the image as drawn at scale 1, for example
+	 *            the intrinsic width of its drawable
+	 * @param cacheBytes memory budget of the decoded tiles
+	 * @throws IOException if the image cannot be decoded
+	 */
+	public void open(InputStream in, int drawnWidth, long cacheBytes) throws IOException {
+		close();
+		final BitmapRegionDecoder decoder;
+		try {
+			decoder = BitmapRegionDecoder.newInstance(in, false);
+		} finally {
+			in.close();
+		}
+		mLayout = new TileLayout(decoder.getWidth(), decoder.getHeight());
+		mDensity = (float) drawnWidth / decoder.getWidth();
+		mCache = new TileCache<Bitmap>(cacheBytes) {
+			@Override
+			protected int sizeOf(Bitmap tile) {
+				return tile.getRowBytes() * tile.getHeight();
+			}
+
+			@Override
+			protected void onEvicted(long key, Bitmap tile) {
+				recycle(tile);
+			}
+		};
+		mLastCenterX = Float.NaN;
+		mDecoder = new TileDecoder(decoder, mLayout);
+		mDecoder.start();
+		invalidate();
+	}
+
+	/**
+	 * Stop decoding and free the bitmaps.
+	 */
+	public void close() {
+		if (mDecoder == null) {
+			return;
+		}
+		mDecoder.stop();
+		Log.d(TAG, "tiles decoded " + mDecoder.mDecodedCount + ", cache hits " + mCache.getHitCount()
+				+ ", misses " + mCache.getMissCount() + ", evictions " + mCache.getEvictionCount());
+		mDecoder = null;
+		mCache.clear();
+		synchronized (mPool) {
+			for (int i = 0; i < mPool.size(); i++) {
+				mPool.get(i).recycle();
+			}
+			mPool.clear();
+		}
+		if (mBase != null) {
+			mBase.recycle();
+			mBase = null;
+		}
+		mLayout = null;
+	}
+
+	public boolean isOpen() {
+		return mDecoder != null;
+	}
+
+	/**
+	 * Show the image with a transform.
+	 *
+	 * @param matrix maps the image as drawn at scale 1 to the view, see
+	 *            MainActivity
+	 * @param transform the transform the matrix was made from
+	 */
+	public void setImageMatrix(Matrix matrix, ImageTransform transform) {
+		mMatrix.set(matrix);
+		mFocusX = transform.getFocusX();
+		mFocusY = transform.getFocusY();
+		mDegrees = transform.getRotationDegrees();
+		mScale = transform.getScale();
+		invalidate();
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		final TileLayout layout = mLayout;
+		if (layout == null) {
+			return;
+		}
+		canvas.save();
+		canvas.concat(mMatrix);
+		if (mBase != null) {
+			mSource.set(0, 0, mBase.getWidth(), mBase.getHeight());
+			mDestination.set(0, 0, layout.getImageWidth() * mDensity, layout.getImageHeight() * mDensity);
+			canvas.drawBitmap(mBase, mSource, mDestination, mPaint);
+		}
+
+		final float scale = mScale * mDensity;
+		final int sample = TileLayout.sampleSizeFor(scale);
+		int wanted = 0;
+		if (mBase == null || sample < mBaseSample) {
+			final float[] bounds = mBounds;
+			layout.getVisibleBounds(mFocusX, mFocusY, mDegrees, scale, getWidth(), getHeight(), bounds);
+			final float centerX = (bounds[0] + bounds[2]) / 2;
+			final float centerY = (bounds[1] + bounds[3]) / 2;
+			final float dx = Float.isNaN(mLastCenterX) ? 0f : centerX - mLastCenterX;
+			final float dy = Float.isNaN(mLastCenterX) ? 0f : centerY - mLastCenterY;
+			mLastCenterX = centerX;
+			mLastCenterY = centerY;
+
+			final int[] range = mRange;
+			if (layout.getTileRange(bounds, sample, range)) {
+				for (int row = range[1]; row <= range[3]; row++) {
+					for (int column = range[0]; column <= range[2]; column++) {
+						final long key = TileLayout.key(sample, column, row);
+						final Bitmap tile = mCache.get(key);
+						if (tile != null) {
+							drawTile(canvas, key, tile);
+						} else {
+							wanted = want(key, wanted);
+						}
+					}
+				}
+				// then the tiles coming into view
+				final int[] prefetch = mPrefetch;
+				layout.getPrefetchRange(range, dx, dy, sample, prefetch);
+				for (int row = prefetch[1]; row <= prefetch[3]; row++) {
+					for (int column = prefetch[0]; column <= prefetch[2]; column++) {
+						if (row >= range[1] && row <= range[3] && column >= range[0] && column <= range[2]) {
+							continue;
+						}
+						final long key = TileLayout.key(sample, column, row);
+						if (!mCache.contains(key)) {
+							wanted = want(key, wanted);
+						}
+					}
+				}
+			}
+		}
+		canvas.restore();
+		mDecoder.request(mWanted, wanted);
+	}
+
+	private int want(long key, int count) {
+		if (count == mWanted.length) {
+			long[] grown = new long[2 * count];
+			System.arraycopy(mWanted, 0, grown, 0, count);
+			mWanted = grown;
+		}
+		mWanted[count] = key;
+		return count + 1;
+	}
+
+	private void drawTile(Canvas canvas, long key, Bitmap tile) {
+		final int sample = TileLayout.getSampleSize(key);
+		final int[] region = mRegion;
+		mLayout.getRegion(key, region);
+		// edge tiles only fill the top left of a reused bitmap
+		mSource.set(0, 0, (region[2] - region[0] + sample - 1) / sample, (region[3] - region[1] + sample - 1) / sample);
+		mDestination.set(region[0] * mDensity, region[1] * mDensity, region[2] * mDensity, region[3] * mDensity);
+		canvas.drawBitmap(tile, mSource, mDestination, mPaint);
+	}
+
+	/**
+	 * Keep a full size tile bitmap to decode into, or free it.
+	 */
+	private void recycle(Bitmap tile) {
+		synchronized (mPool) {
+			if (mPool.size() < POOL_SIZE && tile.getWidth() == TileLayout.TILE_SIZE
+					&& tile.getHeight() == TileLayout.TILE_SIZE) {
+				mPool.add(tile);
+				return;
+			}
+		}
+		tile.recycle();
+	}
+
+	private Bitmap takeFromPool() {
+		synchronized (mPool) {
+			return mPool.isEmpty() ? null : mPool.remove(mPool.size() - 1);
+		}
+	}
+
+	/**
+	 * Decodes the base layer, then the requested tiles in the order they
+	 * were requested, and posts them to the UI thread. Each request
+	 * replaces the previous one, so tiles that left the view are not
+	 * decoded.
+	 */
+	private class TileDecoder implements Runnable {
+		private final BitmapRegionDecoder mRegionDecoder;
+		private final TileLayout mTileLayout;
+		private final Thread mThread;
+		private final Object mLock = new Object();
+		private long[] mPending = new long[64];
+		private int mPendingCount;
+		private int mPendingNext;
+		/** The tile being decoded, so requests meanwhile skip it. */
+		private long mDecoding = -1;
+		private boolean mStopped;
+		int mDecodedCount;
+
+		TileDecoder(BitmapRegionDecoder decoder, TileLayout layout) {
+			mRegionDecoder = decoder;
+			mTileLayout = layout;
+			mThread = new Thread(this, "TileDecoder");
+		}
+
+		void start() {
+			mThread.start();
+		}
+
+		void stop() {
+			synchronized (mLock) {
+				mStopped = true;
+				mLock.notify();
+			}
+			boolean interrupted = false;
+			while (mThread.isAlive()) {
+				try {
+					mThread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			mRegionDecoder.recycle();
+		}
+
+		/**
+		 * Replace the pending tiles. Called on the UI thread.
+		 */
+		void request(long[] keys, int count) {
+			synchronized (mLock) {
+				if (mPending.length < count) {
+					mPending = new long[keys.length];
+				}
+				int pending = 0;
+				for (int i = 0; i < count; i++) {
+					if (keys[i] != mDecoding) {
+						mPending[pending++] = keys[i];
+					}
+				}
+				mPendingCount = pending;
+				mPendingNext = 0;
+				if (pending > 0) {
+					mLock.notify();
+				}
+			}
+		}
+
+		public void run() {
+			decodeBase();
+			final BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inPreferredConfig = Bitmap.Config.RGB_565;
+			options.inMutable = true;
+			final Rect rect = new Rect();
+			final int[] region = new int[4];
+			while (true) {
+				final long key;
+				synchronized (mLock) {
+					while (!mStopped && mPendingNext == mPendingCount) {
+						try {
+							mLock.wait();
+						} catch (InterruptedException e) {
+							// Ignore
+						}
+					}
+					if (mStopped) {
+						return;
+					}
+					key = mPending[mPendingNext++];
+					mDecoding = key;
+				}
+				mTileLayout.getRegion(key, region);
+				rect.set(region[0], region[1], region[2], region[3]);
+				options.inSampleSize = TileLayout.getSampleSize(key);
+				options.inBitmap = takeFromPool();
+				Bitmap tile;
+				try {
+					tile = mRegionDecoder.decodeRegion(rect, options);
+				} catch (IllegalArgumentException e) {
+					// the bitmap could not be reused
+					options.inBitmap = null;
+					tile = mRegionDecoder.decodeRegion(rect, options);
+				}
+				if (tile != null) {
+					mDecodedCount++;
+					post(new TileArrived(this, key, tile));
+				}
+				synchronized (mLock) {
+					mDecoding = -1;
+				}
+			}
+		}
+
+		private void decodeBase() {
+			int sample = 1;
+			while (Math.max(mTileLayout.getImageWidth(), mTileLayout.getImageHeight()) / sample > BASE_SIZE) {
+				sample *= 2;
+			}
+			final BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inPreferredConfig = Bitmap.Config.RGB_565;
+			options.inSampleSize = sample;
+			final Bitmap base = mRegionDecoder.decodeRegion(
+					new Rect(0, 0, mTileLayout.getImageWidth(), mTileLayout.getImageHeight()), options);
+			if (base != null) {
+				post(new BaseArrived(this, base, sample));
+			}
+		}
+	}
+
+	/**
+	 * Puts a decoded tile into the cache, on the UI thread.
+	 */
+	private class TileArrived implements Runnable {
+		private final TileDecoder mFrom;
+		private final long mKey;
+		private final Bitmap mTile;
+
+		TileArrived(TileDecoder source, long key, Bitmap tile) {
+			mFrom = source;
+			mKey = key;
+			mTile = tile;
+		}
+
+		public void run() {
+			if (mFrom != mDecoder) {
+				// closed since
+				mTile.recycle();
+				return;
+			}
+			mCache.put(mKey, mTile);
+			invalidate();
+		}
+	}
+
+	private class BaseArrived implements Runnable {
+		private final TileDecoder mFrom;
+		private final Bitmap mBitmap;
+		private final int mSample;
+
+		BaseArrived(TileDecoder source, Bitmap base, int sample) {
+			mFrom = source;
+			mBitmap = base;
+			mSample = sample;
+		}
+
+		public void run() {
+			if (mFrom != mDecoder) {
+				mBitmap.recycle();
+				return;
+			}
+			mBase = mBitmap;
+			mBaseSample = mSample;
+			invalidate();
+		}
+	}
+}
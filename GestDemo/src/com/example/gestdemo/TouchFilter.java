@@ -0,0 +1,159 @@
+package com.example.gestdemo;
+
+/**
+ * Smooths the pointer positions of touch samples with an adaptive low-pass
+ * filter per pointer (the "1 Euro filter" of Casiez et al.): the cutoff
+ * frequency grows with the filtered speed of the pointer, so a resting or
+ * slow finger is smoothed strongly and its jitter disappears, while a fast
+ * finger is followed with little lag.
+ *
+ * The state is kept in arrays indexed by pointer id; filtering allocates
+ * nothing once the highest pointer id has been seen. A pointer starts
+ * unfiltered when it goes down or was missing from the previous sample.
+ * Historical positions are filtered in order before the current one.
+ *
+ * Not thread safe; use one filter per event stream, see
+ * {@link GestureEngine#setTouchFilter(TouchFilter)}.
+ */
+public class TouchFilter {
+
+	/** Cutoff of a resting pointer in Hz. */
+	public static final float DEFAULT_MIN_CUTOFF = 1f;
+	/** Increase of the cutoff in Hz per pixel/second of speed. */
+	public static final float DEFAULT_BETA = 0.1f;
+	/** Cutoff of the speed estimate in Hz. */
+	public static final float DEFAULT_SPEED_CUTOFF = 1f;
+
+	/** Time step assumed for samples without a time difference, in seconds. */
+	private static final float MIN_TIME_STEP = 0.001f;
+	private static final int INITIAL_POINTER_CAPACITY = 10;
+
+	private float mMinCutoff = DEFAULT_MIN_CUTOFF;
+	private float mBeta = DEFAULT_BETA;
+	private float mSpeedCutoff = DEFAULT_SPEED_CUTOFF;
+
+	/** Per pointer id: filtered position and velocity, time and last sample seen. */
+	private float[] mX = new float[INITIAL_POINTER_CAPACITY];
+	private float[] mY = new float[INITIAL_POINTER_CAPACITY];
+	private float[] mVelocityX = new float[INITIAL_POINTER_CAPACITY];
+	private float[] mVelocityY = new float[INITIAL_POINTER_CAPACITY];
+	private long[] mTime = new long[INITIAL_POINTER_CAPACITY];
+	private int[] mSeen = new int[INITIAL_POINTER_CAPACITY];
+	private int mGeneration = 1;
+
+	/**
+	 * @param minCutoff cutoff frequency of a resting pointer in Hz; lower
+	 *            removes more jitter
+	 * @param beta cutoff increase in Hz per pixel/second; higher lags less
+	 *            behind fast moves
+	 * @param speedCutoff cutoff frequency of the speed estimate in Hz
+	 */
+	public void setParameters(float minCutoff, float beta, float speedCutoff) {
+		mMinCutoff = minCutoff;
+		mBeta = beta;
+		mSpeedCutoff = speedCutoff;
+	}
+
+	public float getMinCutoff() {
+		return mMinCutoff;
+	}
+
+	public float getBeta() {
+		return mBeta;
+	}
+
+	public float getSpeedCutoff() {
+		return mSpeedCutoff;
+	}
+
+	/**
+	 * Forget all pointers, the next sample passes unfiltered.
+	 */
+	public void reset() {
+		// two generations on, no pointer counts as seen in the previous sample
+		mGeneration += 2;
+	}
+
+	/**
+	 * Copy a sample into out with its pointer positions filtered.
+	 *
+	 * @param in
+	 * @param out
+	 */
+	public void filter(TouchSample in, TouchSample out) {
+		out.set(in);
+		final int generation = ++mGeneration;
+		final int action = in.getActionMasked();
+		final int count = in.getPointerCount();
+		final int historySize = in.getHistorySize();
+		for (int i = 0; i < count; i++) {
+			final int id = in.getPointerId(i);
+			ensureCapacity(id);
+			boolean down = action == TouchSample.ACTION_DOWN
+					|| (action == TouchSample.ACTION_POINTER_DOWN && i == in.getActionIndex())
+					|| mSeen[id] != generation - 1;
+			for (int pos = 0; pos < historySize; pos++) {
+				step(id, in.getHistoricalEventTime(pos), in.getHistoricalX(i, pos), in.getHistoricalY(i, pos), down);
+				out.setHistoricalPointer(pos, i, mX[id], mY[id], in.getHistoricalPressure(i, pos));
+				down = false;
+			}
+			step(id, in.getEventTime(), in.getX(i), in.getY(i), down);
+			out.setPointer(i, id, mX[id], mY[id], in.getPressure(i));
+			mSeen[id] = generation;
+		}
+	}
+
+	private void step(int id, long time, float x, float y, boolean down) {
+		if (down) {
+			mX[id] = x;
+			mY[id] = y;
+			mVelocityX[id] = 0f;
+			mVelocityY[id] = 0f;
+			mTime[id] = time;
+			return;
+		}
+		final float dt = Math.max((time - mTime[id]) / 1000f, MIN_TIME_STEP);
+		final float speedAlpha = alpha(dt, mSpeedCutoff);
+		final float velocityX = mVelocityX[id] + speedAlpha * ((x - mX[id]) / dt - mVelocityX[id]);
+		final float velocityY = mVelocityY[id] + speedAlpha * ((y - mY[id]) / dt - mVelocityY[id]);
+		final float speed = (float) Math.sqrt(velocityX * velocityX + velocityY * velocityY);
+		final float alpha = alpha(dt, mMinCutoff + mBeta * speed);
+		mX[id] += alpha * (x - mX[id]);
+		mY[id] += alpha * (y - mY[id]);
+		mVelocityX[id] = velocityX;
+		mVelocityY[id] = velocityY;
+		mTime[id] = Math.max(time, mTime[id]);
+	}
+
+	/**
+	 * Smoothing factor of a first order low-pass with the given cutoff at
+	 * the given time step.
+	 */
+	private static float alpha(float dt, float cutoff) {
+		final float r = (float) (2 * Math.PI) * cutoff * dt;
+		return r / (r + 1f);
+	}
+
+	private void ensureCapacity(int id) {
+		if (id < mX.length) {
+			return;
+		}
+		final int capacity = Math.max(id + 1, 2 * mX.length);
+		mX = copyOf(mX, capacity);
+		mY = copyOf(mY, capacity);
+		mVelocityX = copyOf(mVelocityX, capacity);
+		mVelocityY = copyOf(mVelocityY, capacity);
+		final long[] time = new long[capacity];
+		System.arraycopy(mTime, 0, time, 0, mTime.length);
+		mTime = time;
+		final int[] seen = new int[capacity];
+		System.arraycopy(mSeen, 0, seen, 0, mSeen.length);
+		mSeen = seen;
+	}
+
+	private static float[] copyOf(float[] values, int capacity) {
+		final float[] copy = new float[capacity];
+		System.arraycopy(values, 0, copy, 0, values.length);
+		return copy;
+	}
+}
@@ -0,0 +1,212 @@
+package com.example.gestdemo;
+
+/**
+ * Extrapolates a moving point a short time ahead, to make up for the time
+ * between a touch sample and the frame that shows its result.
+ *
+ * The predictor keeps the last three samples. The prediction is the
+ * average velocity over these samples times the horizon, scaled by a
+ * confidence that compares the velocities of the two steps: steps in the
+ * same direction at the same speed give a confidence of 1, turns and
+ * sudden speed changes a lower one. Below the minimum confidence, after a
+ * pause longer than the maximum sample gap or with too few samples the
+ * prediction falls back to zero, so erratic movement is shown as it is.
+ * The prediction is clamped to the maximum offset.
+ *
+ * Detectors that predict a single value, like an angle, use only x.
+ */
+public class TouchPredictor {
+
+	public static final long DEFAULT_HORIZON = 16;
+	public static final float DEFAULT_MIN_CONFIDENCE = 0.5f;
+	public static final long DEFAULT_MAX_SAMPLE_GAP = 40;
+
+	private static final int SAMPLES = 3;
+
+	private final long[] mTimes = new long[SAMPLES];
+	private final float[] mX = new float[SAMPLES];
+	private final float[] mY = new float[SAMPLES];
+	private int mCount;
+	private int mNewest = -1;
+
+	private long mHorizon = DEFAULT_HORIZON;
+	private float mMinConfidence = DEFAULT_MIN_CONFIDENCE;
+	private float mMaxOffset = Float.POSITIVE_INFINITY;
+	private long mMaxSampleGap = DEFAULT_MAX_SAMPLE_GAP;
+
+	private float mOffsetX;
+	private float mOffsetY;
+	private float mConfidence;
+
+	private long mPredictionCount;
+	private long mFallbackCount;
+
+	/**
+	 * Forget all samples, the prediction is zero until enough new samples
+	 * arrived.
+	 */
+	public void reset() {
+		mCount = 0;
+		mNewest = -1;
+		mOffsetX = 0f;
+		mOffsetY = 0f;
+		mConfidence = 0f;
+	}
+
+	/**
+	 * Add a sample and update the prediction. A sample with the time of the
+	 * newest sample replaces it, older samples are ignored.
+	 *
+	 * @param time event time in milliseconds
+	 * @param x
+	 * @param y
+	 */
+	public void addSample(long time, float x, float y) {
+		if (mCount > 0 && time <= mTimes[mNewest]) {
+			if (time < mTimes[mNewest]) {
+				return;
+			}
+		} else {
+			mNewest = (mNewest + 1) % SAMPLES;
+			if (mCount < SAMPLES) {
+				mCount++;
+			}
+		}
+		mTimes[mNewest] = time;
+		mX[mNewest] = x;
+		mY[mNewest] = y;
+		predict();
+	}
+
+	private void predict() {
+		mOffsetX = 0f;
+		mOffsetY = 0f;
+		mConfidence = 0f;
+		if (mCount < SAMPLES) {
+			return;
+		}
+		final int s2 = mNewest;
+		final int s1 = (s2 + SAMPLES - 1) % SAMPLES;
+		final int s0 = (s2 + SAMPLES - 2) % SAMPLES;
+		final long dt1 = mTimes[s1] - mTimes[s0];
+		final long dt2 = mTimes[s2] - mTimes[s1];
+		mPredictionCount++;
+		if (dt1 <= 0 || dt2 <= 0 || dt2 > mMaxSampleGap) {
+			mFallbackCount++;
+			return;
+		}
+
+		final float v1x = (mX[s1] - mX[s0]) / dt1;
+		final float v1y = (mY[s1] - mY[s0]) / dt1;
+		final float v2x = (mX[s2] - mX[s1]) / dt2;
+		final float v2y = (mY[s2] - mY[s1]) / dt2;
+		final float speed1 = (float) Math.sqrt(v1x * v1x + v1y * v1y);
+		final float speed2 = (float) Math.sqrt(v2x * v2x + v2y * v2y);
+		if (speed1 == 0f && speed2 == 0f) {
+			// resting, nothing to predict
+			mConfidence = 1f;
+			return;
+		}
+		if (speed1 == 0f || speed2 == 0f) {
+			mFallbackCount++;
+			return;
+		}
+
+		final float cos = (v1x * v2x + v1y * v2y) / (speed1 * speed2);
+		final float confidence = Math.max(0f, cos) * Math.min(speed1, speed2) / Math.max(speed1, speed2);
+		if (confidence < mMinConfidence) {
+			mFallbackCount++;
+			return;
+		}
+		mConfidence = confidence;
+
+		final float scale = confidence * mHorizon / (dt1 + dt2);
+		float offsetX = (mX[s2] - mX[s0]) * scale;
+		float offsetY = (mY[s2] - mY[s0]) * scale;
+		final float length = (float) Math.sqrt(offsetX * offsetX + offsetY * offsetY);
+		if (length > mMaxOffset) {
+			offsetX *= mMaxOffset / length;
+			offsetY *= mMaxOffset / length;
+		}
+		mOffsetX = offsetX;
+		mOffsetY = offsetY;
+	}
+
+	/**
+	 * Predicted movement of x from the newest sample to the horizon.
+	 */
+	public float getOffsetX() {
+		return mOffsetX;
+	}
+
+	/**
+	 * Predicted movement of y from the newest sample to the horizon.
+	 */
+	public float getOffsetY() {
+		return mOffsetY;
+	}
+
+	/**
+	 * Confidence of the current prediction between 0 and 1, 0 if the
+	 * predictor fell back.
+	 */
+	public float getConfidence() {
+		return mConfidence;
+	}
+
+	/**
+	 * Set how far ahead to predict, usually the time from a touch event to
+	 * the display of the frame it changes.
+	 *
+	 * @param horizon in milliseconds
+	 */
+	public void setHorizon(long horizon) {
+		mHorizon = horizon;
+	}
+
+	public long getHorizon() {
+		return mHorizon;
+	}
+
+	/**
+	 * Set the confidence below which the predictor falls back to zero.
+	 *
+	 * @param minConfidence between 0 and 1
+	 */
+	public void setMinConfidence(float minConfidence) {
+		mMinConfidence = minConfidence;
+	}
+
+	/**
+	 * Set the largest predicted movement, in the unit of the samples.
+	 *
+	 * @param maxOffset
+	 */
+	public void setMaxOffset(float maxOffset) {
+		mMaxOffset = maxOffset;
+	}
+
+	/**
+	 * Set the longest time between two samples that is still considered
+	 * continuous movement.
+	 *
+	 * @param maxSampleGap in milliseconds
+	 */
+	public void setMaxSampleGap(long maxSampleGap) {
+		mMaxSampleGap = maxSampleGap;
+	}
+
+	/**
+	 * Number of times a prediction was attempted with enough samples.
+	 */
+	public long getPredictionCount() {
+		return mPredictionCount;
+	}
+
+	/**
+	 * Number of attempted predictions that fell back to zero.
+	 */
+	public long getFallbackCount() {
+		return mFallbackCount;
+	}
+}
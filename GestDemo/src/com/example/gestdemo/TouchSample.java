@@ -0,0 +1,224 @@
+package com.example.gestdemo;
+
+/**
+ * Platform independent snapshot of one touch event: action, pointer ids,
+ * positions, pressure and event time, kept in primitive arrays. The gesture
+ * detectors only read this class, so they run on a plain JVM as well as on a
+ * device. On Android a {@link MotionEventAdapter} fills it from a MotionEvent.
+ *
+ * Like a MotionEvent, a move sample can carry historical samples that were
+ * batched into it; they are ordered oldest first and have the same pointers
+ * as the sample itself.
+ *
+ * Instances are meant to be reused; the arrays only grow when more pointers
+ * or historical samples are set than the sample has seen before.
+ */
+public class TouchSample {
+
+	/** Action codes, same values as the masked MotionEvent actions. */
+	public static final int ACTION_DOWN = 0;
+	public static final int ACTION_UP = 1;
+	public static final int ACTION_MOVE = 2;
+	public static final int ACTION_CANCEL = 3;
+	public static final int ACTION_POINTER_DOWN = 5;
+	public static final int ACTION_POINTER_UP = 6;
+
+	private static final int INITIAL_POINTER_CAPACITY = 4;
+
+	private int mAction;
+	private int mActionIndex;
+	private long mEventTime;
+	private int mPointerCount;
+
+	private int[] mPointerIds = new int[INITIAL_POINTER_CAPACITY];
+	private float[] mX = new float[INITIAL_POINTER_CAPACITY];
+	private float[] mY = new float[INITIAL_POINTER_CAPACITY];
+	private float[] mPressure = new float[INITIAL_POINTER_CAPACITY];
+
+	private float mRawOffsetX;
+	private float mRawOffsetY;
+
+	private int mHistorySize;
+	private long[] mHistoricalEventTimes = new long[0];
+	/** Historical pointer data, indexed by historyPos * pointerCount + pointerIndex. */
+	private float[] mHistoricalX = new float[0];
+	private float[] mHistoricalY = new float[0];
+	private float[] mHistoricalPressure = new float[0];
+
+	/**
+	 * Start filling this sample with a new event. The pointers have to be set
+	 * afterwards through {@link #setPointer(int, int, float, float, float)}.
+	 *
+	 * @param action masked action code, one of the ACTION_ constants
+	 * @param actionIndex index of the pointer the action refers to
+	 * @param eventTime event time in milliseconds
+	 * @param pointerCount number of pointers in this event
+	 */
+	public void setAction(int action, int actionIndex, long eventTime, int pointerCount) {
+		mAction = action;
+		mActionIndex = actionIndex;
+		mEventTime = eventTime;
+		mPointerCount = pointerCount;
+		ensureCapacity(pointerCount);
+		mRawOffsetX = 0f;
+		mRawOffsetY = 0f;
+		mHistorySize = 0;
+	}
+
+	public void setPointer(int index, int pointerId, float x, float y, float pressure) {
+		mPointerIds[index] = pointerId;
+		mX[index] = x;
+		mY[index] = y;
+		mPressure[index] = pressure;
+	}
+
+	/**
+	 * Set the offset between view and screen coordinates, so that
+	 * {@link #getRawX(int)} and {@link #getRawY(int)} can be answered for
+	 * every pointer.
+	 */
+	public void setRawOffset(float offsetX, float offsetY) {
+		mRawOffsetX = offsetX;
+		mRawOffsetY = offsetY;
+	}
+
+	/**
+	 * Set the number of historical samples. Has to be called after
+	 * {@link #setAction(int, int, long, int)}, which clears the history.
+	 */
+	public void setHistorySize(int historySize) {
+		final int values = historySize * mPointerCount;
+		if (historySize > mHistoricalEventTimes.length) {
+			mHistoricalEventTimes = new long[historySize];
+		}
+		if (values > mHistoricalX.length) {
+			mHistoricalX = new float[values];
+			mHistoricalY = new float[values];
+			mHistoricalPressure = new float[values];
+		}
+		mHistorySize = historySize;
+	}
+
+	public void setHistoricalEventTime(int pos, long eventTime) {
+		mHistoricalEventTimes[pos] = eventTime;
+	}
+
+	public void setHistoricalPointer(int pos, int index, float x, float y, float pressure) {
+		final int i = pos * mPointerCount + index;
+		mHistoricalX[i] = x;
+		mHistoricalY[i] = y;
+		mHistoricalPressure[i] = pressure;
+	}
+
+	/**
+	 * Copy the given sample into this one.
+	 */
+	public void set(TouchSample other) {
+		setAction(other.mAction, other.mActionIndex, other.mEventTime, other.mPointerCount);
+		final int count = other.mPointerCount;
+		System.arraycopy(other.mPointerIds, 0, mPointerIds, 0, count);
+		System.arraycopy(other.mX, 0, mX, 0, count);
+		System.arraycopy(other.mY, 0, mY, 0, count);
+		System.arraycopy(other.mPressure, 0, mPressure, 0, count);
+		mRawOffsetX = other.mRawOffsetX;
+		mRawOffsetY = other.mRawOffsetY;
+
+		setHistorySize(other.mHistorySize);
+		final int values = other.mHistorySize * count;
+		System.arraycopy(other.mHistoricalEventTimes, 0, mHistoricalEventTimes, 0, other.mHistorySize);
+		System.arraycopy(other.mHistoricalX, 0, mHistoricalX, 0, values);
+		System.arraycopy(other.mHistoricalY, 0, mHistoricalY, 0, values);
+		System.arraycopy(other.mHistoricalPressure, 0, mHistoricalPressure, 0, values);
+	}
+
+	private void ensureCapacity(int count) {
+		if (count > mX.length) {
+			int[] ids = new int[count];
+			float[] x = new float[count];
+			float[] y = new float[count];
+			float[] pressure = new float[count];
+			System.arraycopy(mPointerIds, 0, ids, 0, mPointerIds.length);
+			System.arraycopy(mX, 0, x, 0, mX.length);
+			System.arraycopy(mY, 0, y, 0, mY.length);
+			System.arraycopy(mPressure, 0, pressure, 0, mPressure.length);
+			mPointerIds = ids;
+			mX = x;
+			mY = y;
+			mPressure = pressure;
+		}
+	}
+
+	public int getActionMasked() {
+		return mAction;
+	}
+
+	public int getActionIndex() {
+		return mActionIndex;
+	}
+
+	public long getEventTime() {
+		return mEventTime;
+	}
+
+	public int getPointerCount() {
+		return mPointerCount;
+	}
+
+	public int getPointerId(int pointerIndex) {
+		return mPointerIds[pointerIndex];
+	}
+
+	public float getX(int pointerIndex) {
+		return mX[pointerIndex];
+	}
+
+	public float getY(int pointerIndex) {
+		return mY[pointerIndex];
+	}
+
+	public float getPressure(int pointerIndex) {
+		return mPressure[pointerIndex];
+	}
+
+	/**
+	 * Screen X coordinate of the given pointer. Returns 0 for pointers that
+	 * are not part of this sample.
+	 */
+	public float getRawX(int pointerIndex) {
+		if (pointerIndex < mPointerCount) {
+			return mX[pointerIndex] + mRawOffsetX;
+		}
+		return 0f;
+	}
+
+	/**
+	 * Screen Y coordinate of the given pointer. Returns 0 for pointers that
+	 * are not part of this sample.
+	 */
+	public float getRawY(int pointerIndex) {
+		if (pointerIndex < mPointerCount) {
+			return mY[pointerIndex] + mRawOffsetY;
+		}
+		return 0f;
+	}
+
+	public int getHistorySize() {
+		return mHistorySize;
+	}
+
+	public long getHistoricalEventTime(int pos) {
+		return mHistoricalEventTimes[pos];
+	}
+
+	public float getHistoricalX(int pointerIndex, int pos) {
+		return mHistoricalX[pos * mPointerCount + pointerIndex];
+	}
+
+	public float getHistoricalY(int pointerIndex, int pos) {
+		return mHistoricalY[pos * mPointerCount + pointerIndex];
+	}
+
+	public float getHistoricalPressure(int pointerIndex, int pos) {
+		return mHistoricalPressure[pos * mPointerCount + pointerIndex];
+	}
+}
@@ -0,0 +1,280 @@
+package com.example.gestdemo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Records touch samples into a compact binary trace that
+ * {@link TouchTraceReplayer} can play back.
+ *
+ * {@link #record(TouchSample)} is called on the UI thread and only encodes
+ * the sample into an in-memory block. Full blocks are handed to a writer
+ * thread that writes them to the output stream and returns them to a pool,
+ * so recording does not block on I/O and does not allocate once the pool is
+ * warm. If the writer falls behind by more than MAX_BLOCKS blocks, samples
+ * are dropped and counted instead of stalling the UI.
+ *
+ * Trace format: the magic number and version, followed by one record per
+ * sample. Positions and pressure are stored as fixed point values, as
+ * zigzag varint deltas against the same pointer index of the previous
+ * sample; times are varint deltas against the previous sample.
+ */
+public class TouchTraceRecorder {
+
+	static final int MAGIC = 0x47545243; // "GTRC"
+	static final int VERSION = 1;
+	static final float POSITION_SCALE = 16f;
+	static final float PRESSURE_SCALE = 1024f;
+
+	private static final int BLOCK_SIZE = 64 * 1024;
+	private static final int MAX_BLOCKS = 16;
+
+	private static final class Block {
+		final byte[] data;
+		int length;
+
+		Block(int size) {
+			data = new byte[size];
+		}
+	}
+
+	private static final Block END_OF_TRACE = new Block(0);
+
+	private final OutputStream mOut;
+	private final BlockingQueue<Block> mFullBlocks = new ArrayBlockingQueue<Block>(MAX_BLOCKS + 1);
+	private final BlockingQueue<Block> mFreeBlocks = new ArrayBlockingQueue<Block>(MAX_BLOCKS);
+	private final Thread mWriterThread;
+	private volatile IOException mWriteError;
+
+	private int mBlockCount;
+	private Block mBlock;
+	private long mRecordedCount;
+	private long mDroppedCount;
+	private boolean mClosed;
+
+	/** Encoder state: the previous sample's time and quantized values. */
+	private long mLastTime;
+	private int mLastOffsetX;
+	private int mLastOffsetY;
+	private int[] mLastX = new int[4];
+	private int[] mLastY = new int[4];
+
+	public TouchTraceRecorder(OutputStream out) {
+		mOut = out;
+		mBlock = new Block(BLOCK_SIZE);
+		mBlockCount = 1;
+		Block header = mBlock;
+		header.length = putInt(header.data, 0, MAGIC);
+		header.data[header.length++] = (byte) VERSION;
+
+		mWriterThread = new Thread(new Runnable() {
+			public void run() {
+				writeBlocks();
+			}
+		}, "TouchTraceWriter");
+		mWriterThread.start();
+	}
+
+	/**
+	 * Encode the sample into the trace.
+	 *
+	 * @param sample
+	 * @return false if the sample was dropped because the writer fell behind
+	 */
+	public boolean record(TouchSample sample) {
+		if (mClosed) {
+			return false;
+		}
+		final int count = sample.getPointerCount();
+		final int historySize = sample.getHistorySize();
+		final int bound = 48 + count * 5 + (historySize + 1) * (10 + count * 15);
+
+		Block block = mBlock;
+		if (block.data.length - block.length < bound) {
+			if (!flushBlock()) {
+				mDroppedCount++;
+				return false;
+			}
+			block = mBlock;
+			if (block.data.length < bound) {
+				mDroppedCount++;
+				return false;
+			}
+		}
+		if (count > mLastX.length) {
+			int[] x = new int[count];
+			int[] y = new int[count];
+			System.arraycopy(mLastX, 0, x, 0, mLastX.length);
+			System.arraycopy(mLastY, 0, y, 0, mLastY.length);
+			mLastX = x;
+			mLastY = y;
+		}
+
+		final byte[] b = block.data;
+		int pos = block.length;
+		pos = putVarint(b, pos, sample.getActionMasked() | (sample.getActionIndex() << 3));
+		pos = putVarint(b, pos, count);
+		pos = putVarint(b, pos, historySize);
+		pos = putVarlong(b, pos, zigzag(sample.getEventTime() - mLastTime));
+		for (int i = 0; i < count; i++) {
+			pos = putVarint(b, pos, sample.getPointerId(i));
+		}
+		// raw offset, derived from the first pointer
+		final int offsetX = count > 0 ? quantize(sample.getRawX(0) - sample.getX(0)) : 0;
+		final int offsetY = count > 0 ? quantize(sample.getRawY(0) - sample.getY(0)) : 0;
+		pos = putVarint(b, pos, zigzag(offsetX - mLastOffsetX));
+		pos = putVarint(b, pos, zigzag(offsetY - mLastOffsetY));
+		mLastOffsetX = offsetX;
+		mLastOffsetY = offsetY;
+
+		long time = mLastTime;
+		for (int h = 0; h < historySize; h++) {
+			final long historicalTime = sample.getHistoricalEventTime(h);
+			pos = putVarlong(b, pos, zigzag(historicalTime - time));
+			time = historicalTime;
+			for (int i = 0; i < count; i++) {
+				pos = putPointer(b, pos, i, sample.getHistoricalX(i, h), sample.getHistoricalY(i, h),
+						sample.getHistoricalPressure(i, h));
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			pos = putPointer(b, pos, i, sample.getX(i), sample.getY(i), sample.getPressure(i));
+		}
+		mLastTime = sample.getEventTime();
+
+		block.length = pos;
+		mRecordedCount++;
+		return true;
+	}
+
+	/**
+	 * Write all recorded samples, stop the writer thread and close the
+	 * output stream.
+	 *
+	 * @throws IOException if writing the trace failed
+	 */
+	public void close() throws IOException {
+		if (mClosed) {
+			return;
+		}
+		mClosed = true;
+		if (mBlock.length > 0) {
+			mFullBlocks.add(mBlock);
+		}
+		mFullBlocks.add(END_OF_TRACE);
+		try {
+			mWriterThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		mOut.close();
+		if (mWriteError != null) {
+			throw mWriteError;
+		}
+	}
+
+	public long getRecordedCount() {
+		return mRecordedCount;
+	}
+
+	public long getDroppedCount() {
+		return mDroppedCount;
+	}
+
+	/**
+	 * Hand the current block to the writer and take a free one.
+	 *
+	 * @return false if no block is available
+	 */
+	private boolean flushBlock() {
+		Block next = mFreeBlocks.poll();
+		if (next == null) {
+			if (mBlockCount >= MAX_BLOCKS) {
+				return false;
+			}
+			next = new Block(BLOCK_SIZE);
+			mBlockCount++;
+		}
+		mFullBlocks.add(mBlock);
+		next.length = 0;
+		mBlock = next;
+		return true;
+	}
+
+	private void writeBlocks() {
+		try {
+			while (true) {
+				Block block = mFullBlocks.take();
+				if (block == END_OF_TRACE) {
+					break;
+				}
+				if (mWriteError == null) {
+					try {
+						mOut.write(block.data, 0, block.length);
+					} catch (IOException e) {
+						mWriteError = e;
+					}
+				}
+				block.length = 0;
+				mFreeBlocks.offer(block);
+			}
+			if (mWriteError == null) {
+				mOut.flush();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			mWriteError = e;
+		}
+	}
+
+	private int putPointer(byte[] b, int pos, int index, float x, float y, float pressure) {
+		final int qx = quantize(x);
+		final int qy = quantize(y);
+		pos = putVarint(b, pos, zigzag(qx - mLastX[index]));
+		pos = putVarint(b, pos, zigzag(qy - mLastY[index]));
+		mLastX[index] = qx;
+		mLastY[index] = qy;
+		return putVarint(b, pos, Math.max(0, Math.round(pressure * PRESSURE_SCALE)));
+	}
+
+	private static int quantize(float position) {
+		return Math.round(position * POSITION_SCALE);
+	}
+
+	private static int zigzag(int v) {
+		return (v << 1) ^ (v >> 31);
+	}
+
+	private static long zigzag(long v) {
+		return (v << 1) ^ (v >> 63);
+	}
+
+	private static int putVarint(byte[] b, int pos, int v) {
+		while ((v & ~0x7F) != 0) {
+			b[pos++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		b[pos++] = (byte) v;
+		return pos;
+	}
+
+	private static int putVarlong(byte[] b, int pos, long v) {
+		while ((v & ~0x7FL) != 0) {
+			b[pos++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		b[pos++] = (byte) v;
+		return pos;
+	}
+
+	private static int putInt(byte[] b, int pos, int v) {
+		b[pos++] = (byte) (v >>> 24);
+		b[pos++] = (byte) (v >>> 16);
+		b[pos++] = (byte) (v >>> 8);
+		b[pos++] = (byte) v;
+		return pos;
+	}
+}
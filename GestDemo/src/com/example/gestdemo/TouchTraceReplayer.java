@@ -0,0 +1,187 @@
+package com.example.gestdemo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Plays back a trace written by {@link TouchTraceRecorder}. The trace file is
+ * memory mapped and decoded sample by sample into one reused
+ * {@link TouchSample}, so replaying does not allocate.
+ */
+public class TouchTraceReplayer {
+
+	private final ByteBuffer mBuffer;
+	private final int mStart;
+	private final TouchSample mSample = new TouchSample();
+
+	/** Decoder state: the previous sample's time and quantized values. */
+	private long mLastTime;
+	private int mLastOffsetX;
+	private int mLastOffsetY;
+	private int[] mLastX = new int[4];
+	private int[] mLastY = new int[4];
+	private int[] mIds = new int[4];
+
+	/**
+	 * Map the given trace file.
+	 *
+	 * @param file
+	 * @throws IOException if the file cannot be read or is not a trace
+	 */
+	public TouchTraceReplayer(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			mBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+		if (mBuffer.remaining() < 5 || mBuffer.getInt() != TouchTraceRecorder.MAGIC) {
+			throw new IOException("Not a touch trace: " + file);
+		}
+		int version = mBuffer.get();
+		if (version != TouchTraceRecorder.VERSION) {
+			throw new IOException("Unsupported touch trace version " + version + ": " + file);
+		}
+		mStart = mBuffer.position();
+	}
+
+	/**
+	 * Decode the next sample.
+	 *
+	 * @return the sample, reused by the next call, or null at the end of the
+	 *         trace
+	 */
+	public TouchSample next() {
+		final ByteBuffer b = mBuffer;
+		if (!b.hasRemaining()) {
+			return null;
+		}
+		final TouchSample sample = mSample;
+		final int header = getVarint(b);
+		final int count = getVarint(b);
+		final int historySize = getVarint(b);
+		final long eventTime = mLastTime + unzigzag(getVarlong(b));
+		if (count > mIds.length) {
+			mIds = new int[count];
+			int[] x = new int[count];
+			int[] y = new int[count];
+			System.arraycopy(mLastX, 0, x, 0, mLastX.length);
+			System.arraycopy(mLastY, 0, y, 0, mLastY.length);
+			mLastX = x;
+			mLastY = y;
+		}
+		for (int i = 0; i < count; i++) {
+			mIds[i] = getVarint(b);
+		}
+		mLastOffsetX += unzigzag(getVarint(b));
+		mLastOffsetY += unzigzag(getVarint(b));
+
+		sample.setAction(header & 0x7, header >>> 3, eventTime, count);
+		sample.setHistorySize(historySize);
+		long time = mLastTime;
+		for (int h = 0; h < historySize; h++) {
+			time += unzigzag(getVarlong(b));
+			sample.setHistoricalEventTime(h, time);
+			for (int i = 0; i < count; i++) {
+				mLastX[i] += unzigzag(getVarint(b));
+				mLastY[i] += unzigzag(getVarint(b));
+				sample.setHistoricalPointer(h, i, mLastX[i] / TouchTraceRecorder.POSITION_SCALE,
+						mLastY[i] / TouchTraceRecorder.POSITION_SCALE,
+						getVarint(b) / TouchTraceRecorder.PRESSURE_SCALE);
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			mLastX[i] += unzigzag(getVarint(b));
+			mLastY[i] += unzigzag(getVarint(b));
+			sample.setPointer(i, mIds[i], mLastX[i] / TouchTraceRecorder.POSITION_SCALE,
+					mLastY[i] / TouchTraceRecorder.POSITION_SCALE,
+					getVarint(b) / TouchTraceRecorder.PRESSURE_SCALE);
+		}
+		sample.setRawOffset(mLastOffsetX / TouchTraceRecorder.POSITION_SCALE,
+				mLastOffsetY / TouchTraceRecorder.POSITION_SCALE);
+		mLastTime = eventTime;
+		return sample;
+	}
+
+	/**
+	 * Go back to the first sample of the trace.
+	 */
+	public void rewind() {
+		mBuffer.position(mStart);
+		mLastTime = 0;
+		mLastOffsetX = 0;
+		mLastOffsetY = 0;
+		for (int i = 0; i < mLastX.length; i++) {
+			mLastX[i] = 0;
+			mLastY[i] = 0;
+		}
+	}
+
+	/**
+	 * Feed the remaining samples of the trace to the engine.
+	 *
+	 * @param engine
+	 * @param originalTiming if true, samples are fed at the pace they were
+	 *            recorded at; otherwise as fast as possible
+	 * @return number of samples replayed
+	 * @throws InterruptedException if interrupted while waiting for the next
+	 *             sample in original timing
+	 */
+	public int replay(GestureEngine engine, boolean originalTiming) throws InterruptedException {
+		int replayed = 0;
+		long firstEventTime = 0;
+		long startMillis = 0;
+		TouchSample sample;
+		while ((sample = next()) != null) {
+			if (originalTiming) {
+				if (replayed == 0) {
+					firstEventTime = sample.getEventTime();
+					startMillis = System.nanoTime() / 1000000;
+				}
+				long wait = (sample.getEventTime() - firstEventTime) - (System.nanoTime() / 1000000 - startMillis);
+				if (wait > 0) {
+					Thread.sleep(wait);
+				}
+			}
+			engine.onTouchEvent(sample);
+			replayed++;
+		}
+		return replayed;
+	}
+
+	private static int unzigzag(int v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	private static long unzigzag(long v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	private static int getVarint(ByteBuffer b) {
+		int value = 0;
+		int shift = 0;
+		byte in;
+		do {
+			in = b.get();
+			value |= (in & 0x7F) << shift;
+			shift += 7;
+		} while (in < 0);
+		return value;
+	}
+
+	private static long getVarlong(ByteBuffer b) {
+		long value = 0;
+		int shift = 0;
+		byte in;
+		do {
+			in = b.get();
+			value |= (long) (in & 0x7F) << shift;
+			shift += 7;
+		} while (in < 0);
+		return value;
+	}
+}
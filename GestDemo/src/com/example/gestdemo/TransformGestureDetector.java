@@ -0,0 +1,345 @@
+package com.example.gestdemo;
+
+/**
+ * Detects moving, rotating and scaling with any number of pointers as one
+ * gesture. Every event yields one similarity transform, the translation,
+ * rotation and scale that map the previous pointer positions onto the
+ * current ones with the least squared error (see
+ * {@link MultiPointerGestureDetector}). Applying it to the manipulated
+ * object with {@link #mapX(float, float)} and {@link #mapY(float, float)}
+ * keeps the object under the fingers: there is no separate pivot that can
+ * slide, and move, rotate and scale cannot drift apart.
+ *
+ * Like {@link MoveGestureDetector} and {@link RotateGestureDetector} it can
+ * predict the translation and rotation ahead and reports the velocities
+ * when the gesture ends.
+ */
+public class TransformGestureDetector extends MultiPointerGestureDetector {
+
+	public interface OnTransformGestureListener {
+		public boolean onTransform(TransformGestureDetector detector);
+		public boolean onTransformBegin(TransformGestureDetector detector);
+		public void onTransformEnd(TransformGestureDetector detector);
+	}
+
+	public static class SimpleOnTransformGestureListener implements OnTransformGestureListener {
+	    public boolean onTransform(TransformGestureDetector detector) {
+	        return false;
+	    }
+
+	    public boolean onTransformBegin(TransformGestureDetector detector) {
+	        return true;
+	    }
+
+	    public void onTransformEnd(TransformGestureDetector detector) {
+	    	// Do nothing
+	    }
+	}
+
+    private final OnTransformGestureListener mListener;
+
+    private final GestureVelocityTracker mTranslationVelocity = new GestureVelocityTracker();
+    /** Rotation in degrees in x, natural logarithm of the scale in y. */
+    private final GestureVelocityTracker mRotationVelocity = new GestureVelocityTracker();
+    private TouchPredictor mTranslationPredictor;
+    private TouchPredictor mRotationPredictor;
+
+    /**
+     * The prediction applied so far and the current one, as transforms
+     * p' = (a + ib) p + t on top of the measured transform.
+     */
+    private double mAppliedA = 1, mAppliedB, mAppliedTx, mAppliedTy;
+    private double mAppliedDegrees;
+    private double mPredictedA = 1, mPredictedB, mPredictedTx, mPredictedTy;
+    private double mPredictedDegrees;
+
+    /** The transform reported to the listener. */
+    private double mDeltaA = 1, mDeltaB, mDeltaTx, mDeltaTy;
+    private float mDeltaDegrees;
+    private float mDeltaScale = 1f;
+
+    public TransformGestureDetector(OnTransformGestureListener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    protected void handleStartProgressEvent(int actionCode, GestureFrame frame){
+        switch (actionCode) {
+            case TouchSample.ACTION_DOWN:
+                resetState();
+                setPreviousState(frame);
+                mTimeDelta = 0;
+                mTranslationVelocity.clear();
+                mRotationVelocity.clear();
+                resetPrediction();
+
+                updateStateByEvent(frame);
+                break;
+
+            case TouchSample.ACTION_MOVE:
+                startCallback();
+                mGestureInProgress = mListener.onTransformBegin(this);
+                endCallback();
+                break;
+        }
+    }
+
+    @Override
+    protected void handleInProgressEvent(int actionCode, GestureFrame frame){
+        switch (actionCode) {
+            case TouchSample.ACTION_UP:
+            case TouchSample.ACTION_CANCEL:
+                if (actionCode == TouchSample.ACTION_UP) {
+                    updateStateByEvent(frame);
+                }
+                if (takeDecimatedUpdate()) {
+                    reportTransform();
+                }
+                settlePrediction();
+                startCallback();
+                mListener.onTransformEnd(this);
+                endCallback();
+                resetState();
+                break;
+
+            case TouchSample.ACTION_POINTER_DOWN:
+            case TouchSample.ACTION_POINTER_UP:
+                // the step is reported with the next move
+                updateStateByEvent(frame);
+                break;
+
+            case TouchSample.ACTION_MOVE:
+                updateStateByEvent(frame);
+
+                if (isPressureSteady() && isUpdateDue()) {
+                    reportTransform();
+                }
+                break;
+        }
+    }
+
+    private void reportTransform() {
+        startCallback();
+        final boolean updatePrevious = mListener.onTransform(this);
+        endCallback();
+        if (updatePrevious) {
+            addGestureDelta(getRotationDegreesDelta(), 0f);
+            updatePreviousState();
+        }
+    }
+
+    @Override
+    protected void updateStateByEvent(GestureFrame curr) {
+    	super.updateStateByEvent(curr);
+    	addTrackedSample(curr);
+    	predict(curr);
+    	composeDelta();
+    }
+
+    @Override
+    protected void accumulateHistoryStep(GestureFrame from, GestureFrame to) {
+    	super.accumulateHistoryStep(from, to);
+    	addTrackedSample(to);
+    }
+
+    @Override
+    protected void updatePreviousState() {
+    	super.updatePreviousState();
+    	mAppliedA = mPredictedA;
+    	mAppliedB = mPredictedB;
+    	mAppliedTx = mPredictedTx;
+    	mAppliedTy = mPredictedTy;
+    	mAppliedDegrees = mPredictedDegrees;
+    }
+
+    private void addTrackedSample(GestureFrame frame) {
+    	final long time = frame.getEventTime();
+    	final float x = (float) getTotalFocusDeltaX();
+    	final float y = (float) getTotalFocusDeltaY();
+    	final float degrees = (float) (getTotalRotation() * 180 / Math.PI);
+    	mTranslationVelocity.addSample(time, x, y);
+    	mRotationVelocity.addSample(time, degrees, (float) getTotalLogScale());
+    	if (mTranslationPredictor != null) {
+    		mTranslationPredictor.addSample(time, x, y);
+    	}
+    	if (mRotationPredictor != null) {
+    		mRotationPredictor.addSample(time, degrees, 0f);
+    	}
+    }
+
+	/**
+	 * Compute the predicted transform on top of the measured one: a
+	 * rotation around the focus of the frame and a translation.
+	 */
+    private void predict(GestureFrame frame) {
+    	final double offsetX = mTranslationPredictor != null ? mTranslationPredictor.getOffsetX() : 0;
+    	final double offsetY = mTranslationPredictor != null ? mTranslationPredictor.getOffsetY() : 0;
+    	final double degrees = mRotationPredictor != null ? mRotationPredictor.getOffsetX() : 0;
+    	final double radians = degrees * Math.PI / 180;
+    	final double a = Math.cos(radians);
+    	final double b = Math.sin(radians);
+    	final double cx = frame.getFocusX();
+    	final double cy = frame.getFocusY();
+    	mPredictedA = a;
+    	mPredictedB = b;
+    	mPredictedTx = cx + offsetX - (a * cx - b * cy);
+    	mPredictedTy = cy + offsetY - (b * cx + a * cy);
+    	mPredictedDegrees = degrees;
+    }
+
+	/**
+	 * Report predicted * measured * inverse(applied prediction).
+	 */
+    private void composeDelta() {
+    	// inverse of the applied prediction
+    	final double norm = mAppliedA * mAppliedA + mAppliedB * mAppliedB;
+    	final double ia = mAppliedA / norm;
+    	final double ib = -mAppliedB / norm;
+    	final double itx = -(ia * mAppliedTx - ib * mAppliedTy);
+    	final double ity = -(ib * mAppliedTx + ia * mAppliedTy);
+
+    	// measured after it
+    	final double ma = getMapA(), mb = getMapB();
+    	final double a1 = ma * ia - mb * ib;
+    	final double b1 = ma * ib + mb * ia;
+    	final double tx1 = ma * itx - mb * ity + getMapTx();
+    	final double ty1 = mb * itx + ma * ity + getMapTy();
+
+    	// predicted after that
+    	final double pa = mPredictedA, pb = mPredictedB;
+    	mDeltaA = pa * a1 - pb * b1;
+    	mDeltaB = pa * b1 + pb * a1;
+    	mDeltaTx = pa * tx1 - pb * ty1 + mPredictedTx;
+    	mDeltaTy = pb * tx1 + pa * ty1 + mPredictedTy;
+    	mDeltaDegrees = (float) (getTrackedRotation() * 180 / Math.PI + mPredictedDegrees - mAppliedDegrees);
+    	mDeltaScale = getTrackedScaleFactor();
+    }
+
+    private void resetPrediction() {
+    	if (mTranslationPredictor != null) {
+    		mTranslationPredictor.reset();
+    	}
+    	if (mRotationPredictor != null) {
+    		mRotationPredictor.reset();
+    	}
+    	mAppliedA = 1;
+    	mAppliedB = 0;
+    	mAppliedTx = 0;
+    	mAppliedTy = 0;
+    	mAppliedDegrees = 0;
+    	mPredictedA = 1;
+    	mPredictedB = 0;
+    	mPredictedTx = 0;
+    	mPredictedTy = 0;
+    	mPredictedDegrees = 0;
+    }
+
+    /**
+     * Report the movement not consumed yet and take back the prediction
+     * applied so far when the gesture ends.
+     */
+    private void settlePrediction() {
+    	mPredictedA = 1;
+    	mPredictedB = 0;
+    	mPredictedTx = 0;
+    	mPredictedTy = 0;
+    	mPredictedDegrees = 0;
+    	composeDelta();
+    	resetPrediction();
+    }
+
+	/**
+	 * Map a point by the transform since the previous transform event,
+	 * including the change of the prediction. A point of the manipulated
+	 * object ends up at the result. In onTransformEnd this also takes back
+	 * the prediction that is still applied.
+	 */
+    @Override
+    public float mapX(float x, float y) {
+    	return (float) (mDeltaA * x - mDeltaB * y + mDeltaTx);
+    }
+
+    @Override
+    public float mapY(float x, float y) {
+    	return (float) (mDeltaB * x + mDeltaA * y + mDeltaTy);
+    }
+
+	/**
+	 * Coefficients of {@link #mapX(float, float)} and
+	 * {@link #mapY(float, float)}: p' = (a + ib) p + t, in double precision,
+	 * for composing the deltas of several events.
+	 */
+    public double getDeltaA() {
+    	return mDeltaA;
+    }
+
+    public double getDeltaB() {
+    	return mDeltaB;
+    }
+
+    public double getDeltaTx() {
+    	return mDeltaTx;
+    }
+
+    public double getDeltaTy() {
+    	return mDeltaTy;
+    }
+
+	/**
+	 * Rotation since the previous transform event in degrees, positive from
+	 * the x towards the y axis (clockwise on screen), matching
+	 * {@link #mapX(float, float)}.
+	 */
+    public float getRotationDegreesDelta() {
+    	return mDeltaDegrees;
+    }
+
+	/**
+	 * Scale factor since the previous transform event, matching
+	 * {@link #mapX(float, float)}.
+	 */
+    public float getScaleFactor() {
+    	return mDeltaScale;
+    }
+
+	/**
+	 * Velocity of the centroid in pixels per second. Still valid in
+	 * onTransformEnd, for flinging.
+	 */
+    public float getVelocityX() {
+    	return mTranslationVelocity.getVelocityX();
+    }
+
+    public float getVelocityY() {
+    	return mTranslationVelocity.getVelocityY();
+    }
+
+	/**
+	 * Angular velocity in degrees per second, with the sign of
+	 * {@link #getRotationDegreesDelta()}.
+	 */
+    public float getAngularVelocity() {
+    	return mRotationVelocity.getVelocityX();
+    }
+
+	/**
+	 * Change of the natural logarithm of the scale per second.
+	 */
+    public float getScaleVelocity() {
+    	return mRotationVelocity.getVelocityY();
+    }
+
+    /**
+     * Set the predictors that extrapolate the translation (in pixels) and
+     * the rotation (in degrees) to the time the result is displayed, or
+     * null (default) for no prediction.
+     *
+     * @param translation
+     * @param rotation
+     */
+    public void setPredictors(TouchPredictor translation, TouchPredictor rotation) {
+    	mTranslationPredictor = translation;
+    	mRotationPredictor = rotation;
+    	resetPrediction();
+    }
+}
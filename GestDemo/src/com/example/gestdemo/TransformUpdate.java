@@ -0,0 +1,194 @@
+package com.example.gestdemo;
+
+/**
+ * Changes to an {@link ImageTransform} and its {@link InertiaAnimator},
+ * collected by gesture listeners and applied later, all at once. Listeners
+ * that run on the worker thread of a {@link GesturePipeline} must not touch
+ * the transform the UI thread draws; they add their results here instead
+ * and the UI thread applies whatever has been collected once per frame.
+ *
+ * Consecutive changes are coalesced as they arrive: focus maps are
+ * composed, rotations and alpha deltas added and scale factors
+ * multiplied, so an update has the same size however many events it
+ * covers. The scale and alpha clamps of the transform apply to the
+ * coalesced change, not to every single one.
+ *
+ * All methods are synchronized; the worker adds, the UI thread moves the
+ * collected changes out with {@link #moveTo(TransformUpdate)}.
+ */
+public class TransformUpdate {
+
+	/** Map of the focus point, p' = (a + ib) p + t. */
+	private double mA = 1;
+	private double mB;
+	private double mTx;
+	private double mTy;
+	private float mDegrees;
+	private float mScale = 1f;
+	private float mAlpha;
+
+	/** The animation is cancelled before the flings below start. */
+	private boolean mStopFling;
+	private boolean mFlingTranslation;
+	private float mVelocityX;
+	private float mVelocityY;
+	private boolean mFlingRotation;
+	private float mAngularVelocity;
+	private boolean mFlingScale;
+	private float mScaleVelocity;
+	private boolean mFlingAlpha;
+	private float mAlphaVelocity;
+
+	private boolean mEmpty = true;
+
+	/**
+	 * Add a similarity transform, see
+	 * {@link TransformGestureDetector#mapX(float, float)}.
+	 *
+	 * @param a real part of the rotation and scale
+	 * @param b imaginary part of the rotation and scale
+	 * @param tx
+	 * @param ty
+	 * @param degrees the rotation of the transform in degrees
+	 * @param scale the scale of the transform
+	 */
+	public synchronized void addTransform(double a, double b, double tx, double ty, float degrees, float scale) {
+		final double mapA = a * mA - b * mB;
+		final double mapB = a * mB + b * mA;
+		final double mapTx = a * mTx - b * mTy + tx;
+		mTy = b * mTx + a * mTy + ty;
+		mTx = mapTx;
+		mA = mapA;
+		mB = mapB;
+		mDegrees += degrees;
+		mScale *= scale;
+		mEmpty = false;
+	}
+
+	public synchronized void addAlpha(float delta) {
+		mAlpha += delta;
+		mEmpty = false;
+	}
+
+	/**
+	 * Cancel the animation, and any fling added so far.
+	 */
+	public synchronized void stopFling() {
+		mStopFling = true;
+		mFlingTranslation = false;
+		mFlingRotation = false;
+		mFlingScale = false;
+		mFlingAlpha = false;
+		mEmpty = false;
+	}
+
+	public synchronized void flingTranslation(float velocityX, float velocityY) {
+		mFlingTranslation = true;
+		mVelocityX = velocityX;
+		mVelocityY = velocityY;
+		mEmpty = false;
+	}
+
+	public synchronized void flingRotation(float velocity) {
+		mFlingRotation = true;
+		mAngularVelocity = velocity;
+		mEmpty = false;
+	}
+
+	public synchronized void flingScale(float velocity) {
+		mFlingScale = true;
+		mScaleVelocity = velocity;
+		mEmpty = false;
+	}
+
+	public synchronized void flingAlpha(float velocity) {
+		mFlingAlpha = true;
+		mAlphaVelocity = velocity;
+		mEmpty = false;
+	}
+
+	public synchronized boolean isEmpty() {
+		return mEmpty;
+	}
+
+	/**
+	 * Move the collected changes into the target, replacing its contents,
+	 * and start collecting anew.
+	 *
+	 * @param target an update only the calling thread uses
+	 */
+	public synchronized void moveTo(TransformUpdate target) {
+		target.mA = mA;
+		target.mB = mB;
+		target.mTx = mTx;
+		target.mTy = mTy;
+		target.mDegrees = mDegrees;
+		target.mScale = mScale;
+		target.mAlpha = mAlpha;
+		target.mStopFling = mStopFling;
+		target.mFlingTranslation = mFlingTranslation;
+		target.mVelocityX = mVelocityX;
+		target.mVelocityY = mVelocityY;
+		target.mFlingRotation = mFlingRotation;
+		target.mAngularVelocity = mAngularVelocity;
+		target.mFlingScale = mFlingScale;
+		target.mScaleVelocity = mScaleVelocity;
+		target.mFlingAlpha = mFlingAlpha;
+		target.mAlphaVelocity = mAlphaVelocity;
+		target.mEmpty = mEmpty;
+		clear();
+	}
+
+	public synchronized void clear() {
+		mA = 1;
+		mB = 0;
+		mTx = 0;
+		mTy = 0;
+		mDegrees = 0f;
+		mScale = 1f;
+		mAlpha = 0f;
+		mStopFling = false;
+		mFlingTranslation = false;
+		mFlingRotation = false;
+		mFlingScale = false;
+		mFlingAlpha = false;
+		mEmpty = true;
+	}
+
+	/**
+	 * Apply the changes, in the order transform, animation.
+	 *
+	 * @param transform
+	 * @param inertia
+	 * @param timeNanos time for the flings, see
+	 *            {@link InertiaAnimator#flingTranslation(float, float, long)}
+	 */
+	public synchronized void applyTo(ImageTransform transform, InertiaAnimator inertia, long timeNanos) {
+		if (mEmpty) {
+			return;
+		}
+		if (mStopFling) {
+			inertia.cancel();
+		}
+		final double x = transform.getFocusX();
+		final double y = transform.getFocusY();
+		transform.setFocus((float) (mA * x - mB * y + mTx), (float) (mB * x + mA * y + mTy));
+		transform.rotateBy(mDegrees);
+		transform.scaleBy(mScale);
+		if (mAlpha != 0f) {
+			transform.addAlpha(mAlpha);
+		}
+		if (mFlingTranslation) {
+			inertia.flingTranslation(mVelocityX, mVelocityY, timeNanos);
+		}
+		if (mFlingRotation) {
+			inertia.flingRotation(mAngularVelocity, timeNanos);
+		}
+		if (mFlingScale) {
+			inertia.flingScale(mScaleVelocity, timeNanos);
+		}
+		if (mFlingAlpha) {
+			inertia.flingAlpha(mAlphaVelocity, timeNanos);
+		}
+	}
+}